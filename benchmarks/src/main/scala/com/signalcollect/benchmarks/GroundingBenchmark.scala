@@ -0,0 +1,127 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+
+import com.signalcollect.psl.FactIndex
+import com.signalcollect.psl.Grounding
+import com.signalcollect.psl.JoinGrounding
+import com.signalcollect.psl.model.Individual
+import com.signalcollect.psl.model.Rule
+import com.signalcollect.psl.parser.PslParser
+
+/**
+ * Binding generation for a rule with three variables, with the cross product and with joins,
+ * on a voting example in which each person votes for one of the parties and has a few idols.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class GroundingBenchmark {
+
+  @Param(Array("10", "30", "100"))
+  var people: Int = _
+
+  var rule: Rule = _
+  var individuals: Map[(String, Int), Set[Individual]] = _
+  var factIndex: FactIndex = _
+
+  @Setup(Level.Trial)
+  def setup() {
+    val pslData = PslParser.parse(GroundingBenchmark.votingExample(people))
+    rule = pslData.rulesWithPredicates.head
+    individuals = pslData.individualsByClassAndCardinality.map { case ((c, cardinality), v) => ((c.id, cardinality), v) }
+    factIndex = FactIndex.fromFacts(pslData.facts)
+  }
+
+  @Benchmark
+  def generateBindings(): Int = {
+    Grounding.generateBindings(rule.variables, individuals).size
+  }
+
+  @Benchmark
+  def generateBindingsWithJoins(): Int = {
+    JoinGrounding.generateBindings(rule, rule.variables, individuals, factIndex).size
+  }
+}
+
+object GroundingBenchmark {
+
+  def votingExample(people: Int): String = {
+    val builder = new StringBuilder
+    builder.append("class Person: " + (0 until people).map(i => s"person$i").mkString(", ") + "\n")
+    builder.append("class Party: democrats, republicans, greens\n")
+    builder.append("predicate: votes(Person, Party)\n")
+    builder.append("predicate: idol(Person, Person)\n")
+    builder.append("rule [weight = 0.5]: votes(A, P) && idol(B, A) => votes(B, P)\n")
+    for (i <- 0 until people) {
+      builder.append(s"fact: votes(person$i, ${if (i % 2 == 0) "democrats" else "republicans"})\n")
+      builder.append(s"fact [truthValue = 0.8]: idol(person$i, person${(i + 1) % people})\n")
+      builder.append(s"fact [truthValue = 0]: idol(person$i, person${(i + 2) % people})\n")
+    }
+    builder.toString
+  }
+}
+
+/**
+ * Parsing of fact lines, with the line-by-line fast path and with the grammar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class ParserBenchmark {
+
+  @Param(Array(
+    "fact: votes(anna, republicans)",
+    "fact [truthValue = 0.5]: !votes(anna, democrats) // comment",
+    "individuals: anna, bob, carl, dave"))
+  var line: String = _
+
+  @Benchmark
+  def parseLine(): Any = {
+    PslParser.parseLine(line)
+  }
+
+  @Benchmark
+  def parseLineWithGrammar(): Any = {
+    PslParser.parseString(line, PslParser.fragmentParser)
+  }
+}
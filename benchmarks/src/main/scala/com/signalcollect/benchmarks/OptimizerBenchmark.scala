@@ -0,0 +1,146 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import scala.util.Random
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+
+import com.signalcollect.admm.optimizers.HingeLossOptimizer
+import com.signalcollect.admm.optimizers.LinearConstraintOptimizer
+import com.signalcollect.admm.optimizers.LinearLossOptimizer
+import com.signalcollect.admm.optimizers.OptimizableFunction
+import com.signalcollect.admm.optimizers.SquaredHingeLossOptimizer
+import com.signalcollect.admm.optimizers.SquaredLossOptimizer
+import com.signalcollect.psl.Optimizer
+
+/**
+ * A single x-step of each optimizer, for the Scala optimizers and for the Java PSL terms
+ * (through their wrappers), across arities.
+ *
+ * The coefficients alternate between 1 and -1 like in a grounded rule with body and head atoms,
+ * the consensus values and multipliers are random with a fixed seed, so the same mix of
+ * active and inactive hinges is measured in every run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class OptimizerBenchmark {
+
+  @Param(Array("hingeLoss", "squaredHingeLoss", "linearLoss", "squaredLoss", "linearConstraint"))
+  var optimizer: String = _
+
+  @Param(Array("scala", "java"))
+  var implementation: String = _
+
+  @Param(Array("2", "3", "5", "10", "50"))
+  var arity: Int = _
+
+  // Number of functions that are optimized in turn, so the branches are not always the same.
+  val numberOfFunctions = 64
+
+  var functions: Array[OptimizableFunction] = _
+  var consensus: Array[Array[Double]] = _
+  var next = 0
+
+  @Setup(Level.Trial)
+  def setup() {
+    val random = new Random(42)
+    val stepSize = 1.0
+    val weight = 1.0
+    val constant = 0.0
+    val zIndices = (1 to arity).toArray
+    val coefficients = Array.tabulate(arity)(i => if (i % 2 == 0) 1.0 else -1.0)
+    consensus = Array.fill(numberOfFunctions)(Array.fill(arity)(random.nextDouble))
+    functions = Array.tabulate(numberOfFunctions) { id =>
+      val zMap = zIndices.zip(consensus(id)).toMap
+      val f = OptimizerBenchmark.create(optimizer, implementation, id, stepSize, zMap, weight, constant, coefficients, zIndices)
+      f.setY(Array.fill(arity)(random.nextDouble - 0.5))
+      f
+    }
+  }
+
+  @Benchmark
+  def optimizeEfficient(): Array[Double] = {
+    val i = next
+    next = (next + 1) % numberOfFunctions
+    val f = functions(i)
+    f.optimizeEfficient(consensus(i))
+    f.getX
+  }
+
+  @Benchmark
+  def updateLagrangeAndOptimize(): Array[Double] = {
+    val i = next
+    next = (next + 1) % numberOfFunctions
+    val f = functions(i)
+    f.updateLagrangeEfficient(consensus(i))
+    f.optimizeEfficient(consensus(i))
+    f.getX
+  }
+}
+
+object OptimizerBenchmark {
+
+  def create(optimizer: String, implementation: String, id: Int, stepSize: Double, zMap: Map[Int, Double],
+    weight: Double, constant: Double, coefficients: Array[Double], zIndices: Array[Int]): OptimizableFunction = {
+    (optimizer, implementation) match {
+      case ("hingeLoss", "scala") =>
+        new HingeLossOptimizer(id, weight, constant, zIndices, stepSize, zMap, coefficients)
+      case ("hingeLoss", "java") =>
+        Optimizer.hingeLoss(stepSize, zMap, weight, constant, coefficients, zIndices, id)
+      case ("squaredHingeLoss", "scala") =>
+        new SquaredHingeLossOptimizer(id, weight, constant, zIndices, stepSize, zMap, coefficients)
+      case ("squaredHingeLoss", "java") =>
+        Optimizer.squaredHingeLoss(stepSize, zMap, weight, constant, coefficients, zIndices, id)
+      case ("linearLoss", "scala") =>
+        new LinearLossOptimizer(id, weight, constant, zIndices, stepSize, zMap, coefficients)
+      case ("linearLoss", "java") =>
+        Optimizer.linearLoss(stepSize, zMap, weight, coefficients, zIndices, id)
+      case ("squaredLoss", "scala") =>
+        new SquaredLossOptimizer(id, weight, constant, zIndices, stepSize, zMap, coefficients)
+      case ("squaredLoss", "java") =>
+        Optimizer.squaredLinearLoss(stepSize, zMap, weight, constant, coefficients, zIndices, id)
+      case ("linearConstraint", "scala") =>
+        new LinearConstraintOptimizer(id, "leq", constant, zIndices, stepSize, zMap, coefficients)
+      case ("linearConstraint", "java") =>
+        Optimizer.linearConstraint(stepSize, zMap, "leq", constant, coefficients, zIndices, 0.0, id)
+      case other =>
+        throw new Exception(s"Unknown optimizer $other.")
+    }
+  }
+}
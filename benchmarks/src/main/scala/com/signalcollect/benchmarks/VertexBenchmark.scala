@@ -0,0 +1,110 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import scala.util.Random
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+
+import com.signalcollect.admm.DualAggregator
+import com.signalcollect.admm.DualData
+import com.signalcollect.admm.PrimalAggregator
+import com.signalcollect.admm.PrimalData
+import com.signalcollect.admm.graph.ConsensusVertex
+import com.signalcollect.admm.graph.DummyEdge
+import com.signalcollect.admm.graph.SubproblemVertex
+import com.signalcollect.admm.optimizers.HingeLossOptimizer
+
+/**
+ * The collect operations of the ADMM vertices and the extraction of the convergence data from them,
+ * without a running graph: the vertices are created standalone and the signals are delivered directly.
+ *
+ * 'degree' is the arity of the subproblem and the number of subproblems that vote for the consensus variable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class VertexBenchmark {
+
+  @Param(Array("2", "5", "10", "100"))
+  var degree: Int = _
+
+  var subproblem: SubproblemVertex = _
+  var consensus: ConsensusVertex = _
+
+  @Setup(Level.Trial)
+  def setup() {
+    val random = new Random(42)
+    val consensusIds = (1 to degree).toArray
+    val coefficients = Array.tabulate(degree)(i => if (i % 2 == 0) 1.0 else -1.0)
+    val function = new HingeLossOptimizer(1, 1.0, 0.0, consensusIds, 1.0, consensusIds.map(id => (id, 0.0)).toMap, coefficients)
+    subproblem = new SubproblemVertex(-1, function)
+    consensus = new ConsensusVertex(1, 0.0, true)
+    for (id <- consensusIds) {
+      subproblem.addEdge(new DummyEdge(id), null)
+      subproblem.deliverSignalWithSourceId(random.nextDouble, id, null)
+      // The subproblem ids are negative, like in Wolf.
+      consensus.addEdge(new DummyEdge(-id), null)
+      consensus.deliverSignalWithSourceId(random.nextDouble, -id, null)
+    }
+  }
+
+  @Benchmark
+  def subproblemCollect(): Array[Double] = {
+    subproblem.collect
+  }
+
+  @Benchmark
+  def consensusCollect(): Double = {
+    consensus.collect
+  }
+
+  @Benchmark
+  def primalExtractConsensus(): PrimalData = {
+    PrimalAggregator.extract(consensus)
+  }
+
+  @Benchmark
+  def dualExtractConsensus(): DualData = {
+    DualAggregator.extract(consensus)
+  }
+
+  @Benchmark
+  def dualExtractSubproblem(): DualData = {
+    DualAggregator.extract(subproblem)
+  }
+}
@@ -32,6 +32,11 @@ abstract class ADMMObjectiveTerm implements Serializable {
 	protected ADMMReasoner reasoner;
 	public final double[] x;
 	public final double[] y;
+	/**
+	 * The consensus values of the variables of this term, aligned with
+	 * zIndices. Updated in place with {@link #setZ(double[])}.
+	 */
+	public final double[] z;
 	protected final int[] zIndices;
 
 	public ADMMObjectiveTerm(ADMMReasoner reasoner, int[] zIndices) {
@@ -39,28 +44,36 @@ abstract class ADMMObjectiveTerm implements Serializable {
 
 		x = new double[zIndices.length];
 		y = new double[zIndices.length];
+		z = new double[zIndices.length];
 
-		// TODO: check why was this used in Bach's code in the creation.
-		// zMap at creation is the initialized values for each consensus var.
-		// We don't have the zMap at initialization time, but we need to pass a
-		// reasoner for the step size. Commented out for this reason.
 		/*
-		 * This loop ensures that the reasoner, when it first computes y, will
-		 * keep it at 0
+		 * The consensus map of the reasoner is only read here, to initialize
+		 * the consensus values. This loop also ensures that the reasoner, when
+		 * it first computes y, will keep it at 0
 		 */
 		for (int i = 0; i < x.length; i++) {
 			if (reasoner != null && reasoner.z != null
-					&& reasoner.z.contains(i))
-				x[i] = reasoner.z.apply(zIndices[i]);
+					&& reasoner.z.contains(zIndices[i]))
+				z[i] = reasoner.z.apply(zIndices[i]);
 			else
-				x[i] = 0;
+				z[i] = 0;
+			x[i] = z[i];
 		}
 
 		this.zIndices = zIndices;
 	}
 
+	/**
+	 * Copies the consensus values, aligned with zIndices, into z.
+	 */
+	public void setZ(double[] newZ) {
+		System.arraycopy(newZ, 0, z, 0, z.length);
+	}
+
 	public void setZMap(Map<Integer, Double> zMap) {
-		this.reasoner.z = zMap;
+		for (int i = 0; i < z.length; i++) {
+			z[i] = zMap.apply(zIndices[i]);
+		}
 	}
 	
 	public void setStepSize(Double stepSize) {
@@ -79,12 +92,28 @@ abstract class ADMMObjectiveTerm implements Serializable {
 	 */
 	public ADMMObjectiveTerm updateLagrange() {
 		for (int i = 0; i < y.length; i++) {
-			y[i] = y[i] + reasoner.stepSize
-					* (x[i] - reasoner.z.apply(zIndices[i]));
+			y[i] = y[i] + reasoner.stepSize * (x[i] - z[i]);
 		}
 
 		return this;
 	}
 	
-	abstract public Double evaluateAt(Map<Integer, Double> x);
+	/**
+	 * Evaluates the term at the values, aligned with zIndices.
+	 */
+	abstract public double evaluateAt(double[] x);
+
+	/**
+	 * Evaluates the term at the values in the map, missing variables count as
+	 * 0.
+	 */
+	public Double evaluateAt(Map<Integer, Double> xMap) {
+		double[] values = new double[zIndices.length];
+		for (int i = 0; i < zIndices.length; i++) {
+			if (xMap.contains(zIndices[i])) {
+				values[i] = xMap.apply(zIndices[i]);
+			}
+		}
+		return evaluateAt(values);
+	}
 }
@@ -36,6 +36,10 @@ public class ADMMReasoner implements Serializable {
 		this.z = consensus;
 	}
 	public double stepSize;
+	/**
+	 * Initial consensus values, only read when terms are created. During the
+	 * optimization each term keeps its consensus values in a primitive array.
+	 */
 	public Map<Integer, Double> z;
 
 }
@@ -0,0 +1,143 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleCholeskyDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+/**
+ * Bounded, thread safe cache of the Cholesky factors of the matrices
+ * 2 * weight * coeffs * coeffs^T + stepSize * I that {@link SquaredHyperplaneTerm} solves with.
+ * <p>
+ * The key is structural: the coefficients, the weight and the step size determine the matrix,
+ * so a lookup is linear in the arity and does not build the matrix. When the step size changes
+ * the terms use new keys and the factors for the old step size are evicted as the least recently
+ * used ones. Factors are computed outside of the lock, so concurrent misses on the same key may
+ * both factorize, but lookups never wait for a factorization.
+ */
+final class FactorizationCache {
+
+	static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	private final LinkedHashMap<Key, DoubleMatrix2D> factors;
+
+	FactorizationCache(int capacity) {
+		this.capacity = capacity;
+		this.factors = new LinkedHashMap<Key, DoubleMatrix2D>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, DoubleMatrix2D> eldest) {
+				return size() > FactorizationCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the lower triangular Cholesky factor of 2 * weight * coeffs * coeffs^T + stepSize * I.
+	 */
+	DoubleMatrix2D getL(double[] coeffs, double weight, double stepSize) {
+		Key key = new Key(coeffs, weight, stepSize);
+		DoubleMatrix2D L;
+		synchronized (factors) {
+			L = factors.get(key);
+		}
+		if (L == null) {
+			L = factorize(coeffs, weight, stepSize);
+			/* The coefficients are copied, so the key does not change if the caller reuses the array. */
+			Key ownKey = new Key(coeffs.clone(), weight, stepSize);
+			synchronized (factors) {
+				factors.put(ownKey, L);
+			}
+		}
+		return L;
+	}
+
+	int size() {
+		synchronized (factors) {
+			return factors.size();
+		}
+	}
+
+	void clear() {
+		synchronized (factors) {
+			factors.clear();
+		}
+	}
+
+	static DoubleMatrix2D factorize(double[] coeffs, double weight, double stepSize) {
+		int n = coeffs.length;
+		DoubleMatrix2D matrix = new DenseDoubleMatrix2D(n, n);
+		for (int i = 0; i < n; i++) {
+			matrix.setQuick(i, i, 2 * weight * coeffs[i] * coeffs[i] + stepSize);
+			for (int j = 0; j < i; j++) {
+				double coeff = 2 * weight * coeffs[i] * coeffs[j];
+				matrix.setQuick(i, j, coeff);
+				matrix.setQuick(j, i, coeff);
+			}
+		}
+		return new DenseDoubleCholeskyDecomposition(matrix).getL();
+	}
+
+	private static final class Key {
+		private final double[] coeffs;
+		private final double weight;
+		private final double stepSize;
+		private final int hashcode;
+
+		Key(double[] coeffs, double weight, double stepSize) {
+			this.coeffs = coeffs;
+			this.weight = weight;
+			this.stepSize = stepSize;
+			int h = Arrays.hashCode(coeffs);
+			h = 31 * h + hash(weight);
+			h = 31 * h + hash(stepSize);
+			this.hashcode = h;
+		}
+
+		private static int hash(double value) {
+			long bits = Double.doubleToLongBits(value);
+			return (int) (bits ^ (bits >>> 32));
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return hashcode == other.hashcode
+					&& Double.compare(weight, other.weight) == 0
+					&& Double.compare(stepSize, other.stepSize) == 0
+					&& Arrays.equals(coeffs, other.coeffs);
+		}
+	}
+}
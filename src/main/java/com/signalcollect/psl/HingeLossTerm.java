@@ -18,7 +18,6 @@
  */
 package com.signalcollect.psl;
 
-import scala.collection.immutable.Map;
 
 /**
  * {@link ADMMReasoner} objective term of the form <br />
@@ -71,7 +70,7 @@ public class HingeLossTerm extends HyperplaneTerm implements
 		for (int i = 0; i < x.length; i++) {
 			// x_i = z_i (i.e. consensus value of x_i) - (y_i/ rho (i.e.
 			// stepSize))
-			x[i] = reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[i] - y[i] / reasoner.stepSize;
 			total += coeffs[i] * x[i];
 		}
 
@@ -102,7 +101,7 @@ public class HingeLossTerm extends HyperplaneTerm implements
 		for (int i = 0; i < x.length; i++) {
 			// x_i = z_i (i.e. consensus value of x_i) - (y_i/ rho (i.e.
 			// stepSize)) - weight * coeff_i/ rho
-			x[i] = reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[i] - y[i] / reasoner.stepSize;
 			x[i] -= weight * coeffs[i] / reasoner.stepSize;
 			// total = coeffs^T * x
 			total += coeffs[i] * x[i];
@@ -124,12 +123,10 @@ public class HingeLossTerm extends HyperplaneTerm implements
 		project();
 	}
 	
-	public Double evaluateAt(Map<Integer, Double> xnew){
-		Double total = 0.0;
+	public double evaluateAt(double[] xnew) {
+		double total = 0.0;
 		for (int i = 0; i < coeffs.length; i++) {
-			if (xnew.contains(zIndices[i])){
-				total += coeffs[i] * xnew.apply(zIndices[i]);
-			}
+			total += coeffs[i] * xnew[i];
 		}	
 		if (total <= constant) {
 			return 0.0;
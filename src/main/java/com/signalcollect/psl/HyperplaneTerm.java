@@ -94,19 +94,19 @@ abstract class HyperplaneTerm extends ADMMObjectiveTerm {
 			 * > x_0 -= (c_0/c_1)^2 * (z_0 - y_0/\rho)
 			 * x_0 /= (1 + c_0^2/ c_1^2) 
 			 */
-			x[0] =  reasoner.z.apply(zIndices[0]) - y[0]/reasoner.stepSize;
-			x[0] -= (coeffs[0] / coeffs[1]) * ((-1 * constant / coeffs[1]) + reasoner.z.apply(zIndices[1]) - y[1]/reasoner.stepSize);
+			x[0] =  z[0] - y[0]/reasoner.stepSize;
+			x[0] -= (coeffs[0] / coeffs[1]) * ((-1 * constant / coeffs[1]) + z[1] - y[1]/reasoner.stepSize);
 			// TODO(sara): check if the following is necessary.
-			// x[0] -= (coeffs[0] / coeffs[1]) * (reasoner.z.apply(zIndices[0]) - y[0]/reasoner.stepSize);
+			// x[0] -= (coeffs[0] / coeffs[1]) * (z[0] - y[0]/reasoner.stepSize);
 			x[0] /= (1 + coeffs[0] * coeffs[0] / (coeffs[1] * coeffs[1]));
 			
 			// Satisfy the constraint: coeff_0 * x_0 + coeff_1 * x_1 = constant
 			x[1] = (constant - coeffs[0] * x[0]) / coeffs[1];
 		}
 		else {
-			double[] point = new double[x.length];
+			/* The point z - y/\rho is computed in place in x. */
 			for (int i = 0; i < x.length; i++)
-				point[i] = reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize;
+				x[i] = z[i] - y[i] / reasoner.stepSize;
 			
 			/* For point (constant / coeffs[0], 0,...) in hyperplane dotted with unitNormal
 			 * unitNormal contains the coefficients normalized by the L2 norm of the vector.
@@ -119,7 +119,7 @@ abstract class HyperplaneTerm extends ADMMObjectiveTerm {
 			double multiplier = (-1 * constant / coeffs[0]) * unitNormal[0];
 			
 			for (int i = 0; i < x.length; i++)
-				multiplier += point[i] * unitNormal[i];
+				multiplier += x[i] * unitNormal[i];
 			
 			/* x_i = z_i - y_i/\rho  
 			*  x_i -=  (\Sigma_j(-constant/length + coeff_j * (z_j - y_j/\rho)/length)) * coeff_i/ length 
@@ -127,7 +127,7 @@ abstract class HyperplaneTerm extends ADMMObjectiveTerm {
 			*  x_i -=  (\Sigma_j(-constant + coeff_j * (z_j - y_j/\rho)) * coeff_i/ (\Sigma_j coeff_j^2)
 			*/
 			for (int i = 0; i < x.length; i++)
-				x[i] = point[i] - multiplier * unitNormal[i];
+				x[i] -= multiplier * unitNormal[i];
 		}
 	}
 }
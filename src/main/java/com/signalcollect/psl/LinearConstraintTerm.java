@@ -18,7 +18,6 @@
  */
 package com.signalcollect.psl;
 
-import scala.collection.immutable.Map;
 
 /**
  * {@link ADMMReasoner} objective term of the form <br />
@@ -58,14 +57,14 @@ class LinearConstraintTerm extends HyperplaneTerm {
 		//
 		// /* Initializes scratch data */
 		double total = 0.0;
-		Double absDiff = 0.0;
+		double absDiff = 0.0;
 
 		/*
 		 * Minimizes without regard for the constraint, i.e., solves argmin
 		 * stepSize/2 * \|x - z + y / stepSize \|_2^2
 		 */
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[i] - y[i] / reasoner.stepSize;
 			total += coeffs[i] * x[i];
 		}
 
@@ -97,14 +96,12 @@ class LinearConstraintTerm extends HyperplaneTerm {
 		project();
 	}
 
-	public Double evaluateAt(Map<Integer, Double> xnew) {
-		Double total = 0.0;
-		Double absDiff = 0.0;
+	public double evaluateAt(double[] xnew) {
+		double total = 0.0;
+		double absDiff = 0.0;
 
 		for (int i = 0; i < coeffs.length; i++) {
-			if (xnew.contains(zIndices[i])) {
-				total += coeffs[i] * xnew.apply(zIndices[i]);
-			}
+			total += coeffs[i] * xnew[i];
 		}
 
 		// If it's not less or equal, take the diff.
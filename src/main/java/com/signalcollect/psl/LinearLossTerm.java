@@ -18,7 +18,6 @@
  */
 package com.signalcollect.psl;
 
-import scala.collection.immutable.Map;
 
 /**
  * {@link ADMMReasoner} objective term of the form <br />
@@ -46,17 +45,15 @@ class LinearLossTerm extends ADMMObjectiveTerm implements WeightedObjectiveTerm
 	@Override
 	public void minimize() {
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[i] - y[i] / reasoner.stepSize;
 			x[i] -= weight * coeffs[i] / reasoner.stepSize;
 		}
 	}
 	
-	public Double evaluateAt(Map<Integer, Double> xnew){
-		Double total = 0.0;
+	public double evaluateAt(double[] xnew) {
+		double total = 0.0;
 		for (int i = 0; i < coeffs.length; i++) {
-			if (xnew.contains(zIndices[i])){
-				total += coeffs[i] * xnew.apply(zIndices[i]);
-			}
+			total += coeffs[i] * xnew[i];
 		}	
 		return weight * total;
 	}
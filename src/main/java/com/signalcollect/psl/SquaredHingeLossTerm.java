@@ -20,8 +20,6 @@ package com.signalcollect.psl;
 
 import java.util.Arrays;
 
-import scala.collection.immutable.Map;
-
 /**
  * {@link ADMMReasoner} objective term of the form <br />
  * weight * [max(coeffs^T * x - constant, 0)]^2
@@ -46,7 +44,7 @@ class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
 		 * * \|x - z + y / stepSize \|_2^2
 		 */
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[i] - y[i] / reasoner.stepSize;
 			total += coeffs[i] * x[i];
 		}
 
@@ -66,12 +64,10 @@ class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
 		minWeightedSquaredHyperplane();
 	}
 
-	public Double evaluateAt(Map<Integer, Double> xnew) {
-		Double total = 0.0;
+	public double evaluateAt(double[] xnew) {
+		double total = 0.0;
 		for (int i = 0; i < coeffs.length; i++) {
-			if (xnew.contains(zIndices[i])) {
-				total += coeffs[i] * xnew.apply(zIndices[i]);
-			}
+			total += coeffs[i] * xnew[i];
 		}
 		if (total <= constant) {
 			return 0.0;
@@ -80,11 +76,6 @@ class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
 	}
 
 	public String toString() {
-		Double[] z = new Double[zIndices.length];
-		for (int i = 0; i < zIndices.length; i++) {
-			int zIndex = zIndices[i];
-			z[i] = reasoner.z.apply(zIndex);
-		}
 		String s = "SquaredHingeLossTerm(x=" + Arrays.toString(x) + ", y="
 				+ Arrays.toString(y) + ", z=" + Arrays.toString(z)
 				+ ", coeffs=" + Arrays.toString(coeffs) + ", constant="
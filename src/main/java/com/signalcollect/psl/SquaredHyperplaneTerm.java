@@ -18,14 +18,7 @@
  */
 package com.signalcollect.psl;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.apache.commons.lang.builder.HashCodeBuilder;
-
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleCholeskyDecomposition;
-import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 
 /**
  * Objective term for an {@link ADMMReasoner} that is based on a squared
@@ -44,7 +37,8 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 	protected double weight;
 	private DoubleMatrix2D L;
 	
-	static Map<DenseDoubleMatrix2DWithHashcode, DoubleMatrix2D> lCache = new HashMap<DenseDoubleMatrix2DWithHashcode, DoubleMatrix2D>();
+	/** Shared by all terms, which are created concurrently. */
+	static final FactorizationCache lCache = new FactorizationCache(FactorizationCache.DEFAULT_CAPACITY);
 	
 	SquaredHyperplaneTerm(ADMMReasoner reasoner, int[] zIndices, double[] coeffs,
 			double constant, double weight) {
@@ -52,37 +46,12 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 		
 		this.coeffs = coeffs;
 		this.constant = constant;
+		/* Also looks up the factorization. */
 		setWeight(weight);
-		
-		if (x.length >= 3) {
-			computeL();
-		}
-		else
-			L = null;
 	}
 	
 	private void computeL() {
-		double coeff;
-		DenseDoubleMatrix2DWithHashcode matrix = new DenseDoubleMatrix2DWithHashcode(x.length, x.length);
-		for (int i = 0; i < x.length; i++) {
-			for (int j = 0; j < x.length; j++) {
-				if (i == j) {
-					coeff = 2 * weight * coeffs[i] * coeffs[i] + reasoner.stepSize;
-					matrix.setQuick(i, i, coeff);
-				}
-				else {
-					coeff = 2 * weight * coeffs[i] * coeffs[j];
-					matrix.setQuick(i, j, coeff);
-					matrix.setQuick(j, i, coeff);
-				}
-			}
-		}
-		
-		L = lCache.get(matrix);
-		if (L == null) {
-			L = new DenseDoubleCholeskyDecomposition(matrix).getL();
-			lCache.put(matrix, L);
-		}
+		L = lCache.getL(coeffs, weight, reasoner.stepSize);
 	}
 	
 	@Override
@@ -91,6 +60,16 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 		if (x.length >= 3)
 			computeL();
 	}
+
+	/**
+	 * The factorization depends on the step size, so it is looked up again for the new step size.
+	 */
+	@Override
+	public void setStepSize(Double stepSize) {
+		super.setStepSize(stepSize);
+		if (x.length >= 3)
+			computeL();
+	}
 	
 	/**
 	 * Minimizes the weighted, squared hyperplane <br />
@@ -101,7 +80,7 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 	protected void minWeightedSquaredHyperplane() {
 		/* Constructs constant term in the gradient (moved to right-hand side) */
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.stepSize * (reasoner.z.apply(zIndices[i]) - y[i] / reasoner.stepSize);
+			x[i] = reasoner.stepSize * (z[i] - y[i] / reasoner.stepSize);
 			x[i] += 2 * weight * coeffs[i] * constant;
 		}
 		
@@ -136,36 +115,4 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 			}
 		}
 	}
-	
-	private class DenseDoubleMatrix2DWithHashcode extends DenseDoubleMatrix2D {
-		
-		private static final long serialVersionUID = -8102931034927566306L;
-		private boolean needsNewHashcode;
-		private int hashcode = 0;
-
-		public DenseDoubleMatrix2DWithHashcode(int rows, int columns) {
-			super(rows, columns);
-			needsNewHashcode = true;
-		}
-		
-		@Override
-		public void setQuick(int row, int column, double value) {
-			needsNewHashcode = true;
-			super.setQuick(row, column, value);
-		}
-		
-		@Override
-		public int hashCode() {
-			if (needsNewHashcode) {
-				HashCodeBuilder builder = new HashCodeBuilder();
-				for (int i = 0; i < rows(); i++)
-					for (int j = 0; j < columns(); j++)
-						builder.append(getQuick(i, j));
-				
-				hashcode = builder.toHashCode();
-				needsNewHashcode = false;
-			}
-			return hashcode;
-		}
-	}
 }
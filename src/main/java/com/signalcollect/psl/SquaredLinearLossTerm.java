@@ -18,7 +18,6 @@
  */
 package com.signalcollect.psl;
 
-import scala.collection.immutable.Map;
 
 /**
  * {@link ADMMReasoner} objective term of the form <br />
@@ -39,12 +38,10 @@ class SquaredLinearLossTerm extends SquaredHyperplaneTerm {
 		minWeightedSquaredHyperplane();
 	}
 	
-	public Double evaluateAt(Map<Integer, Double> xnew){
-		Double total = 0.0;
+	public double evaluateAt(double[] xnew) {
+		double total = 0.0;
 		for (int i = 0; i < coeffs.length; i++) {
-			if (xnew.contains(zIndices[i])){
-				total += coeffs[i] * xnew.apply(zIndices[i]);
-			}
+			total += coeffs[i] * xnew[i];
 		}	
 		return weight * (total - constant) * (total - constant);
 	}
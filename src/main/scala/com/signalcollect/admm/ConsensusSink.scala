@@ -0,0 +1,66 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.admm
+
+import com.signalcollect.util.IntDoubleHashMap
+
+/**
+ * Receives the consensus values at the end of the inference, keyed by variable id.
+ * Can be called concurrently from several workers, but never twice for the same variable.
+ */
+trait ConsensusSink {
+  def put(variableId: Int, consensus: Double)
+}
+
+/**
+ * Stores the consensus values in preallocated primitive arrays indexed by variable id.
+ */
+final class ArrayConsensusSink(maxVariableId: Int) extends ConsensusSink {
+  val values = new Array[Double](maxVariableId + 1)
+  val present = new Array[Boolean](maxVariableId + 1)
+
+  def put(variableId: Int, consensus: Double) {
+    values(variableId) = consensus
+    present(variableId) = true
+  }
+
+  def size: Int = {
+    var count = 0
+    var i = 0
+    while (i < present.length) {
+      if (present(i)) count += 1
+      i += 1
+    }
+    count
+  }
+
+  def toIntDoubleHashMap: IntDoubleHashMap = {
+    val results = new IntDoubleHashMap(initialSize = Integer.highestOneBit(math.max(1, size)) * 2, rehashFraction = 0.5f)
+    var i = 0
+    while (i < present.length) {
+      if (present(i)) {
+        results.put(i, values(i))
+      }
+      i += 1
+    }
+    results
+  }
+}
@@ -26,6 +26,7 @@ import com.signalcollect.GlobalTerminationDetection
 import com.signalcollect.Graph
 import com.signalcollect.MultiAggregator
 import com.signalcollect.Vertex
+import com.signalcollect.admm.graph.BlockSubproblemVertex
 import com.signalcollect.admm.graph.Consensus
 import com.signalcollect.admm.graph.Subproblem
 import com.signalcollect.admm.optimizers.OptimizableFunction
@@ -47,6 +48,8 @@ trait DebugLoggingConvergenceDetection extends GlobalAdmmConvergenceDetection {
   var dualEpsilonForSteps: TreeMap[Int, Double] = TreeMap()
   var objectiveValueForSteps: TreeMap[Int, Double] = TreeMap()
 
+  override def computeObjective = true
+
   abstract override def isConverged(primal: PrimalData, dual: DualData, objective: Double, debugLogging: Boolean, verbose: Boolean = false) = {
     val converged = super.isConverged(primal, dual, objective, true, verbose)
     objectiveValueForSteps += convergenceDetectionStep -> objective
@@ -73,8 +76,75 @@ trait DebugLoggingConvergenceDetection extends GlobalAdmmConvergenceDetection {
   }
 }
 
+/**
+ * Residual balancing for the step size (rho): after every convergence check the step size
+ * is multiplied by stepSizeFactor if the primal residual is more than residualRatio times
+ * the dual residual, and divided by it in the opposite case. The new step size is pushed
+ * to all subproblems. The multipliers are stored unscaled (y and not y / rho), so they
+ * remain valid when the step size changes.
+ */
+trait AdaptiveStepSize extends AbstractGlobalAdmmConvergenceDetection {
+  def residualRatio: Double = 10.0
+  def stepSizeFactor: Double = 2.0
+
+  var adaptedStepSize = stepSize
+  var stepSizeChanges = 0
+  override def currentStepSize = adaptedStepSize
+
+  var lastPrimalResidual = 0.0
+  var lastDualResidual = 0.0
+
+  abstract override def computePrimalConvergence(primal: PrimalData): (Double, Double) = {
+    val (primalResidual, primalEpsilon) = super.computePrimalConvergence(primal)
+    lastPrimalResidual = primalResidual
+    (primalResidual, primalEpsilon)
+  }
+
+  abstract override def computeDualConvergence(primal: PrimalData, dual: DualData): (Double, Double) = {
+    val (dualResidual, dualEpsilon) = super.computeDualConvergence(primal, dual)
+    lastDualResidual = dualResidual
+    (dualResidual, dualEpsilon)
+  }
+
+  /**
+   * Balances the residuals of the last convergence check.
+   * Returns the new step size, if it changed.
+   */
+  def adaptStepSize: Option[Double] = {
+    val newStepSize = if (lastPrimalResidual > residualRatio * lastDualResidual) {
+      adaptedStepSize * stepSizeFactor
+    } else if (lastDualResidual > residualRatio * lastPrimalResidual) {
+      adaptedStepSize / stepSizeFactor
+    } else {
+      adaptedStepSize
+    }
+    if (newStepSize != adaptedStepSize) {
+      adaptedStepSize = newStepSize
+      stepSizeChanges += 1
+      Some(newStepSize)
+    } else {
+      None
+    }
+  }
+
+  override def shouldTerminate(g: Graph[Int, Double]): Boolean = {
+    val terminate = super.shouldTerminate(g)
+    if (!terminate && collectStepsSoFar % checkingInterval == 1) {
+      adaptStepSize.foreach { newStepSize =>
+        g.foreachVertex {
+          case s: Subproblem => s.updateStepSize(newStepSize)
+          case b: BlockSubproblemVertex => b.updateStepSize(newStepSize)
+          case other =>
+        }
+      }
+    }
+    terminate
+  }
+}
+
 abstract class AbstractGlobalAdmmConvergenceDetection extends GlobalTerminationDetection[Int, Double] {
   def stepSize: Double
+  def currentStepSize: Double = stepSize
   def absoluteEpsilon: Double
   def relativeEpsilon: Double
   def checkingInterval: Long
@@ -88,11 +158,22 @@ abstract class AbstractGlobalAdmmConvergenceDetection extends GlobalTerminationD
 
   var nextConvergenceOutputAtPercentage = 0
 
+  /**
+   * Evaluating all the functions is much more expensive than aggregating the residuals,
+   * so the objective value is only computed if it is logged. Otherwise it is NaN.
+   */
+  def computeObjective: Boolean = false
+
   override def shouldTerminate(g: Graph[Int, Double]): Boolean = {
     collectStepsSoFar += 1
     if (collectStepsSoFar % checkingInterval == 1) {
-      val ((primal, dual), objective) = g.aggregate(MultiAggregator(MultiAggregator(PrimalAggregator, DualAggregator), ObjectiveValueAggregator))
-      isConverged(primal, dual, objective, false)
+      if (computeObjective) {
+        val ((primal, dual), objective) = g.aggregate(MultiAggregator(ResidualAggregator, ObjectiveValueAggregator))
+        isConverged(primal, dual, objective, false)
+      } else {
+        val (primal, dual) = g.aggregate(ResidualAggregator)
+        isConverged(primal, dual, Double.NaN, false)
+      }
     } else {
       false
     }
@@ -154,7 +235,7 @@ abstract class AbstractGlobalAdmmConvergenceDetection extends GlobalTerminationD
       absoluteEpsilon * math.sqrt(p.numberOfLocalVars) +
         relativeEpsilon * math.sqrt(d.sumOfSquaredMultipliers)
     }
-    val dualResidual = stepSize * math.sqrt(d.sumOfSquaredConsensusDeltas)
+    val dualResidual = currentStepSize * math.sqrt(d.sumOfSquaredConsensusDeltas)
     (dualResidual, dualEpsilon)
   }
 
@@ -200,24 +281,17 @@ case object PrimalAggregator extends ModularAggregationOperation[PrimalData] {
   def extract(v: Vertex[_, _, _, _]): PrimalData = {
     v match {
       case c: Consensus =>
-        val votes = c.consensusVotes
+        // The residual terms are maintained by the vertex during collect.
         val consensus = c.consensus
         val numberOfLocalVars = c.variableCount
-        var sumOfSquaredErrors = 0.0
-        var sumOfSquaredLocalVars = 0.0
-        var i = 0
-        while (i < votes.length) {
-          val vote = votes(i)
-          val error = consensus - vote
-          val squaredError = error * error
-          sumOfSquaredErrors += squaredError
-          sumOfSquaredLocalVars += vote * vote
-          i += 1
-        }
         val sumOfSquaredConsensus = {
           consensus * consensus * numberOfLocalVars
         }
-        PrimalData(sumOfSquaredErrors, sumOfSquaredConsensus, sumOfSquaredLocalVars, numberOfLocalVars)
+        PrimalData(c.sumOfSquaredErrors, sumOfSquaredConsensus, c.sumOfSquaredVotes, numberOfLocalVars)
+      case b: BlockSubproblemVertex =>
+        // The consensus vertices only see the summed votes of the block.
+        val correction = b.voteAggregationCorrection
+        PrimalData(correction, 0, correction, 0)
       case other =>
         neutralElement
     }
@@ -243,9 +317,24 @@ case object DualAggregator extends ModularAggregationOperation[DualData] {
           i += 1
         }
         DualData(0, sumOfSquaredMultipliers)
+      case b: BlockSubproblemVertex =>
+        DualData(0, b.sumOfSquaredMultipliers)
       case other =>
         neutralElement
     }
   }
   def aggregate(a: DualData, b: DualData): DualData = a + b
 }
+
+/**
+ * The primal and the dual data in a single pass over the vertices.
+ */
+case object ResidualAggregator extends ModularAggregationOperation[(PrimalData, DualData)] {
+  val neutralElement = (PrimalAggregator.neutralElement, DualAggregator.neutralElement)
+  def extract(v: Vertex[_, _, _, _]): (PrimalData, DualData) = {
+    (PrimalAggregator.extract(v), DualAggregator.extract(v))
+  }
+  def aggregate(a: (PrimalData, DualData), b: (PrimalData, DualData)): (PrimalData, DualData) = {
+    (a._1 + b._1, a._2 + b._2)
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.admm
+
+import com.signalcollect.interfaces.MapperFactory
+import com.signalcollect.interfaces.VertexToWorkerMapper
+
+/**
+ * Assignment of the vertices of an ADMM factor graph to parts.
+ * The parts of the vertices with non-negative ids are stored by id, the ones of the vertices with
+ * negative ids by -id - 1. Vertices without a part are mapped by the hash of their id.
+ *
+ * The arrays take 4 bytes for every id between the smallest and the largest id, whether the id is used or not.
+ * The ids of the factor graph are contiguous, so this is about 4 bytes per vertex, but the partitioning is part of
+ * the mapper and is sent to every worker, so each of them holds a copy.
+ */
+case class FactorGraphPartitioning(
+  numberOfParts: Int,
+  nonNegativeIdParts: Array[Int],
+  negativeIdParts: Array[Int],
+  edges: Long, // Number of edges between subproblems and consensus variables, each edge counts once.
+  edgeCut: Long, // Number of those edges between vertices in different parts.
+  hashEdgeCut: Long) { // Number of those edges between different parts with the default hash mapping.
+
+  def part(vertexId: Int): Int = {
+    val p = if (vertexId >= 0) {
+      if (vertexId < nonNegativeIdParts.length) nonNegativeIdParts(vertexId) else -1
+    } else {
+      val index = -(vertexId + 1)
+      if (index < negativeIdParts.length) negativeIdParts(index) else -1
+    }
+    if (p >= 0) p else FactorGraphPartitioner.hashPart(vertexId, numberOfParts)
+  }
+
+  override def toString = {
+    val percentage = if (edges == 0) 0.0 else edgeCut * 100.0 / edges
+    val hashPercentage = if (edges == 0) 0.0 else hashEdgeCut * 100.0 / edges
+    f"FactorGraphPartitioning($numberOfParts parts, edge cut $edgeCut of $edges edges ($percentage%.1f%%), hash edge cut $hashEdgeCut ($hashPercentage%.1f%%))"
+  }
+}
+
+/**
+ * Streaming partitioning of the factor graph (linear deterministic greedy, Stanton and Kliot, KDD 2012).
+ * The subproblems are placed one at a time, in the part that already contains most of their consensus variables,
+ * discounted by how full the part is. Consensus variables are placed with the first subproblem that uses them.
+ */
+object FactorGraphPartitioner {
+
+  // The parts can hold this much more than an equal share of the vertices.
+  val capacitySlack = 1.1
+
+  def hashPart(vertexId: Int, numberOfParts: Int): Int = math.abs(vertexId.hashCode % numberOfParts)
+
+  /**
+   * Partitions subproblems given by their vertex id and the ids of their consensus variables.
+   */
+  def partition(subproblemIds: Array[Int], consensusIds: Array[Array[Int]], numberOfParts: Int): FactorGraphPartitioning = {
+    assert(numberOfParts > 0, "The number of parts has to be positive.")
+    val allIds = subproblemIds.iterator ++ consensusIds.iterator.flatMap(_.iterator)
+    var maxId = -1
+    var minId = 0
+    allIds.foreach { id =>
+      maxId = math.max(maxId, id)
+      minId = math.min(minId, id)
+    }
+    val nonNegativeIdParts = Array.fill(maxId + 1)(-1)
+    val negativeIdParts = Array.fill(-minId)(-1)
+    def partOf(id: Int): Int = if (id >= 0) nonNegativeIdParts(id) else negativeIdParts(-(id + 1))
+    def assign(id: Int, part: Int) {
+      if (id >= 0) nonNegativeIdParts(id) = part else negativeIdParts(-(id + 1)) = part
+    }
+
+    // Consensus variables that are not placed yet are marked with -2, to count them.
+    var numberOfConsensusVertices = 0
+    consensusIds.foreach(_.foreach { id =>
+      if (partOf(id) == -1) {
+        assign(id, -2)
+        numberOfConsensusVertices += 1
+      }
+    })
+    val capacity = math.max(1.0, capacitySlack * (subproblemIds.length + numberOfConsensusVertices) / numberOfParts)
+    val sizes = new Array[Int](numberOfParts)
+    // Number of the consensus variables of the current subproblem in each part, only the touched entries are reset.
+    val neighbours = new Array[Int](numberOfParts)
+
+    var s = 0
+    while (s < subproblemIds.length) {
+      val variables = consensusIds(s)
+      var i = 0
+      while (i < variables.length) {
+        val p = partOf(variables(i))
+        if (p >= 0) neighbours(p) += 1
+        i += 1
+      }
+      var best = -1
+      var bestScore = Double.NegativeInfinity
+      var p = 0
+      while (p < numberOfParts) {
+        if (sizes(p) < capacity) {
+          val score = neighbours(p) * (1 - sizes(p) / capacity)
+          if (score > bestScore || (score == bestScore && sizes(p) < sizes(best))) {
+            best = p
+            bestScore = score
+          }
+        }
+        p += 1
+      }
+      if (best < 0) {
+        // All parts are full, which only happens because of the rounding.
+        best = sizes.indexOf(sizes.min)
+      }
+      assign(subproblemIds(s), best)
+      sizes(best) += 1
+      i = 0
+      while (i < variables.length) {
+        val variable = variables(i)
+        val vp = partOf(variable)
+        if (vp >= 0) {
+          neighbours(vp) = 0
+        } else {
+          assign(variable, best)
+          sizes(best) += 1
+        }
+        i += 1
+      }
+      s += 1
+    }
+
+    var edges = 0L
+    var edgeCut = 0L
+    var hashEdgeCut = 0L
+    s = 0
+    while (s < subproblemIds.length) {
+      val subproblemId = subproblemIds(s)
+      val variables = consensusIds(s)
+      var i = 0
+      while (i < variables.length) {
+        edges += 1
+        if (partOf(variables(i)) != partOf(subproblemId)) edgeCut += 1
+        if (hashPart(variables(i), numberOfParts) != hashPart(subproblemId, numberOfParts)) hashEdgeCut += 1
+        i += 1
+      }
+      s += 1
+    }
+    FactorGraphPartitioning(numberOfParts, nonNegativeIdParts, negativeIdParts, edges, edgeCut, hashEdgeCut)
+  }
+}
+
+/**
+ * Maps the vertices to workers according to a partitioning. The parts are mapped to the workers in contiguous
+ * ranges, so every worker gets the same number of parts if the number of parts is a multiple of the number of workers,
+ * and the workers of a node get neighbouring parts. With fewer parts than workers some workers stay idle.
+ */
+case class PartitionedMapperFactory(partitioning: FactorGraphPartitioning) extends MapperFactory[Int] {
+  def createInstance(numberOfNodes: Int, workersPerNode: Int): VertexToWorkerMapper[Int] = {
+    new PartitionedVertexToWorkerMapper(partitioning, numberOfNodes, workersPerNode)
+  }
+  override def toString = "PartitionedMapperFactory"
+}
+
+final class PartitionedVertexToWorkerMapper(
+  partitioning: FactorGraphPartitioning,
+  val numberOfNodes: Int,
+  val workersPerNode: Int) extends VertexToWorkerMapper[Int] {
+
+  val numberOfWorkers = numberOfNodes * workersPerNode
+
+  def getWorkerIdForVertexId(vertexId: Int): Int = {
+    (partitioning.part(vertexId).toLong * numberOfWorkers / partitioning.numberOfParts).toInt
+  }
+
+  def getWorkerIdForVertexIdHash(vertexIdHash: Int): Int = {
+    val workerId = vertexIdHash % numberOfWorkers
+    if (workerId >= 0) workerId else -workerId
+  }
+}
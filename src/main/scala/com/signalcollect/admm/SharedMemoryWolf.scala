@@ -0,0 +1,440 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.admm
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.HashMap
+
+import com.signalcollect.admm.optimizers.OptimizableFunction
+import com.signalcollect.admm.utils.Timer
+import com.signalcollect.util.IntDoubleHashMap
+
+/**
+ * Shared-memory alternative to the Signal/Collect backend of Wolf.
+ * The consensus problem is flattened into CSR-style index arrays and every
+ * ADMM iteration runs two parallel fork-join sweeps: one over the subproblems
+ * (y-step and x-step) and one over the consensus variables (z-step).
+ * No messages are sent and nothing is allocated per iteration.
+ *
+ * One iteration corresponds to one Signal/Collect step, so the iteration limit
+ * and the convergence checking interval keep their meaning.
+ */
+object SharedMemoryWolf {
+
+  def solveProblem(
+    functions: TraversableOnce[OptimizableFunction],
+    config: WolfConfig,
+    boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty,
+    initialConsensus: Map[Int, Double] = Map.empty,
+    initialMultipliers: Map[Int, Array[Double]] = Map.empty,
+    resultSink: Option[ConsensusSink] = None): ProblemSolution = {
+    if (config.maxIterations > 0) {
+      val (problem, graphLoadingTime) = Timer.time {
+        new FlatConsensusProblem(functions.toArray, config, boundsOnConsensusVars, initialConsensus, initialMultipliers)
+      }
+      println(s"Flat ADMM problem creation completed in $graphLoadingTime ms: ${problem.numberOfFunctions} functions, " +
+        s"${problem.numberOfVariables} consensus variables.\nStarting inference.")
+      val pool = new ForkJoinPool(config.parallelism.getOrElse(Runtime.getRuntime.availableProcessors))
+      try {
+        val (convergence, inferenceTime) = Timer.time {
+          val convergence = config.globalConvergenceDetection.map(_ => Wolf.createConvergenceDetection(config))
+          val startTime = System.currentTimeMillis
+          var iteration = 0
+          var terminationMessage = "Computation finished because the steps limit was reached."
+          var done = false
+          while (!done && iteration < config.maxIterations) {
+            problem.iterate(pool)
+            iteration += 1
+            if (convergence.isDefined) {
+              val detection = convergence.get
+              detection.collectStepsSoFar += 1
+              if (detection.collectStepsSoFar % detection.checkingInterval == 1) {
+                val (primal, dual, objective) = problem.convergenceData(pool, detection.computeObjective)
+                if (detection.isConverged(primal, dual, objective, false)) {
+                  terminationMessage = if (objective == 0) {
+                    "Computation finished because setting all the variables to 0 is a solution."
+                  } else {
+                    "Computation finished because the global error was small enough."
+                  }
+                  done = true
+                } else {
+                  detection match {
+                    case adaptive: AdaptiveStepSize =>
+                      adaptive.adaptStepSize.foreach(problem.updateStepSize)
+                    case other =>
+                  }
+                }
+              }
+            }
+            if (!done && config.timeLimit.isDefined && System.currentTimeMillis - startTime >= config.timeLimit.get) {
+              terminationMessage = "Computation finished because the time limit was reached."
+              done = true
+            }
+          }
+          println(terminationMessage)
+          convergence
+        }
+        val (results, resultAggregationTime) = Timer.time {
+          resultSink match {
+            case Some(sink) =>
+              problem.foreachResult(sink.put)
+              new IntDoubleHashMap(initialSize = 1, rehashFraction = 0.5f)
+            case None =>
+              problem.results
+          }
+        }
+        ProblemSolution(
+          stats = None,
+          results = results,
+          convergence = convergence,
+          graphLoadingTime = graphLoadingTime,
+          inferenceTime = inferenceTime,
+          resultAggregationTime = resultAggregationTime,
+          multipliers = if (config.collectMultipliers) Some(problem.multipliers) else None)
+      } finally {
+        pool.shutdown
+      }
+    } else {
+      // maxIterations <= 0.
+      ProblemSolution(
+        stats = None,
+        results = new IntDoubleHashMap(),
+        convergence = None,
+        graphLoadingTime = 0,
+        inferenceTime = 0,
+        resultAggregationTime = 0)
+    }
+  }
+}
+
+/**
+ * Flat representation of a consensus optimization problem.
+ * The optimizable functions keep their local variables (x) and multipliers (y),
+ * the consensus variables (z) are stored in a primitive array.
+ */
+final class FlatConsensusProblem(
+  val functions: Array[OptimizableFunction],
+  config: WolfConfig,
+  boundsOnConsensusVars: Map[Int, (Double, Double)],
+  initialConsensus: Map[Int, Double] = Map.empty,
+  initialMultipliers: Map[Int, Array[Double]] = Map.empty) {
+
+  val numberOfFunctions = functions.length
+
+  // The consensus variable ids, indexed by the local index of the variable.
+  val variableIds: Array[Int] = {
+    val ids = new ArrayBuffer[Int]
+    val seen = new HashMap[Int, Int]
+    for (f <- functions; id <- f.idToIndexMappings) {
+      if (!seen.contains(id)) {
+        seen.put(id, ids.length)
+        ids += id
+      }
+    }
+    ids.toArray
+  }
+
+  val numberOfVariables = variableIds.length
+
+  private[this] val variableIndex: HashMap[Int, Int] = {
+    val index = new HashMap[Int, Int]
+    var i = 0
+    while (i < numberOfVariables) {
+      index.put(variableIds(i), i)
+      i += 1
+    }
+    index
+  }
+
+  val lowerBounds: Array[Double] = variableIds.map(boundsOnConsensusVars.getOrElse(_, (0.0, 1.0))._1)
+  val upperBounds: Array[Double] = variableIds.map(boundsOnConsensusVars.getOrElse(_, (0.0, 1.0))._2)
+
+  // CSR over the subproblems: the local variables of function f are stored in
+  // the slots slotOffsets(f) until slotOffsets(f + 1), in the order of its idToIndexMappings.
+  val slotOffsets: Array[Int] = {
+    val offsets = new Array[Int](numberOfFunctions + 1)
+    var f = 0
+    while (f < numberOfFunctions) {
+      offsets(f + 1) = offsets(f) + functions(f).idToIndexMappings.length
+      f += 1
+    }
+    offsets
+  }
+
+  val slotVariables: Array[Int] = {
+    val variables = new Array[Int](slotOffsets(numberOfFunctions))
+    var f = 0
+    while (f < numberOfFunctions) {
+      val mappings = functions(f).idToIndexMappings
+      var i = 0
+      while (i < mappings.length) {
+        variables(slotOffsets(f) + i) = variableIndex(mappings(i))
+        i += 1
+      }
+      f += 1
+    }
+    variables
+  }
+
+  /**
+   * Like the subproblem vertices, a function only votes once for a consensus variable,
+   * with the first local variable that is mapped to it.
+   */
+  private[this] def isVotingSlot(f: Int, i: Int): Boolean = {
+    val mappings = functions(f).idToIndexMappings
+    var j = 0
+    while (j < i) {
+      if (mappings(j) == mappings(i)) {
+        return false
+      }
+      j += 1
+    }
+    true
+  }
+
+  // CSR over the consensus variables: the votes for variable v are stored in
+  // voteOffsets(v) until voteOffsets(v + 1), each vote is a function and a position in its x.
+  val voteOffsets: Array[Int] = {
+    val offsets = new Array[Int](numberOfVariables + 1)
+    var f = 0
+    while (f < numberOfFunctions) {
+      var s = slotOffsets(f)
+      while (s < slotOffsets(f + 1)) {
+        if (isVotingSlot(f, s - slotOffsets(f))) {
+          offsets(slotVariables(s) + 1) += 1
+        }
+        s += 1
+      }
+      f += 1
+    }
+    var v = 0
+    while (v < numberOfVariables) {
+      offsets(v + 1) += offsets(v)
+      v += 1
+    }
+    offsets
+  }
+
+  val voteFunctions = new Array[Int](voteOffsets(numberOfVariables))
+  val votePositions = new Array[Int](voteOffsets(numberOfVariables))
+
+  fillVotes()
+
+  private[this] def fillVotes() {
+    val nextVote = voteOffsets.clone
+    var f = 0
+    while (f < numberOfFunctions) {
+      var s = slotOffsets(f)
+      while (s < slotOffsets(f + 1)) {
+        val position = s - slotOffsets(f)
+        if (isVotingSlot(f, position)) {
+          val v = slotVariables(s)
+          voteFunctions(nextVote(v)) = f
+          votePositions(nextVote(v)) = position
+          nextVote(v) += 1
+        }
+        s += 1
+      }
+      f += 1
+    }
+  }
+
+  val consensus: Array[Double] = variableIds.map(initialConsensus.getOrElse(_, 0.0))
+  val previousConsensus: Array[Double] = consensus.clone
+
+  functions.foreach(Wolf.warmStart(_, initialConsensus, initialMultipliers))
+
+  // Per function buffer for its view on the consensus, aligned with its idToIndexMappings.
+  private[this] val consensusBuffers: Array[Array[Double]] = functions.map(f => new Array[Double](f.idToIndexMappings.length))
+
+  functions.foreach(f => assert(f.getStepSize == config.stepSize))
+
+  private[this] val numberOfChunks = 4 * Runtime.getRuntime.availableProcessors
+
+  private[this] val updateSubproblems = (from: Int, until: Int) => {
+    var f = from
+    while (f < until) {
+      val function = functions(f)
+      val buffer = fillConsensusBuffer(f)
+      // Update the lagrangian multipliers (y) : y-step
+      function.updateLagrangeEfficient(buffer)
+      // Minimize the local function and get argmin (x) : x-step
+      function.optimizeEfficient(buffer)
+      if (config.overRelaxation != 1.0) {
+        function.overRelax(buffer, config.overRelaxation)
+      }
+      f += 1
+    }
+  }
+
+  private[this] val updateConsensus = (from: Int, until: Int) => {
+    var v = from
+    while (v < until) {
+      previousConsensus(v) = consensus(v)
+      val voteStart = voteOffsets(v)
+      val voteEnd = voteOffsets(v + 1)
+      var sum = 0.0
+      var k = voteStart
+      while (k < voteEnd) {
+        sum += functions(voteFunctions(k)).getX(votePositions(k))
+        k += 1
+      }
+      val average = if (voteEnd > voteStart) sum / (voteEnd - voteStart) else 0.0
+      consensus(v) = if (config.isBounded) {
+        math.max(math.min(average, upperBounds(v)), lowerBounds(v))
+      } else {
+        average
+      }
+      v += 1
+    }
+  }
+
+  private[this] def fillConsensusBuffer(f: Int): Array[Double] = {
+    val buffer = consensusBuffers(f)
+    val slotStart = slotOffsets(f)
+    var i = 0
+    while (i < buffer.length) {
+      buffer(i) = consensus(slotVariables(slotStart + i))
+      i += 1
+    }
+    buffer
+  }
+
+  /**
+   * One ADMM iteration: y-step and x-step in all subproblems, then z-step for all consensus variables.
+   */
+  def iterate(pool: ForkJoinPool) {
+    pool.invoke(new ChunkTask(0, numberOfFunctions, chunkSize(numberOfFunctions), updateSubproblems))
+    pool.invoke(new ChunkTask(0, numberOfVariables, chunkSize(numberOfVariables), updateConsensus))
+  }
+
+  /**
+   * The multipliers are stored unscaled, so only the functions need to know about the new step size.
+   */
+  def updateStepSize(stepSize: Double) {
+    var f = 0
+    while (f < numberOfFunctions) {
+      functions(f).setStepSize(stepSize)
+      f += 1
+    }
+  }
+
+  private[this] def chunkSize(size: Int) = math.max(1, size / numberOfChunks)
+
+  /**
+   * Computes the same primal, dual and objective aggregates as the
+   * Signal/Collect convergence detection, with one parallel pass over the variables
+   * and one over the functions. The objective value is NaN unless computeObjective is set.
+   */
+  def convergenceData(pool: ForkJoinPool, computeObjective: Boolean = true): (PrimalData, DualData, Double) = {
+    // Per chunk partial sums: squared errors, squared consensus, squared local variables,
+    // number of local variables, squared consensus deltas, squared multipliers, objective.
+    val partials = new Array[Double](numberOfChunks * 7)
+    pool.invoke(new ChunkTask(0, numberOfChunks, 1, (chunk: Int, ignored: Int) => {
+      val offset = chunk * 7
+      var v = chunkStart(chunk, numberOfVariables)
+      val variablesEnd = chunkStart(chunk + 1, numberOfVariables)
+      while (v < variablesEnd) {
+        val z = consensus(v)
+        val numberOfVotes = voteOffsets(v + 1) - voteOffsets(v)
+        var k = voteOffsets(v)
+        while (k < voteOffsets(v + 1)) {
+          val vote = functions(voteFunctions(k)).getX(votePositions(k))
+          val error = z - vote
+          partials(offset) += error * error
+          partials(offset + 2) += vote * vote
+          k += 1
+        }
+        partials(offset + 1) += z * z * numberOfVotes
+        partials(offset + 3) += numberOfVotes
+        val delta = z - previousConsensus(v)
+        partials(offset + 4) += delta * delta
+        v += 1
+      }
+      var f = chunkStart(chunk, numberOfFunctions)
+      val functionsEnd = chunkStart(chunk + 1, numberOfFunctions)
+      while (f < functionsEnd) {
+        val multipliers = functions(f).getYEfficient
+        var i = 0
+        while (i < multipliers.length) {
+          partials(offset + 5) += multipliers(i) * multipliers(i)
+          i += 1
+        }
+        if (computeObjective) {
+          partials(offset + 6) += functions(f).evaluateAtEfficient(fillConsensusBuffer(f))
+        }
+        f += 1
+      }
+    }))
+    val totals = new Array[Double](7)
+    var i = 0
+    while (i < partials.length) {
+      totals(i % 7) += partials(i)
+      i += 1
+    }
+    (PrimalData(totals(0), totals(1), totals(2), totals(3).toInt), DualData(totals(4), totals(5)),
+      if (computeObjective) totals(6) else Double.NaN)
+  }
+
+  private[this] def chunkStart(chunk: Int, size: Int): Int = ((chunk.toLong * size) / numberOfChunks).toInt
+
+  // The multipliers of the functions with an id, for warm starting a later run.
+  def multipliers: Map[Int, Array[Double]] = {
+    functions.filter(_.id.isDefined).map(f => (f.id.get, f.getYEfficient.clone)).toMap
+  }
+
+  def foreachResult(f: (Int, Double) => Unit) {
+    var v = 0
+    while (v < numberOfVariables) {
+      f(variableIds(v), consensus(v))
+      v += 1
+    }
+  }
+
+  def results: IntDoubleHashMap = {
+    val results = new IntDoubleHashMap(initialSize = Integer.highestOneBit(math.max(1, numberOfVariables)) * 2, rehashFraction = 0.5f)
+    var v = 0
+    while (v < numberOfVariables) {
+      results.put(variableIds(v), consensus(v))
+      v += 1
+    }
+    results
+  }
+}
+
+/**
+ * Recursively splits the range [from, until) until it is at most chunkSize long
+ * and runs the body on the chunks in parallel.
+ */
+final class ChunkTask(from: Int, until: Int, chunkSize: Int, body: (Int, Int) => Unit) extends RecursiveAction {
+  protected def compute() {
+    if (until - from <= chunkSize) {
+      body(from, until)
+    } else {
+      val middle = (from + until) >>> 1
+      ForkJoinTask.invokeAll(new ChunkTask(from, middle, chunkSize, body), new ChunkTask(middle, until, chunkSize, body))
+    }
+  }
+}
@@ -20,6 +20,8 @@
 
 package com.signalcollect.admm
 
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.HashMap
 import scala.reflect.runtime.universe
 
 import com.signalcollect.Edge
@@ -31,6 +33,7 @@ import com.signalcollect.GraphEditor
 import com.signalcollect.Vertex
 import com.signalcollect.admm.graph.AsyncConsensusVertex
 import com.signalcollect.admm.graph.AsyncSubproblemVertex
+import com.signalcollect.admm.graph.BlockSubproblemVertex
 import com.signalcollect.admm.graph.Consensus
 import com.signalcollect.admm.graph.ConsensusVertex
 import com.signalcollect.admm.graph.DummyEdge
@@ -57,7 +60,8 @@ case class ProblemSolution(
   convergence: Option[AbstractGlobalAdmmConvergenceDetection] = None,
   graphLoadingTime: Long,
   inferenceTime: Long,
-  resultAggregationTime: Long) // in case we have local convergence this is None.
+  resultAggregationTime: Long, // in case we have local convergence this is None.
+  multipliers: Option[Map[Int, Array[Double]]] = None) // Multipliers by function id, only collected if configured.
 
 case class WolfConfig(
   asynchronous: Boolean,
@@ -72,17 +76,27 @@ case class WolfConfig(
   isBounded: Boolean,
   serializeMessages: Boolean,
   eagerSignalCollectConvergenceDetection: Boolean,
-  heartbeatIntervalInMs: Int)
+  heartbeatIntervalInMs: Int,
+  sharedMemoryBackend: Boolean = false, // Solve with flat arrays and fork-join sweeps instead of a Signal/Collect graph.
+  adaptiveStepSize: Boolean = false, // Adapt the step size by balancing the primal and dual residuals, requires global convergence detection.
+  overRelaxation: Double = 1.0, // Over-relaxation parameter in (0, 2), 1.0 is plain ADMM.
+  collectMultipliers: Boolean = false, // Return the multipliers of the functions with an id, they can be used to warm start a later run.
+  parallelism: Option[Int] = None, // Number of threads of the shared-memory backend, all the cores by default.
+  subproblemBlockSize: Int = 1, // Number of functions per subproblem vertex, a block sends one summed vote per consensus variable.
+  graphPartitions: Option[Int] = None, // Place the vertices on the workers by partitioning the graph into this many parts, instead of by hashing their ids.
+  bulkGraphLoading: Boolean = false) // Create the vertices with all their edges in parallel on the workers, instead of adding every edge to the graph.
 
 case class NonExistentConsensusVertexHandlerFactory(
   asynchronous: Boolean, // If the execution is asynchronous.
   initialState: Double, // Initial value for the consensus variable.
   isBounded: Boolean, // Use bounding (cutoff below 0 and above 1).
   lazyThreshold: Option[Double], // Only send values that have changed.
-  boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty) // Push trivial bounds inside the nodes.
+  boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty, // Push trivial bounds inside the nodes.
+  initialStates: Map[Int, Double] = Map.empty, // Warm start values that override the initial state.
+  localCopies: Map[Int, Int] = Map.empty) // Number of votes of the variables that get summed votes from blocks.
   extends EdgeAddedToNonExistentVertexHandlerFactory[Int, Double] {
-  def createInstance: EdgeAddedToNonExistentVertexHandler[Int, Double] =
-    new NonExistentConsensusVertexHandler(asynchronous, initialState, isBounded, lazyThreshold, boundsOnConsensusVars)
+  def createInstance: NonExistentConsensusVertexHandler =
+    new NonExistentConsensusVertexHandler(asynchronous, initialState, isBounded, lazyThreshold, boundsOnConsensusVars, initialStates, localCopies)
   override def toString = "NoneExistentConsensusVertexFactory"
 }
 
@@ -91,36 +105,44 @@ case class NonExistentConsensusVertexHandler(
   initialState: Double, // Initial value for the consensus variable.
   isBounded: Boolean, // Use bounding (cutoff below 0 and above 1).
   lazyThreshold: Option[Double], // Only continue if a value changed by more than the threshold.
-  boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty) // Push trivial bounds inside the nodes.
+  boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty, // Push trivial bounds inside the nodes.
+  initialStates: Map[Int, Double] = Map.empty, // Warm start values that override the initial state.
+  localCopies: Map[Int, Int] = Map.empty) // Number of votes of the variables that get summed votes from blocks.
   extends EdgeAddedToNonExistentVertexHandler[Int, Double] {
   def handleImpossibleEdgeAddition(edge: Edge[Int], vertexId: Int, graphEditor: GraphEditor[Int, Double]): Option[Vertex[Int, _, Int, Double]] = {
+    Some(createConsensusVertex(vertexId))
+  }
+
+  def createConsensusVertex(vertexId: Int): ConsensusVertex = {
     val (lowerBound, upperBound) =
       boundsOnConsensusVars.getOrElse(vertexId, (0.0, 1.0))
+    val initialState = initialStates.getOrElse(vertexId, this.initialState)
     if (asynchronous) {
       if (lazyThreshold.isDefined) {
         println("Asynchronous inferencing cannot be combined with lazy inferencing, lazy setting is being ignored.")
       }
-      Some(new AsyncConsensusVertex(
+      new AsyncConsensusVertex(
         variableId = vertexId,
         initialState = initialState,
         isBounded = isBounded,
         lowerBound,
-        upperBound))
+        upperBound)
     } else {
       if (lazyThreshold.isDefined) {
-        Some(new LazyConsensusVertex(
+        new LazyConsensusVertex(
           variableId = vertexId,
           initialState = initialState,
           isBounded = isBounded,
           lowerBound,
-          upperBound))
+          upperBound)
       } else {
-        Some(new ConsensusVertex(
+        new ConsensusVertex(
           variableId = vertexId,
           initialState = initialState,
           isBounded = isBounded,
           lowerBound,
-          upperBound))
+          upperBound,
+          localCopies.getOrElse(vertexId, 0))
       }
     }
   }
@@ -129,13 +151,37 @@ case class NonExistentConsensusVertexHandler(
 // Solves problems.
 object Wolf {
   def solveProblem(
-    functions: Traversable[OptimizableFunction],
+    functions: TraversableOnce[OptimizableFunction],
     nodeActors: Option[Array[ActorRef]] = None,
     config: WolfConfig,
-    boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty): ProblemSolution = {
-    if (config.maxIterations > 0) {
+    boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty,
+    initialConsensus: Map[Int, Double] = Map.empty, // Warm start values of the consensus variables.
+    initialMultipliers: Map[Int, Array[Double]] = Map.empty, // Warm start multipliers by function id.
+    resultSink: Option[ConsensusSink] = None): ProblemSolution = { // If defined, the results are streamed here and not returned.
+    assert(config.overRelaxation > 0 && config.overRelaxation < 2, "The over-relaxation parameter has to be in (0, 2).")
+    if (config.adaptiveStepSize && config.globalConvergenceDetection.isEmpty) {
+      println("Adaptive step sizes require global convergence detection, the setting is being ignored.")
+    }
+    if (config.sharedMemoryBackend) {
+      if (nodeActors.isDefined) {
+        println("The shared-memory backend runs on a single machine, the node actors are being ignored.")
+      }
+      if (config.subproblemBlockSize > 1) {
+        println("The shared-memory backend has no subproblem vertices, the block setting is being ignored.")
+      }
+      if (config.graphPartitions.isDefined) {
+        println("The shared-memory backend has no workers to partition the graph for, the partitioning setting is being ignored.")
+      }
+      if (config.bulkGraphLoading) {
+        println("The shared-memory backend does not load a graph, the bulk loading setting is being ignored.")
+      }
+      SharedMemoryWolf.solveProblem(functions, config, boundsOnConsensusVars, initialConsensus, initialMultipliers, resultSink)
+    } else if (config.maxIterations > 0) {
+      if (config.parallelism.isDefined) {
+        println("The Signal/Collect backend uses all the cores of each node, the parallelism setting is being ignored.")
+      }
       val (graph, graphLoadingTime) = Timer.time {
-        createGraph(functions, nodeActors, config, config.serializeMessages, boundsOnConsensusVars)
+        createGraph(functions, nodeActors, config, config.serializeMessages, boundsOnConsensusVars, initialConsensus, initialMultipliers)
       }
       try {
         val ((stats, convergence), inferenceTime) = Timer.time {
@@ -148,21 +194,7 @@ object Wolf {
           } else { baseExecutionConfig }
           if (config.globalConvergenceDetection.isDefined) {
             // Global convergence case:
-            val globalConvergence = if (config.objectiveLoggingEnabled) {
-              new GlobalAdmmConvergenceDetection(
-                absoluteEpsilon = config.absoluteEpsilon,
-                relativeEpsilon = config.relativeEpsilon,
-                checkingInterval = config.globalConvergenceDetection.get,
-                aggregationInterval = if (config.asynchronous) 500 else 1 // every iteration for sync, every second for async.
-                ) with DebugLoggingConvergenceDetection
-            } else {
-              GlobalAdmmConvergenceDetection(
-                absoluteEpsilon = config.absoluteEpsilon,
-                relativeEpsilon = config.relativeEpsilon,
-                checkingInterval = config.globalConvergenceDetection.get,
-                aggregationInterval = if (config.asynchronous) 500 else 1 // every iteration for sync, every second for async.
-                )
-            }
+            val globalConvergence = createConvergenceDetection(config)
             val stats = graph.execute(executionConfig.withGlobalTerminationDetection(globalConvergence))
             (stats, Some(globalConvergence))
           } else {
@@ -184,8 +216,12 @@ object Wolf {
               "Computation terminated on user request."
           }
           println(convergenceMessage)
-          val resultMap = graph.aggregate(ConsensusAggregator)
-          resultMap.getOrElse(new IntDoubleHashMap(initialSize = 1, rehashFraction = 0.5f))
+          extractResults(graph, nodeActors.isEmpty && !config.serializeMessages, resultSink)
+        }
+        val multipliers = if (config.collectMultipliers) {
+          Some(graph.aggregate(MultiplierAggregator).getOrElse(Map.empty[Int, Array[Double]]))
+        } else {
+          None
         }
         val solution = ProblemSolution(
           stats = Some(stats),
@@ -193,7 +229,8 @@ object Wolf {
           convergence = convergence,
           graphLoadingTime = graphLoadingTime,
           inferenceTime = inferenceTime,
-          resultAggregationTime = resultAggregationTime)
+          resultAggregationTime = resultAggregationTime,
+          multipliers = multipliers)
         solution
       } finally {
         graph.shutdown
@@ -210,21 +247,121 @@ object Wolf {
     }
   }
 
+  /**
+   * If the graph is in this JVM the workers write the consensus values directly into the sink,
+   * or into a preallocated array that becomes the result map. Otherwise the results are aggregated.
+   * Returns an empty map if the results are streamed to the sink.
+   */
+  def extractResults(graph: Graph[Int, Double], local: Boolean, resultSink: Option[ConsensusSink]): IntDoubleHashMap = {
+    if (local) {
+      val sink = resultSink.getOrElse(new ArrayConsensusSink(graph.aggregate(MaxConsensusIdAggregator)))
+      graph.foreachVertex {
+        case c: Consensus => sink.put(c.variableId, c.consensus)
+        case other =>
+      }
+      sink match {
+        case arraySink: ArrayConsensusSink if resultSink.isEmpty => arraySink.toIntDoubleHashMap
+        case other => new IntDoubleHashMap(initialSize = 1, rehashFraction = 0.5f)
+      }
+    } else {
+      val resultMap = graph.aggregate(ConsensusAggregator).getOrElse(new IntDoubleHashMap(initialSize = 1, rehashFraction = 0.5f))
+      resultSink match {
+        case Some(sink) =>
+          resultMap.foreach { case (id, consensus) => sink.put(id, consensus) }
+          new IntDoubleHashMap(initialSize = 1, rehashFraction = 0.5f)
+        case None =>
+          resultMap
+      }
+    }
+  }
+
+  def createConvergenceDetection(config: WolfConfig): GlobalAdmmConvergenceDetection = {
+    val aggregationInterval = if (config.asynchronous) 500 else 1 // every iteration for sync, every second for async.
+    val adaptive = if (config.adaptiveStepSize && config.asynchronous) {
+      println("Adaptive step sizes cannot be combined with asynchronous inferencing, adaptive setting is being ignored.")
+      false
+    } else {
+      config.adaptiveStepSize
+    }
+    if (config.objectiveLoggingEnabled && adaptive) {
+      new GlobalAdmmConvergenceDetection(
+        stepSize = config.stepSize,
+        absoluteEpsilon = config.absoluteEpsilon,
+        relativeEpsilon = config.relativeEpsilon,
+        checkingInterval = config.globalConvergenceDetection.get,
+        aggregationInterval = aggregationInterval) with DebugLoggingConvergenceDetection with AdaptiveStepSize
+    } else if (config.objectiveLoggingEnabled) {
+      new GlobalAdmmConvergenceDetection(
+        stepSize = config.stepSize,
+        absoluteEpsilon = config.absoluteEpsilon,
+        relativeEpsilon = config.relativeEpsilon,
+        checkingInterval = config.globalConvergenceDetection.get,
+        aggregationInterval = aggregationInterval) with DebugLoggingConvergenceDetection
+    } else if (adaptive) {
+      new GlobalAdmmConvergenceDetection(
+        stepSize = config.stepSize,
+        absoluteEpsilon = config.absoluteEpsilon,
+        relativeEpsilon = config.relativeEpsilon,
+        checkingInterval = config.globalConvergenceDetection.get,
+        aggregationInterval = aggregationInterval) with AdaptiveStepSize
+    } else {
+      GlobalAdmmConvergenceDetection(
+        stepSize = config.stepSize,
+        absoluteEpsilon = config.absoluteEpsilon,
+        relativeEpsilon = config.relativeEpsilon,
+        checkingInterval = config.globalConvergenceDetection.get,
+        aggregationInterval = aggregationInterval)
+    }
+  }
+
   //Convention: subproblems have negative ids.
   def createGraph(
-    functions: Traversable[OptimizableFunction],
+    functions: TraversableOnce[OptimizableFunction],
     nodeActors: Option[Array[ActorRef]] = None,
     config: WolfConfig,
     serializeMessages: Boolean = false,
-    boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty): Graph[Int, Double] = {
+    boundsOnConsensusVars: Map[Int, (Double, Double)] = Map.empty,
+    initialConsensus: Map[Int, Double] = Map.empty,
+    initialMultipliers: Map[Int, Array[Double]] = Map.empty): Graph[Int, Double] = {
     //println(s"Creating the ADMM graph ...")
+    val blocks: Option[Array[Array[OptimizableFunction]]] = if (config.subproblemBlockSize > 1) {
+      if (config.asynchronous) {
+        println("Blocks of subproblems cannot be combined with asynchronous inferencing, the block setting is being ignored.")
+        None
+      } else {
+        if (config.lazyThreshold.isDefined) {
+          println("Blocks of subproblems cannot be combined with lazy inferencing, lazy setting is being ignored.")
+        }
+        Some(functions.toArray.grouped(config.subproblemBlockSize).toArray)
+      }
+    } else {
+      None
+    }
+    // The subproblems are only materialized if they are blocked, partitioned or bulk loaded, otherwise they are streamed into the graph.
+    val subproblems: Option[Array[Array[OptimizableFunction]]] = blocks.orElse {
+      if (config.graphPartitions.isDefined || config.bulkGraphLoading) Some(functions.toArray.map(Array(_))) else None
+    }
+    val partitioning = for (numberOfParts <- config.graphPartitions; units <- subproblems) yield {
+      // Every node has at least one worker, without node actors the graph runs locally with one worker per core.
+      val minNumberOfWorkers = nodeActors.map(_.length).getOrElse(Runtime.getRuntime.availableProcessors)
+      if (numberOfParts < minNumberOfWorkers) {
+        println(s"The graph is partitioned into $numberOfParts parts for at least $minNumberOfWorkers workers, some workers will be idle.")
+      }
+      val (p, partitioningTime) = Timer.time {
+        FactorGraphPartitioner.partition(subproblemVertexIds(units), units.map(_.flatMap(_.idToIndexMappings).distinct), numberOfParts)
+      }
+      println(s"ADMM graph partitioning completed in $partitioningTime ms: $p.")
+      p
+    }
     // Use node actors with graph builder, if they have been passed.
     val consensusHandlerFactory = new NonExistentConsensusVertexHandlerFactory(
       asynchronous = config.asynchronous, // If the execution is asynchronous.
       initialState = 0.0, // Initial value for the consensus variable.
       isBounded = config.isBounded, // Use bounding (cutoff below 0 and above 1) .
-      lazyThreshold = config.lazyThreshold, // Only send values that have changed.
-      boundsOnConsensusVars)
+      lazyThreshold = if (blocks.isDefined) None else config.lazyThreshold, // Only send values that have changed.
+      boundsOnConsensusVars,
+      initialStates = initialConsensus,
+      localCopies = blocks.map(localCopies).getOrElse(Map.empty))
     val graphBuilder = {
       nodeActors.map(new GraphBuilder[Int, Double]().withPreallocatedNodes(_)).
         getOrElse(new GraphBuilder[Int, Double]()).
@@ -262,29 +399,192 @@ object Wolf {
           "com.signalcollect.admm.graph.AsyncSubproblemVertex",
           "com.signalcollect.admm.graph.LazyConsensusVertex",
           "com.signalcollect.admm.graph.LazySubproblemVertex",
+          "com.signalcollect.admm.graph.BlockSubproblemVertex",
+          "com.signalcollect.admm.FactorGraphPartitioning",
+          "com.signalcollect.admm.PartitionedMapperFactory",
+          "com.signalcollect.admm.PartitionedVertexToWorkerMapper",
           "com.signalcollect.MultiAggregator",
           "com.signalcollect.admm.PrimalAggregator$",
           "com.signalcollect.admm.DualAggregator$",
+          "com.signalcollect.admm.ResidualAggregator$",
+          "com.signalcollect.admm.MaxConsensusIdAggregator$",
           "com.signalcollect.admm.ConsensusAggregator$",
+          "com.signalcollect.admm.MultiplierAggregator$",
           "com.signalcollect.admm.PrimalData",
           "com.signalcollect.admm.DualData",
           "akka.actor.PoisonPill$"))
     }
-    val graph = graphBuilder.build
+    val graph = partitioning.map(p => graphBuilder.withMapperFactory(PartitionedMapperFactory(p))).getOrElse(graphBuilder).build
 
     var id = -1
-    for (function <- functions) {
-      createSubproblem(graph, id, function, config)
-      id -= 1
+    subproblems match {
+      case Some(units) if config.bulkGraphLoading =>
+        bulkLoad(graph, units, blocks.isDefined, partitioning, config, consensusHandlerFactory.createInstance, initialConsensus, initialMultipliers)
+      case Some(units) =>
+        for (unit <- units) {
+          if (blocks.isDefined) {
+            createBlock(graph, id, unit, config, initialConsensus, initialMultipliers)
+          } else {
+            createSubproblem(graph, id, unit.head, config, initialConsensus, initialMultipliers)
+          }
+          id -= unit.length
+        }
+      case None =>
+        for (function <- functions) {
+          createSubproblem(graph, id, function, config, initialConsensus, initialMultipliers)
+          id -= 1
+        }
     }
     graph
   }
 
+  /**
+   * Loads the subproblems without adding their edges through the graph editor.
+   * The subproblems are split into chunks, by part if the graph is partitioned, and each chunk is loaded by a
+   * graph loader that Signal/Collect runs on the worker of its first vertex. A loader creates the subproblem vertices
+   * and the consensus vertices of its chunk with all their edges and target arrays, and only adds the vertices to the graph.
+   */
+  def bulkLoad(
+    graph: Graph[Int, Double],
+    subproblems: Array[Array[OptimizableFunction]],
+    blocked: Boolean,
+    partitioning: Option[FactorGraphPartitioning],
+    config: WolfConfig,
+    consensusHandler: NonExistentConsensusVertexHandler,
+    initialConsensus: Map[Int, Double] = Map.empty,
+    initialMultipliers: Map[Int, Array[Double]] = Map.empty) {
+    val vertexIds = subproblemVertexIds(subproblems)
+    val numberOfChunks = partitioning.map(_.numberOfParts).getOrElse(4 * Runtime.getRuntime.availableProcessors)
+    def chunkOf(vertexId: Int): Int = partitioning.map(_.part(vertexId)).getOrElse(FactorGraphPartitioner.hashPart(vertexId, numberOfChunks))
+
+    val subproblemsOfChunk = Array.fill(numberOfChunks)(new ArrayBuffer[Int])
+    // The ids of the subproblems that use each consensus variable.
+    val consensusEdges = new HashMap[Int, ArrayBuffer[Int]]
+    var i = 0
+    while (i < subproblems.length) {
+      subproblemsOfChunk(chunkOf(vertexIds(i))) += i
+      for (consensusId <- subproblems(i).flatMap(_.idToIndexMappings).distinct) {
+        consensusEdges.getOrElseUpdate(consensusId, new ArrayBuffer[Int]) += vertexIds(i)
+      }
+      i += 1
+    }
+    val consensusOfChunk = Array.fill(numberOfChunks)(new ArrayBuffer[(Int, Array[Int])])
+    for ((consensusId, sources) <- consensusEdges) {
+      consensusOfChunk(chunkOf(consensusId)) += ((consensusId, sources.toArray))
+    }
+
+    for (chunk <- 0 until numberOfChunks if !subproblemsOfChunk(chunk).isEmpty || !consensusOfChunk(chunk).isEmpty) {
+      val chunkSubproblems = subproblemsOfChunk(chunk).map(i => (vertexIds(i), subproblems(i))).toArray
+      val chunkConsensus = consensusOfChunk(chunk).toArray
+      val hint = chunkSubproblems.headOption.map(_._1).getOrElse(chunkConsensus.head._1)
+      val loader = { graphEditor: GraphEditor[Int, Double] =>
+        for ((vertexId, functions) <- chunkSubproblems) {
+          val subproblem = if (blocked) {
+            blockVertex(vertexId, functions, config, initialConsensus, initialMultipliers)
+          } else {
+            subproblemVertex(vertexId, functions.head, config, initialConsensus, initialMultipliers)
+          }
+          graphEditor.addVertex(subproblem)
+        }
+        for ((consensusId, sources) <- chunkConsensus) {
+          val consensus = consensusHandler.createConsensusVertex(consensusId)
+          sources.foreach(source => consensus.addEdge(new DummyEdge(source), graphEditor))
+          // Builds the array of the target ids while loading.
+          consensus.signalTargets
+          graphEditor.addVertex(consensus)
+        }
+      }
+      graph.loadGraph(Iterator(loader), Some(hint))
+    }
+    graph.awaitIdle
+  }
+
+  /**
+   * The ids that createGraph gives to the vertices of the subproblems, which are blocks or single functions.
+   */
+  def subproblemVertexIds(subproblems: Array[Array[OptimizableFunction]]): Array[Int] = {
+    var id = -1
+    subproblems.map { functions =>
+      val vertexId = functions.head.id match {
+        case Some(s) => -s
+        case None => id
+      }
+      id -= functions.length
+      vertexId
+    }
+  }
+
+  /**
+   * Number of votes of each consensus variable, for the variables where it is not the same as the number of blocks
+   * that use the variable. Each function votes once for each of its variables.
+   */
+  def localCopies(blocks: Array[Array[OptimizableFunction]]): Map[Int, Int] = {
+    val copies = new HashMap[Int, Int]
+    val edges = new HashMap[Int, Int]
+    for (block <- blocks) {
+      for (f <- block; consensusId <- f.idToIndexMappings.distinct) {
+        copies(consensusId) = copies.getOrElse(consensusId, 0) + 1
+      }
+      for (consensusId <- block.flatMap(_.idToIndexMappings).distinct) {
+        edges(consensusId) = edges.getOrElse(consensusId, 0) + 1
+      }
+    }
+    copies.filter { case (consensusId, count) => count != edges(consensusId) }.toMap
+  }
+
+  /**
+   * Like createSubproblem, for a block of functions in a single vertex.
+   * The block gets the id of its first function.
+   */
+  def createBlock(
+    graph: Graph[Int, Double],
+    id: Int,
+    functions: Array[OptimizableFunction],
+    config: WolfConfig,
+    initialConsensus: Map[Int, Double] = Map.empty,
+    initialMultipliers: Map[Int, Array[Double]] = Map.empty) = {
+    val blockId = functions.head.id match {
+      case Some(s) => -s
+      case None => id
+    }
+    val block = blockVertex(blockId, functions, config, initialConsensus, initialMultipliers)
+    for (consensusId <- block.consensusIds) {
+      graph.addEdge(consensusId, new DummyEdge(blockId))
+    }
+    graph.addVertex(block)
+  }
+
+  /**
+   * Creates the vertex of a block, with its edges to the consensus variables.
+   */
+  def blockVertex(
+    blockId: Int,
+    functions: Array[OptimizableFunction],
+    config: WolfConfig,
+    initialConsensus: Map[Int, Double],
+    initialMultipliers: Map[Int, Array[Double]]): BlockSubproblemVertex = {
+    for (f <- functions) {
+      assert(f.getStepSize == config.stepSize)
+      warmStart(f, initialConsensus, initialMultipliers)
+    }
+    val block = new BlockSubproblemVertex(
+      blockId = blockId,
+      functions = functions,
+      relaxation = config.overRelaxation,
+      initialConsensus = initialConsensus)
+    for (consensusId <- block.consensusIds) {
+      block.addEdge(new DummyEdge(consensusId), null)
+    }
+    block
+  }
+
   def createSubproblem(
     graph: Graph[Int, Double],
     id: Int,
     f: OptimizableFunction,
-    config: WolfConfig) = {
+    config: WolfConfig,
+    initialConsensus: Map[Int, Double] = Map.empty,
+    initialMultipliers: Map[Int, Array[Double]] = Map.empty) = {
 
     // Debug statement.
     //if (id.abs % 10000 == 0) print("*")
@@ -296,31 +596,72 @@ object Wolf {
       case Some(s) => -s
       case None => id
     }
+    val subproblem = subproblemVertex(subId, f, config, initialConsensus, initialMultipliers)
+    for (consensusId <- f.idToIndexMappings) {
+      graph.addEdge(consensusId, new DummyEdge(subId))
+    }
+    graph.addVertex(subproblem)
+  }
+
+  /**
+   * Creates the vertex of a subproblem, with its edges to the consensus variables.
+   */
+  def subproblemVertex(
+    subId: Int,
+    f: OptimizableFunction,
+    config: WolfConfig,
+    initialConsensus: Map[Int, Double],
+    initialMultipliers: Map[Int, Array[Double]]): SubproblemVertex = {
     assert(f.getStepSize == config.stepSize)
+    val warmConsensus = warmStart(f, initialConsensus, initialMultipliers)
     val subproblem = if (config.asynchronous) {
       if (config.lazyThreshold.isDefined) {
         println("Asynchronous inferencing cannot be combined with lazy inferencing, lazy setting is being ignored.")
       }
       new AsyncSubproblemVertex(
         subproblemId = subId,
-        optimizableFunction = f)
+        optimizableFunction = f,
+        relaxation = config.overRelaxation,
+        initialConsensus = warmConsensus)
     } else {
       if (config.lazyThreshold.isDefined) {
         new LazySubproblemVertex(
           subproblemId = subId,
           optimizableFunction = f,
-          absoluteSignallingThreshold = config.lazyThreshold.get)
+          absoluteSignallingThreshold = config.lazyThreshold.get,
+          relaxation = config.overRelaxation,
+          initialConsensus = warmConsensus)
       } else {
         new SubproblemVertex(
           subproblemId = subId,
-          optimizableFunction = f)
+          optimizableFunction = f,
+          relaxation = config.overRelaxation,
+          initialConsensus = warmConsensus)
       }
     }
     for (consensusId <- f.idToIndexMappings) {
-      subproblem.addEdge(new DummyEdge(consensusId), graph)
-      graph.addEdge(consensusId, new DummyEdge(subId))
+      subproblem.addEdge(new DummyEdge(consensusId), null)
+    }
+    subproblem
+  }
+
+  /**
+   * Warm starts the function with the passed consensus values and the multipliers stored under its id.
+   * Variables without a warm start value start at 0, as usual.
+   * Returns the consensus values aligned with the idToIndexMappings, or null if there are none.
+   */
+  def warmStart(
+    f: OptimizableFunction,
+    initialConsensus: Map[Int, Double],
+    initialMultipliers: Map[Int, Array[Double]]): Array[Double] = {
+    if (initialConsensus.isEmpty && initialMultipliers.isEmpty) {
+      null
+    } else {
+      val consensus = f.idToIndexMappings.map(initialConsensus.getOrElse(_, 0.0))
+      val multipliers = f.id.flatMap(initialMultipliers.get).filter(_.length == consensus.length)
+      f.warmStart(consensus, multipliers)
+      consensus
     }
-    graph.addVertex(subproblem)
   }
 }
 
@@ -357,11 +698,50 @@ case object ConsensusAggregator extends ModularAggregationOperation[Option[IntDo
   }
 }
 
+case object MaxConsensusIdAggregator extends ModularAggregationOperation[Int] {
+  val neutralElement = 0
+  def extract(v: Vertex[_, _, _, _]): Int = {
+    v match {
+      case c: Consensus => c.variableId
+      case other => neutralElement
+    }
+  }
+  def aggregate(a: Int, b: Int): Int = math.max(a, b)
+}
+
+case object MultiplierAggregator extends ModularAggregationOperation[Option[Map[Int, Array[Double]]]] {
+  val neutralElement = None
+  def extract(v: Vertex[_, _, _, _]): Option[Map[Int, Array[Double]]] = {
+    v match {
+      case s: Subproblem if s.optimizableFunction.id.isDefined =>
+        Some(Map(s.optimizableFunction.id.get -> s.multipliers.clone))
+      case b: BlockSubproblemVertex =>
+        Some(b.functions.flatMap(f => f.id.map(_ -> f.getYEfficient.clone)).toMap)
+      case other =>
+        None
+    }
+  }
+  def aggregate(
+    a: Option[Map[Int, Array[Double]]],
+    b: Option[Map[Int, Array[Double]]]): Option[Map[Int, Array[Double]]] = {
+    if (a.isEmpty) {
+      b
+    } else if (b.isEmpty) {
+      a
+    } else if (a.get.size < b.get.size) {
+      Some(b.get ++ a.get)
+    } else {
+      Some(a.get ++ b.get)
+    }
+  }
+}
+
 case object ObjectiveValueAggregator extends ModularAggregationOperation[Double] {
   val neutralElement = 0.0
   def extract(v: Vertex[_, _, _, _]): Double = {
     v match {
       case s: Subproblem => s.optimizableFunction.evaluateAtEfficient(s.consensusAssignments)
+      case b: BlockSubproblemVertex => b.objectiveValue
       case other => neutralElement
     }
   }
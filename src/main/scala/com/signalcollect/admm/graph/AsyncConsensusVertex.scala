@@ -44,7 +44,7 @@ final class AsyncConsensusVertex(
   override def deliverSignalWithSourceId(signal: Double, sourceId: Int, graphEditor: GraphEditor[Int, Double]): Boolean = {
     signalsReceivedSinceCollect += 1
     mostRecentSignalMap.put(sourceId, signal)
-    if (signalsReceivedSinceCollect == _targetIds.size) {
+    if (signalsReceivedSinceCollect == signalTargets.length) {
       shouldSignal = true
       signalsReceivedSinceCollect = 0
       state = collect
@@ -34,8 +34,10 @@ import com.signalcollect.admm.optimizers.OptimizableFunction
  */
 class AsyncSubproblemVertex(
   subproblemId: Int, // The id of the subproblem.
-  optimizableFunction: OptimizableFunction) // The function that is contained in the subproblem.
-  extends SubproblemVertex(subproblemId, optimizableFunction) {
+  optimizableFunction: OptimizableFunction, // The function that is contained in the subproblem.
+  relaxation: Double = 1.0, // Over-relaxation parameter in (0, 2), 1.0 is plain ADMM.
+  initialConsensus: Array[Double] = null) // Warm start values of the consensus variables, aligned with the idToIndexMappings.
+  extends SubproblemVertex(subproblemId, optimizableFunction, relaxation, initialConsensus) {
 
   var signalsReceivedSinceCollect = 0
 
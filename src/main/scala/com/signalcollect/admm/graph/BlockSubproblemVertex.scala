@@ -0,0 +1,203 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.admm.graph
+
+import com.signalcollect.GraphEditor
+import com.signalcollect.MemoryEfficientDataGraphVertex
+import com.signalcollect.admm.optimizers.OptimizableFunction
+
+/**
+ * Subproblem vertex that contains several optimizable functions, typically many small ones.
+ * The x- and y-steps of all the functions run in one collect, and the vertex sends a single vote per
+ * consensus variable it touches: the sum of the votes of its functions for that variable.
+ * Like in the SubproblemVertex, a function that uses a variable more than once votes with the first use.
+ *
+ * The consensus vertices have to know over how many votes they average, see ConsensusVertex.localCopies.
+ * Their residual terms only see the sums, so the block reports the difference between the sum of the
+ * squared votes and the squared sums of the votes, which the PrimalAggregator adds to the residual terms.
+ */
+final class BlockSubproblemVertex(
+  blockId: Int, // The id of the block, negative like the ids of the subproblems.
+  val functions: Array[OptimizableFunction], // The functions that are contained in the block.
+  val relaxation: Double = 1.0, // Over-relaxation parameter in (0, 2), 1.0 is plain ADMM.
+  initialConsensus: Map[Int, Double] = Map.empty) // Warm start values of the consensus variables, only used in the constructor.
+  extends MemoryEfficientDataGraphVertex[Array[Double], Double, Double](blockId, null.asInstanceOf[Array[Double]]) {
+
+  type OutgoingSignalType = Double
+
+  // The consensus variables of all the functions, without repetitions.
+  val consensusIds: Array[Int] = functions.flatMap(_.idToIndexMappings).distinct
+
+  // For each function and each of its local variables, the index of the variable in consensusIds.
+  private[this] val blockIndices: Array[Array[Int]] = {
+    val indexOfId = consensusIds.zipWithIndex.toMap
+    functions.map(_.idToIndexMappings.map(indexOfId))
+  }
+
+  // For each function, the local indices whose values are its votes.
+  private[this] val voteIndices: Array[Array[Int]] = functions.map(f => SubproblemVertex.firstOccurrences(f.idToIndexMappings))
+
+  private[this] val initialValues: Array[Double] = {
+    if (initialConsensus.isEmpty) null else consensusIds.map(initialConsensus.getOrElse(_, 0.0))
+  }
+
+  // Buffers that are reused between collects.
+  private[this] val consensusValues = new Array[Double](consensusIds.length)
+  private[this] val consensusBuffers: Array[Array[Double]] = functions.map(f => new Array[Double](f.idToIndexMappings.length))
+  private[this] val votes = new Array[Double](consensusIds.length)
+  private[this] val squaredVotes = new Array[Double](consensusIds.length)
+
+  /**
+   * Sum over the consensus variables of (sum of the squared votes - squared sum of the votes), for the votes
+   * that were sent last, which are the ones the residual terms of the consensus vertices are computed with.
+   */
+  var voteAggregationCorrection = 0.0
+  private[this] var correctionOfState = 0.0
+
+  override def afterInitialization(graphEditor: GraphEditor[Int, Double]) {
+    // Before the consensus vertices signal for the first time, the first collect
+    // uses the warm start values instead of the implicit 0.
+    if (initialValues != null) {
+      var i = 0
+      while (i < consensusIds.length) {
+        mostRecentSignalMap.put(consensusIds(i), initialValues(i))
+        i += 1
+      }
+    }
+    executeCollectOperation(graphEditor)
+  }
+
+  /**
+   * Looks up the consensus values and copies them into the buffer of each function.
+   */
+  private[this] def updateConsensusBuffers() {
+    var i = 0
+    while (i < consensusIds.length) {
+      consensusValues(i) = mostRecentSignalMap(consensusIds(i))
+      i += 1
+    }
+    var f = 0
+    while (f < functions.length) {
+      val consensus = consensusBuffers(f)
+      val indices = blockIndices(f)
+      var j = 0
+      while (j < consensus.length) {
+        consensus(j) = consensusValues(indices(j))
+        j += 1
+      }
+      f += 1
+    }
+  }
+
+  def collect: Array[Double] = {
+    updateConsensusBuffers()
+    java.util.Arrays.fill(votes, 0.0)
+    java.util.Arrays.fill(squaredVotes, 0.0)
+    var f = 0
+    while (f < functions.length) {
+      val function = functions(f)
+      val consensus = consensusBuffers(f)
+      // Update the lagrangian multipliers (y) : y-step
+      function.updateLagrangeEfficient(consensus)
+      // Minimize the local function and get argmin (x) : x-step
+      function.optimizeEfficient(consensus)
+      if (relaxation != 1.0) {
+        function.overRelax(consensus, relaxation)
+      }
+      val x = function.getX
+      val indices = blockIndices(f)
+      val voting = voteIndices(f)
+      var j = 0
+      while (j < voting.length) {
+        val local = voting(j)
+        val vote = x(local)
+        votes(indices(local)) += vote
+        squaredVotes(indices(local)) += vote * vote
+        j += 1
+      }
+      f += 1
+    }
+    var correction = 0.0
+    var i = 0
+    while (i < votes.length) {
+      correction += squaredVotes(i) - votes(i) * votes(i)
+      i += 1
+    }
+    correctionOfState = correction
+    votes
+  }
+
+  /**
+   * Overriding the internal S/C signal implementation, one aggregated vote per consensus variable.
+   */
+  override def executeSignalOperation(graphEditor: GraphEditor[Int, Double]) {
+    voteAggregationCorrection = correctionOfState
+    var i = 0
+    while (i < consensusIds.length) {
+      graphEditor.sendSignal(state(i), consensusIds(i), id)
+      i += 1
+    }
+  }
+
+  // Multipliers are stored unscaled, so they do not need to be rescaled when the step size changes.
+  def updateStepSize(stepSize: Double) {
+    functions.foreach(_.setStepSize(stepSize))
+  }
+
+  def sumOfSquaredMultipliers: Double = {
+    var sum = 0.0
+    var f = 0
+    while (f < functions.length) {
+      val multipliers = functions(f).getYEfficient
+      var i = 0
+      while (i < multipliers.length) {
+        sum += multipliers(i) * multipliers(i)
+        i += 1
+      }
+      f += 1
+    }
+    sum
+  }
+
+  // Sum of the values of the functions at the current consensus.
+  def objectiveValue: Double = {
+    updateConsensusBuffers()
+    var sum = 0.0
+    var f = 0
+    while (f < functions.length) {
+      sum += functions(f).evaluateAtEfficient(consensusBuffers(f))
+      f += 1
+    }
+    sum
+  }
+
+  override def scoreCollect = 1
+  // Always signal, even in the first iteration, when the consensus variable doesn't.
+  override def scoreSignal = 1
+
+  /**
+   * Signalling is efficiently done in 'executeSignalOperation'.
+   * This function should therefore never be called.
+   */
+  override def computeSignal(targetId: Int): Double = {
+    throw new UnsupportedOperationException
+  }
+}
@@ -29,6 +29,9 @@ trait Consensus {
   def consensus: Double
   def oldConsensus: Double
   def variableCount: Int
+  // Residual terms of the last collect, sum over the votes of (consensus - vote)^2 and of vote^2.
+  def sumOfSquaredErrors: Double
+  def sumOfSquaredVotes: Double
 }
 
 /**
@@ -44,16 +47,38 @@ class ConsensusVertex(
   initialState: Double, // the initial value for the consensus variable.
   isBounded: Boolean, // shall we use bounding (cutoff below 0 and above 1)? 
   lowerBound: Double = 0.0, // each consensus variable can only assume values in the range [lowerBound, upperBound].
-  upperBound: Double = 1.0)
+  upperBound: Double = 1.0,
+  localCopies: Int = 0) // number of votes, if it differs from the number of edges because some votes are sums (BlockSubproblemVertex).
   extends MemoryEfficientDataGraphVertex[Double, Double, Double](variableId, initialState) with Consensus {
 
   type OutgoingSignalType = Double
 
   @inline def variableId = id
-  @inline def variableCount = _targetIds.size
+  @inline def variableCount = if (localCopies > 0) localCopies else _targetIds.size
 
   var hasCollectedOnce = false
 
+  // Maintained in collect, so the convergence detection can read them without iterating over the votes.
+  var sumOfSquaredErrors = 0.0
+  var sumOfSquaredVotes = 0.0
+
+  // The target ids as an array, so signalling and collecting neither allocate nor go through closures.
+  // Rebuilt when the number of edges changes, the edges are only added while the graph is loaded.
+  private[this] var signalTargetIds: Array[Int] = null
+
+  @inline final def signalTargets: Array[Int] = {
+    if (signalTargetIds == null || signalTargetIds.length != _targetIds.size) {
+      val targets = new Array[Int](_targetIds.size)
+      var i = 0
+      _targetIds.foreach { targetId =>
+        targets(i) = targetId
+        i += 1
+      }
+      signalTargetIds = targets
+    }
+    signalTargetIds
+  }
+
   @inline def consensus = {
     if (isBounded) {
       bounded(state)
@@ -70,10 +95,33 @@ class ConsensusVertex(
     }
   }
 
+  /**
+   * The new consensus is the average vote. The residual terms for the new consensus are accumulated in the
+   * same pass over the votes, using sum((c - v)^2) = n * c^2 - 2 * c * sum(v) + sum(v^2).
+   * The votes that were not received yet count as 0, like in consensusVotes.
+   * If the votes are sums, the consensus is counted once per local copy. The residual terms are then only
+   * correct together with the voteAggregationCorrection of the blocks, which the PrimalAggregator adds.
+   */
   @inline def collect = {
     if (!hasCollectedOnce) hasCollectedOnce = true
-    // New consensus is average vote.
-    averageConsensusVote
+    var sum = 0.0
+    var squaredVotes = 0.0
+    val targets = signalTargets
+    val length = targets.length
+    var i = 0
+    while (i < length) {
+      val vote = mostRecentSignalMap(targets(i))
+      sum += vote
+      squaredVotes += vote * vote
+      i += 1
+    }
+    val count = variableCount
+    val newState = sum / count
+    val newConsensus = if (isBounded) bounded(newState) else newState
+    // Rounding can make the expanded sum slightly negative.
+    sumOfSquaredErrors = math.max(0.0, count * newConsensus * newConsensus - 2 * newConsensus * sum + squaredVotes)
+    sumOfSquaredVotes = squaredVotes
+    newState
   }
 
   /**
@@ -83,8 +131,12 @@ class ConsensusVertex(
    */
   override def executeSignalOperation(graphEditor: GraphEditor[Int, Double]) {
     val signal = consensus
-    _targetIds.foreach { targetId =>
-      graphEditor.sendSignal(signal, targetId, id)
+    val targets = signalTargets
+    val length = targets.length
+    var i = 0
+    while (i < length) {
+      graphEditor.sendSignal(signal, targets(i), id)
+      i += 1
     }
     lastSignalState = state
   }
@@ -99,13 +151,7 @@ class ConsensusVertex(
   }
 
   @inline def consensusVotes: Array[Double] = {
-    val votes = new Array[Double](variableCount)
-    var i = 0
-    _targetIds.foreach { targetId =>
-      votes(i) = mostRecentSignalMap(targetId)
-      i += 1
-    }
-    votes
+    signalTargets.map(mostRecentSignalMap(_))
   }
 
   @inline def averageConsensusVote: Double = {
@@ -115,11 +161,11 @@ class ConsensusVertex(
   @inline def consensusVoteSum: Double = {
     // We don't trust the performance of doing it functionally. :P
     var sum = 0.0
+    val targets = signalTargets
+    val length = targets.length
     var i = 0
-    val votes = mostRecentSignalMap.values
-    val length = votes.length
     while (i < length) {
-      sum += votes(i)
+      sum += mostRecentSignalMap(targets(i))
       i += 1
     }
     sum
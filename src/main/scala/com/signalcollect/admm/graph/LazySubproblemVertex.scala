@@ -41,8 +41,10 @@ object MSG {
 final class LazySubproblemVertex(
   subproblemId: Int, // The id of the subproblem.
   optimizableFunction: OptimizableFunction, // The function that is contained in the subproblem.
-  val absoluteSignallingThreshold: Double)
-  extends SubproblemVertex(subproblemId, optimizableFunction) {
+  val absoluteSignallingThreshold: Double,
+  relaxation: Double = 1.0, // Over-relaxation parameter in (0, 2), 1.0 is plain ADMM.
+  initialConsensus: Array[Double] = null) // Warm start values of the consensus variables, aligned with the idToIndexMappings.
+  extends SubproblemVertex(subproblemId, optimizableFunction, relaxation, initialConsensus) {
 
   val multipliersLength = multipliers.length
 
@@ -51,7 +53,8 @@ final class LazySubproblemVertex(
    */
   lastSignalState = new Array[Double](multipliersLength)
 
-  var lastMultipliers = multipliers.clone
+  // Updated in place, so rescheduling does not allocate.
+  val lastMultipliers = multipliers.clone
 
   @inline def changed(a: Double, b: Double): Boolean = {
     val delta = math.abs(a - b)
@@ -75,30 +78,27 @@ final class LazySubproblemVertex(
    * Implicitly last time a 0 was sent.
    */
   override def executeSignalOperation(graphEditor: GraphEditor[Int, Double]) {
-    var alreadySentId = Set.empty[Int]
-    val idToIndexMapping = optimizableFunction.idToIndexMappings
-    var i = 0
+    val currentMultipliers = multipliers
+    val numberOfTargets = signalTargetIds.length
+    var j = 0
     var atLeastOneSignalSent = false
-    while (i < multipliersLength) {
-      val targetId = idToIndexMapping(i)
-      if (!alreadySentId.contains(targetId)) {
-        val targetIdValue = state(i)
-        val signalChanged = changed(lastSignalState(i), targetIdValue)
-        if (signalChanged) {
-          atLeastOneSignalSent = true
-          graphEditor.sendSignal(targetIdValue, targetId, id)
-          lastSignalState(i) = targetIdValue
-          lastMultipliers(i) = multipliers(i)
-        }
-        alreadySentId += targetId
+    while (j < numberOfTargets) {
+      val i = signalIndices(j)
+      val targetIdValue = state(i)
+      val signalChanged = changed(lastSignalState(i), targetIdValue)
+      if (signalChanged) {
+        atLeastOneSignalSent = true
+        graphEditor.sendSignal(targetIdValue, signalTargetIds(j), id)
+        lastSignalState(i) = targetIdValue
+        lastMultipliers(i) = currentMultipliers(i)
       }
-      i += 1
+      j += 1
     }
     // If we signaled to a consensus vertex, then we're guaranteed to get woken up again.
     // If we did not signal, but the multipliers changed, then we want to schedule ourselves.
     if (!atLeastOneSignalSent && atLeastOneMultiplierChanged) {
       graphEditor.sendSignal(MSG.SKIP_COLLECT, id, id)
-      lastMultipliers = multipliers.clone
+      System.arraycopy(currentMultipliers, 0, lastMultipliers, 0, multipliersLength)
     }
   }
 
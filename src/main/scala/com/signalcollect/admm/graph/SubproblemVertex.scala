@@ -27,7 +27,12 @@ import com.signalcollect.admm.optimizers.OptimizableFunction
 trait Subproblem {
   def multipliers: Array[Double]
   def optimizableFunction: OptimizableFunction
+  // Reused between collects, only valid until the next call.
   def consensusAssignments: Array[Double]
+  // Multipliers are stored unscaled, so they do not need to be rescaled when the step size changes.
+  def updateStepSize(stepSize: Double) {
+    optimizableFunction.setStepSize(stepSize)
+  }
 }
 
 /**
@@ -40,7 +45,9 @@ trait Subproblem {
  */
 class SubproblemVertex(
   subproblemId: Int, // The id of the subproblem.
-  val optimizableFunction: OptimizableFunction) // The function that is contained in the subproblem.
+  val optimizableFunction: OptimizableFunction, // The function that is contained in the subproblem.
+  val relaxation: Double = 1.0, // Over-relaxation parameter in (0, 2), 1.0 is plain ADMM.
+  initialConsensus: Array[Double] = null) // Warm start values of the consensus variables, aligned with the idToIndexMappings.
   extends MemoryEfficientDataGraphVertex[Array[Double], Double, Double](subproblemId, null.asInstanceOf[Array[Double]])
   with Subproblem {
 
@@ -48,6 +55,16 @@ class SubproblemVertex(
 
   def multipliers = optimizableFunction.getYEfficient
 
+  /**
+   * A function can use the same consensus variable more than once, but each consensus vertex only gets
+   * one signal per iteration, the value at the first index that uses it.
+   * These are the indices of those first uses, computed once so that signalling does not allocate.
+   */
+  protected val signalIndices: Array[Int] = SubproblemVertex.firstOccurrences(optimizableFunction.idToIndexMappings)
+  protected val signalTargetIds: Array[Int] = signalIndices.map(optimizableFunction.idToIndexMappings)
+
+  private[this] val consensusBuffer = new Array[Double](optimizableFunction.idToIndexMappings.length)
+
   /**
    * Overriding the internal S/C signal implementation.
    * We do not signal with the edges (so no need to define signal()),
@@ -55,30 +72,33 @@ class SubproblemVertex(
    */
   override def executeSignalOperation(graphEditor: GraphEditor[Int, Double]) {
     // TODO: We don't really need the S/C vertex target ids. Can we save some memory here?
-    var alreadySentId = Set.empty[Int]
-    val idToIndexMapping = optimizableFunction.idToIndexMappings
-    val idToIndexMappingLength = idToIndexMapping.length
+    val numberOfTargets = signalTargetIds.length
     var i = 0
-    while (i < idToIndexMappingLength) {
-      val targetId = idToIndexMapping(i)
-      if (!alreadySentId.contains(targetId)) {
-        val targetIdValue = state(i)
-        graphEditor.sendSignal(targetIdValue, targetId, id)
-        alreadySentId += targetId
-      }
+    while (i < numberOfTargets) {
+      graphEditor.sendSignal(state(signalIndices(i)), signalTargetIds(i), id)
       i += 1
     }
   }
 
   override def afterInitialization(graphEditor: GraphEditor[Int, Double]) {
+    // Before the consensus vertices signal for the first time, the first collect
+    // uses the warm start values instead of the implicit 0.
+    if (initialConsensus != null) {
+      val idToIndexMapping = optimizableFunction.idToIndexMappings
+      var i = 0
+      while (i < idToIndexMapping.length) {
+        mostRecentSignalMap.put(idToIndexMapping(i), initialConsensus(i))
+        i += 1
+      }
+    }
     executeCollectOperation(graphEditor)
   }
 
-  // Collect all the connected consensus variable values.
+  // Collect all the connected consensus variable values, into a buffer that is reused between collects.
   def consensusAssignments: Array[Double] = {
     val idToIndexMapping = optimizableFunction.idToIndexMappings
     val idToIndexMappingLength = idToIndexMapping.length
-    val consensusVariableAssigments = new Array[Double](idToIndexMappingLength)
+    val consensusVariableAssigments = consensusBuffer
     var i = 0
     while (i < idToIndexMappingLength) {
       val idAtIndex = idToIndexMapping(i)
@@ -94,6 +114,9 @@ class SubproblemVertex(
     optimizableFunction.updateLagrangeEfficient(consensus)
     // Minimize the local function and get argmin (x) : x-step
     optimizableFunction.optimizeEfficient(consensus)
+    if (relaxation != 1.0) {
+      optimizableFunction.overRelax(consensus, relaxation)
+    }
     val newOptimizedAssignments = optimizableFunction.getX
     newOptimizedAssignments
   }
@@ -110,3 +133,14 @@ class SubproblemVertex(
     throw new UnsupportedOperationException
   }
 }
+
+object SubproblemVertex {
+
+  /**
+   * Indices of the first occurrence of each id, in increasing order.
+   */
+  def firstOccurrences(ids: Array[Int]): Array[Int] = {
+    val seen = new java.util.HashSet[Integer]
+    ids.indices.filter(i => seen.add(ids(i))).toArray
+  }
+}
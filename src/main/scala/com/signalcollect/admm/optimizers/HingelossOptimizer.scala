@@ -31,7 +31,8 @@ class HingeLossOptimizer(
   zIndices: Array[Int],
   stepSize: Double = 1.0,
   initialZmap: Map[Int, Double],
-  coefficientMatrix: Array[Double]) extends OptimizerBase(setId, constant, zIndices, stepSize, initialZmap, coefficientMatrix) {
+  coefficientMatrix: Array[Double],
+  val closedForm: Boolean = true) extends OptimizerBase(setId, constant, zIndices, stepSize, initialZmap, coefficientMatrix) {
 
   lazy val hingeLossFunction = {
     new DiffFunction[DenseVector[Double]] {
@@ -68,7 +69,7 @@ class HingeLossOptimizer(
   }
 
   def evaluateAtEfficient(someX: Array[Double]): Double = {
-    basicFunction.valueAt(DenseVector(someX))
+    math.max(coeffsDot(someX) - constant, 0) * weight
   }
 
   def gradientAt(xMap: Map[Int, Double]): Map[Int, Double] = {
@@ -80,36 +81,33 @@ class HingeLossOptimizer(
    *
    * Objective term of the form
    * weight * max(coeffs^T * x - constant, 0)
+   *
+   * With closedForm the minimizer is computed analytically in place,
+   * otherwise it is approximated with breeze's iterative minimizer.
    */
   def optimizeEfficient(
     consensusAssignments: Array[Double]) {
     setZ(consensusAssignments)
-    //    val newXIfNoLoss = z - (y / stepSize)
-    //    val total = coeffs.dot(newXIfNoLoss)
-    //    x = newXIfNoLoss
-    //    if (total <= constant) {
-    //      return
-    //    }
-    //
-    //    // Also consider linear loss:
-    //    // argmin(weight * (coeffs^T * x - constant)+ stepSize/2 * norm2(x - z + (y / stepSize))^2)
-    //    x = x - coeffs * weight / stepSize
-    //    val linearLossTotal = coeffs.dot(x)
-    //    if (linearLossTotal <= constant) {
-    //      return
-    //    }
-    //
-    //    // Else the solution is on the hinge.
-    //    if (x.length == 1) {
-    //      x(0) = constant / coeffs(0)
-    //      return
-    //    }
-    //    // Project x onto coeffsDotX == constant plane.
-    //    var distance = -constant / length
-    //    distance += x.dot(unitNormalVector)
-    //    x = x - (unitNormalVector * distance)
+    if (!closedForm) {
+      setX(minimize(hingeLossFunction, x))
+      return
+    }
+    val total = setXToMinimizerWithoutLoss()
+    if (total <= constant) {
+      return
+    }
+
+    // Also consider linear loss:
+    // argmin(weight * (coeffs^T * x - constant)+ stepSize/2 * norm2(x - z + (y / stepSize))^2)
+    val linearLossTotal = addScaledCoeffsToX(-weight / stepSize)
+    if (linearLossTotal >= constant) {
+      return
+    }
 
-    x = minimize(hingeLossFunction, x)
+    // Else the solution is on the hinge.
+    // Project x = z - y / stepSize onto coeffsDotX == constant plane.
+    setXToMinimizerWithoutLoss()
+    projectXOntoHyperplane()
   }
 
   override def toString = s"HingeLossOptimizer(x=$x, y=$y, z=$z, coeffs=$coeffs, constant=$constant, zIndices=${zIndices.mkString("[", ",", "]")})"
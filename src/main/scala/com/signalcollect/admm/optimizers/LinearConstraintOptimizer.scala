@@ -73,9 +73,7 @@ class LinearConstraintOptimizer(
   def optimizeEfficient(
     consensusAssignments: Array[Double]) {
     setZ(consensusAssignments)
-    val newXIfNoLoss = z - (y / stepSize)
-    val total = coeffs.dot(newXIfNoLoss)
-    x = newXIfNoLoss
+    val total = setXToMinimizerWithoutLoss()
     if ((comparator == "leq" && total > constant)
       || (comparator == "geq" && total < constant)
       || (comparator == "eq" && total != constant)) {
@@ -86,14 +84,8 @@ class LinearConstraintOptimizer(
       //        return
       //      }
 
-      if (x.length == 1) {
-        x(0) = constant / coeffs(0)
-        return
-      }
       // Project x onto coeffsDotX == constant plane.
-      var distance = -constant / length
-      distance += x.dot(unitNormalVector)
-      x = x - (unitNormalVector * distance)
+      projectXOntoHyperplane()
     }
   }
 
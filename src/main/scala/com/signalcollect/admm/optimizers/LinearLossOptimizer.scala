@@ -58,7 +58,7 @@ class LinearLossOptimizer(
   }
 
   def evaluateAtEfficient(someX: Array[Double]): Double = {
-    basicFunction.valueAt(DenseVector(someX))
+    coeffsDot(someX) * weight
   }
 
   def gradientAt(xMap: Map[Int, Double]): Map[Int, Double] = {
@@ -74,8 +74,8 @@ class LinearLossOptimizer(
   def optimizeEfficient(
     consensusAssignments: Array[Double]) {
     setZ(consensusAssignments)
-    x = z - (y / stepSize)
-    x = x - coeffs * weight / stepSize
+    setXToMinimizerWithoutLoss()
+    addScaledCoeffsToX(-weight / stepSize)
     // x = minimize(linearlossFunction, x)
   }
 
@@ -58,12 +58,38 @@ trait OptimizableFunction {
   def updateLagrangeEfficient(z: Array[Double])
   def evaluateAtEfficient(x: Array[Double]): Double
   def getYEfficient: Array[Double]
+  // Returns the internal buffer of the local variables, not a copy.
   def getX: Array[Double]
   def optimizeEfficient(consensus: Array[Double])
   def getStepSize: Double
   def setStepSize(stepSize: Double)
   def idToIndexMappings: Array[Int]
 
+  /**
+   * Over-relaxation: replaces x with alpha * x + (1 - alpha) * z, where z are the consensus
+   * values that were used in the x-step. The relaxed x is sent to the consensus variables
+   * and used in the next y-step.
+   */
+  def overRelax(consensus: Array[Double], alpha: Double) {
+    val x = getX
+    var i = 0
+    while (i < x.length) {
+      x(i) = alpha * x(i) + (1 - alpha) * consensus(i)
+      i += 1
+    }
+  }
+
+  /**
+   * Warm start from a previous solution: the local variables and the consensus are both set
+   * to the passed consensus values, so the first y-step leaves the passed multipliers unchanged.
+   * Without multipliers they keep their current values.
+   */
+  def warmStart(consensus: Array[Double], multipliers: Option[Array[Double]]) {
+    System.arraycopy(consensus, 0, getX, 0, consensus.length)
+    setZ(consensus)
+    multipliers.foreach(setY)
+  }
+
   // Helper function to convert from a map to a properly ordered array.
   final def mapToArray(m: Map[Int, Double]): Array[Double] = {
     val mappings = idToIndexMappings
@@ -39,7 +39,7 @@ abstract class OptimizerBase(
     v.foreach(x => squared += x * x)
     squared
   }
-    
+
   val length: Double = {
     val sumOfSquaredCoefficients = coefficientMatrix.map(v => v * v).sum
     math.sqrt(sumOfSquaredCoefficients)
@@ -50,9 +50,11 @@ abstract class OptimizerBase(
     DenseVector(unitNormal)
   }
 
-  var z: DenseVector[Double] = DenseVector(zIndices.map(initialZmap))
-  var x: DenseVector[Double] = DenseVector.zeros(zIndices.length)
-  var y: DenseVector[Double] = DenseVector.zeros(zIndices.length)
+  // The vectors wrap primitive buffers that are updated in place,
+  // so no vectors are allocated in the ADMM iterations.
+  val z: DenseVector[Double] = new DenseVector(zIndices.map(initialZmap))
+  val x: DenseVector[Double] = DenseVector.zeros(zIndices.length)
+  val y: DenseVector[Double] = DenseVector.zeros(zIndices.length)
 
   val coeffs = DenseVector(coefficientMatrix: _*)
 
@@ -60,18 +62,116 @@ abstract class OptimizerBase(
   def setStepSize(s: Double) = stepSize = s
   def getYEfficient: Array[Double] = y.data
   def getX = x.data
-  def setY(y: Array[Double]) {
-    this.y = DenseVector(y: _*)
+  def setY(newY: Array[Double]) {
+    System.arraycopy(newY, 0, y.data, 0, y.length)
   }
   def updateLagrangeEfficient(newZ: Array[Double]) {
-    z = DenseVector(newZ)
-    y += (x - z) * stepSize
+    setZ(newZ)
+    val xs = x.data
+    val ys = y.data
+    val zs = z.data
+    var i = 0
+    while (i < xs.length) {
+      ys(i) += (xs(i) - zs(i)) * stepSize
+      i += 1
+    }
   }
   def idToIndexMappings: Array[Int] = zIndices
   def setZ(newZ: Array[Double]) {
-    z = DenseVector(newZ)
+    System.arraycopy(newZ, 0, z.data, 0, z.length)
   }
 
   def optimizeEfficient(consensusAssignments: Array[Double])
 
+  /**
+   * Copies a vector returned by an iterative minimizer into the x buffer.
+   */
+  protected def setX(newX: DenseVector[Double]) {
+    var i = 0
+    while (i < x.length) {
+      x.data(i) = newX(i)
+      i += 1
+    }
+  }
+
+  /**
+   * coeffs^T * v, without allocating.
+   */
+  protected def coeffsDot(v: Array[Double]): Double = {
+    val cs = coeffs.data
+    var total = 0.0
+    var i = 0
+    while (i < cs.length) {
+      total += cs(i) * v(i)
+      i += 1
+    }
+    total
+  }
+
+  /**
+   * Sets x to argmin stepSize/2 * norm2(x - z + (y / stepSize))^2,
+   * the minimizer if no loss is active, and returns coeffs^T * x.
+   */
+  protected def setXToMinimizerWithoutLoss(): Double = {
+    val xs = x.data
+    val ys = y.data
+    val zs = z.data
+    var i = 0
+    while (i < xs.length) {
+      xs(i) = zs(i) - ys(i) / stepSize
+      i += 1
+    }
+    coeffsDot(xs)
+  }
+
+  /**
+   * Adds factor * coeffs to x in place and returns coeffs^T * x.
+   */
+  protected def addScaledCoeffsToX(factor: Double): Double = {
+    val xs = x.data
+    val cs = coeffs.data
+    var i = 0
+    while (i < xs.length) {
+      xs(i) += cs(i) * factor
+      i += 1
+    }
+    coeffsDot(xs)
+  }
+
+  /**
+   * Projects the current x orthogonally onto the hyperplane coeffs^T * x == constant.
+   */
+  protected def projectXOntoHyperplane() {
+    if (x.length == 1) {
+      x.data(0) = constant / coeffs(0)
+    } else {
+      val xs = x.data
+      val normal = unitNormalVector.data
+      var distance = -constant / length
+      var i = 0
+      while (i < xs.length) {
+        distance += xs(i) * normal(i)
+        i += 1
+      }
+      i = 0
+      while (i < xs.length) {
+        xs(i) -= normal(i) * distance
+        i += 1
+      }
+    }
+  }
+
+  /**
+   * Given x = z - y / stepSize, solves the quadratic problem
+   * argmin(weight * (coeffs^T * x - constant)^2 + stepSize/2 * norm2(x - z + (y / stepSize))^2)
+   * in place. The system (2 * weight * coeffs * coeffs^T + stepSize * I) x = stepSize * x + 2 * weight * constant * coeffs
+   * is a rank one update of a diagonal matrix, so the Sherman-Morrison formula solves it in closed form for any arity.
+   */
+  protected def solveSquaredLossInPlace(weight: Double, coeffsDotX: Double) {
+    val squaredLength = length * length
+    val coeffsDotRightHandSide = stepSize * coeffsDotX + 2.0 * weight * constant * squaredLength
+    val correction = 2.0 * weight * coeffsDotRightHandSide / (stepSize + 2.0 * weight * squaredLength)
+    addScaledCoeffsToX((2.0 * weight * constant - correction) / stepSize)
+  }
+
 }
@@ -31,7 +31,8 @@ class SquaredHingeLossOptimizer(
   zIndices: Array[Int],
   stepSize: Double = 1.0,
   initialZmap: Map[Int, Double],
-  coefficientMatrix: Array[Double]) extends OptimizerBase(setId, constant, zIndices, stepSize, initialZmap, coefficientMatrix) {
+  coefficientMatrix: Array[Double],
+  val closedForm: Boolean = true) extends OptimizerBase(setId, constant, zIndices, stepSize, initialZmap, coefficientMatrix) {
 
   lazy val quadraticLossFunction = {
     new DiffFunction[DenseVector[Double]] {
@@ -68,7 +69,8 @@ class SquaredHingeLossOptimizer(
   }
 
   def evaluateAtEfficient(someX: Array[Double]): Double = {
-    basicFunction.valueAt(DenseVector(someX))
+    val violation = math.max(coeffsDot(someX) - constant, 0)
+    violation * violation * weight
   }
 
   def gradientAt(xMap: Map[Int, Double]): Map[Int, Double] = {
@@ -80,37 +82,21 @@ class SquaredHingeLossOptimizer(
    *
    * Objective term of the form
    * weight * [max(coeffs^T * x - constant, 0)]^2
+   *
+   * With closedForm the minimizer is computed analytically in place for
+   * any arity, otherwise it is approximated with breeze's iterative minimizer.
    */
   def optimizeEfficient(
     consensusAssignments: Array[Double]) {
     setZ(consensusAssignments)
-    val newXIfNoLoss = z - (y / stepSize)
-    val total = coeffs.dot(newXIfNoLoss)
-    if (total <= constant) {
-      x = newXIfNoLoss
-    } else {
+    val total = setXToMinimizerWithoutLoss()
+    if (total > constant) {
       // Also consider quadratic loss:
       // argmin(weight * (coeffs^T * x - constant)^2 + stepSize/2 * norm2(x - z + (y / stepSize))^2)
-      if (x.length == 1) {
-        x = newXIfNoLoss
-        val c0 = coeffs(0)
-        x(0) += c0 * 2.0 * weight * constant
-        x(0) /= 2 * weight * c0 * c0 + stepSize
-      } else if (x.length == 2) {
-        x = newXIfNoLoss
-        /* Construct constant term in the gradient (moved to right-hand side) */
-        val c0 = coeffs(0)
-        val c1 = coeffs(1)
-        val a0 = 2 * weight * c0 * c0 + stepSize
-        val b1 = 2 * weight * c1 * c1 + stepSize
-        val a1b0 = 2 * weight * c0 * c1
-        x += coeffs * (2.0 * weight * constant)
-        x(1) -= a1b0 * x(0) / a0
-        x(1) /= b1 - a1b0 * a1b0 / a0
-        x(0) -= a1b0 * x(1)
-        x(0) /= a0
+      if (closedForm) {
+        solveSquaredLossInPlace(weight, total)
       } else {
-        x = minimize(quadraticLossFunction, newXIfNoLoss)
+        setX(minimize(quadraticLossFunction, x))
       }
     }
   }
@@ -1,8 +1,11 @@
 package com.signalcollect.psl
 
+import java.io.BufferedWriter
 import java.io.File
 import java.io.FileWriter
 import java.io.FileReader
+import java.io.OutputStreamWriter
+import java.io.Writer
 import com.signalcollect.psl.model.GroundedPredicate
 import com.signalcollect.admm.utils.MinimaExplorer
 import com.signalcollect.psl.parser.PslParser
@@ -20,6 +23,8 @@ Usage: fox filename [--absEps num] [--relEps num] [--time_limit num] [--maxIter
 [--output grounding|ilp|lp|cvx|mln|inference|shortInference|onlyTrueFacts] [--outfile outputfilename]
 [--inference foxPSL|mosekLP|mosekILP]
 [--breezeOptimizer true|false]
+[--groundingCache directory]
+[--pipeToSolver true]
 
 --absEps, --relEps: absolute and relative epsilons for ADMM algorithm (foxPSL solver)
 --maxIter: maximum number of iterations for ADMM algorithm (foxPSL solver)
@@ -35,6 +40,8 @@ onlyTrueFacts (only the inferred facts that have a truth value >0.5 and without
 --outfile: if defined the output is saved in this file, otherwise it is shown in the stdout
 --inference: which solver to use for inference, foxPSL or mosek (version LP and ILP) - requires mosek to be installed, and currently works only for problems with hard rules and linear soft rules with one clause.
 --breezeOptimizer: if we use foxPSL, we can choose whether to use the Breeze toolkit to do the single minimizations.
+--groundingCache: if we use foxPSL, the grounding is cached in this directory and reused as long as the input file does not change.
+--pipeToSolver: if we use mosek, the LP file is a named pipe from which mosek reads while the problem is being translated.
 """
 
   if (args.length <= 1) {
@@ -62,6 +69,7 @@ onlyTrueFacts (only the inferred facts that have a truth value >0.5 and without
   val doFoxPSLInference = doInference && inference == "foxPSL"
   val doMosekLPInference = doInference && inference == "mosekLP"
   val doMosekILPInference = doInference && (inference == "mosekILP" || inference == "mosek")
+  val pipeToSolver = mapOfArgs.get("--pipeToSolver").isDefined
   val timeLimit = if (mapOfArgs.get("--time_limit").isDefined) Some(mapOfArgs.get("--time_limit").get.toLong) else None
 
   val config = InferencerConfig(
@@ -72,9 +80,11 @@ onlyTrueFacts (only the inferred facts that have a truth value >0.5 and without
     tolerance = mapOfArgs.get("--tol").getOrElse("0").toDouble,
     absoluteEpsilon = mapOfArgs.get("--absEps").getOrElse("1e-8").toDouble,
     relativeEpsilon = mapOfArgs.get("--relEps").getOrElse("1e-5").toDouble,
-    breezeOptimizer = mapOfArgs.get("--breezeOptimizer").getOrElse("false").toBoolean)
+    breezeOptimizer = mapOfArgs.get("--breezeOptimizer").getOrElse("false").toBoolean,
+    groundingCacheDirectory = mapOfArgs.get("--groundingCache"))
 
-  val (updatedPslData, parsingTime) = Timer.time {
+  // Not needed if the grounding is loaded from the cache.
+  lazy val (updatedPslData, parsingTime) = Timer.time {
     if (config.parallelizeParsing) {
       PslParser.parseFileLineByLine(pslFile).toParsedPslFile()
     } else {
@@ -82,20 +92,27 @@ onlyTrueFacts (only the inferred facts that have a truth value >0.5 and without
     }
   }
 
-  val (printableResults, extraInformation) = if (doFoxPSLInference && !mapOfArgs.get("--multipleMinima").isDefined) {
+  // The results are written by a function, so large outputs can be streamed to the output.
+  def printed(s: String): Writer => Unit = _.write(s)
+
+  val (writeResults, extraInformation): (Writer => Unit, Option[Map[Int, GroundedPredicate]]) = if (doFoxPSLInference && !mapOfArgs.get("--multipleMinima").isDefined) {
     // Normal inference.
-    val inferenceResults = Inferencer.runInference(updatedPslData, parsingTime, None, config = config)
-    (inferenceResults.printSelectedResults(queryList, printFacts = true, outputType = outputType.getOrElse("inference")), None)
+    val inferenceResults = if (config.groundingCacheDirectory.isDefined) {
+      Inferencer.runInferenceFromFile(pslFile, None, config = config)
+    } else {
+      Inferencer.runInference(updatedPslData, parsingTime, None, config = config)
+    }
+    ((writer: Writer) => inferenceResults.writeSelectedResults(writer, queryList, printFacts = true, outputType = outputType.getOrElse("inference")), None)
   } else if (doFoxPSLInference) {
     // Multiple minima inference.
     val results = MinimaExplorer.runExploration(updatedPslData, config, queryList)
-    (MinimaExplorer.printSelectedResults(results, mapOfArgs.get("--threeValuedLogic").isDefined, short = (outputType.getOrElse("inference") == "shortInference")), None)
+    (printed(MinimaExplorer.printSelectedResults(results, mapOfArgs.get("--threeValuedLogic").isDefined, short = (outputType.getOrElse("inference") == "shortInference"))), None)
   } else if (doMosekILPInference) {
-    val results = PSLToLPConverter.solve(updatedPslData, isBinary = true, outputFile.getOrElse("temp-mosek-translation"))
-    (PSLToLPConverter.printSelectedResults(results, queryList, outputType = outputType.getOrElse("inference"), printBinary = true), None)
+    val results = PSLToLPConverter.solveStreaming(updatedPslData, isBinary = true, outputFile.getOrElse("temp-mosek-translation"), pipeToSolver)
+    (printed(PSLToLPConverter.printSelectedResults(results, queryList, outputType = outputType.getOrElse("inference"), printBinary = true)), None)
   } else if (doMosekLPInference) {
-    val results = PSLToLPConverter.solve(updatedPslData, isBinary = false, outputFile.getOrElse("temp-mosek-translation"))
-    (PSLToLPConverter.printSelectedResults(results, queryList, outputType = outputType.getOrElse("inference")), None)
+    val results = PSLToLPConverter.solveStreaming(updatedPslData, isBinary = false, outputFile.getOrElse("temp-mosek-translation"), pipeToSolver)
+    (printed(PSLToLPConverter.printSelectedResults(results, queryList, outputType = outputType.getOrElse("inference"))), None)
   } else {
     // No inference.
     outputType match {
@@ -103,37 +120,43 @@ onlyTrueFacts (only the inferred facts that have a truth value >0.5 and without
         val (groundedRules, groundedConstraints, idToGpMap) = Grounding.ground(updatedPslData, config)
         val results = groundedRules.map(_.toString) ++
           groundedConstraints.map(_.toString)
-        (results.mkString("\n"), None)
+        (printed(results.mkString("\n")), None)
+      // The translations are written while the grounded rules are created.
       case Some("lp") =>
-        val (translatedProblem, idToGpName) = PSLToLPConverter.toLP(updatedPslData, isBinary = false)
-        (translatedProblem, Some(idToGpName))
+        val (groundedRules, groundedConstraints, idToGpName) = Grounding.groundStreaming(updatedPslData)
+        ((writer: Writer) => PSLToLPConverter.writeLP(groundedRules, groundedConstraints, isBinary = false, writer), Some(idToGpName))
       case Some("ilp") =>
-        val (translatedProblem, idToGpName) = PSLToLPConverter.toLP(updatedPslData, isBinary = true)
-        (translatedProblem, Some(idToGpName))
+        val (groundedRules, groundedConstraints, idToGpName) = Grounding.groundStreaming(updatedPslData)
+        ((writer: Writer) => PSLToLPConverter.writeLP(groundedRules, groundedConstraints, isBinary = true, writer), Some(idToGpName))
       case Some("cvx") =>
-        val (translatedProblem, idToGpName) = PSLToCvxConverter.toCvx(updatedPslData)
-        (translatedProblem, Some(idToGpName))
+        val (groundedRules, groundedConstraints, idToGpName) = Grounding.groundStreaming(updatedPslData)
+        ((writer: Writer) => PSLToCvxConverter.writeCvx(groundedRules, groundedConstraints, writer), Some(idToGpName))
       case Some("mln") =>
-        val (evidence, mlnrules, idToGpName) = PSLToMLNConverter.toMLN(updatedPslData)
-        (evidence + mlnrules, Some(idToGpName))
+        val (groundedRules, groundedConstraints, idToGpName) = Grounding.groundStreaming(updatedPslData)
+        ((writer: Writer) => PSLToMLNConverter.writeMLN(updatedPslData, groundedRules, groundedConstraints, writer), Some(idToGpName))
       case any =>
-        (s"[Warning]: unknown parameter $any", None)
+        (printed(s"[Warning]: unknown parameter $any"), None)
     }
   }
 
   if (outputFile.isDefined) {
-    val writer = new FileWriter(outputFile.get)
-    writer.append(printableResults)
+    val writer = new BufferedWriter(new FileWriter(outputFile.get))
+    writeResults(writer)
     writer.append("\n")
     writer.close()
     if (extraInformation.isDefined) {
-      val writerMap = new FileWriter(outputFile.get + ".map")
-      writerMap.append(extraInformation.get.mkString("\n"))
-      writerMap.append("\n")
+      val writerMap = new BufferedWriter(new FileWriter(outputFile.get + ".map"))
+      extraInformation.get.foreach {
+        case (id, gp) =>
+          writerMap.write(s"$id -> $gp\n")
+      }
       writerMap.close()
     }
   } else {
-    println(printableResults)
+    val writer = new BufferedWriter(new OutputStreamWriter(System.out))
+    writeResults(writer)
+    writer.append("\n")
+    writer.flush()
   }
 
   System.exit(0)
@@ -0,0 +1,192 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import scala.collection.mutable.ArrayBuffer
+import scala.util.hashing.MurmurHash3
+
+import com.signalcollect.psl.model.GroundedPredicate
+import com.signalcollect.psl.model.Individual
+import com.signalcollect.psl.model.Symmetric
+
+/**
+ * Interns strings to consecutive ints, starting at 0.
+ */
+final class SymbolTable {
+  private[this] val ids = new java.util.HashMap[String, Integer]
+  private[this] val symbols = new ArrayBuffer[String]
+
+  def intern(symbol: String): Int = {
+    val id = ids.get(symbol)
+    if (id != null) {
+      id
+    } else {
+      val newId = symbols.length
+      ids.put(symbol, newId)
+      symbols += symbol
+      newId
+    }
+  }
+
+  // Returns -1 if the symbol was never interned.
+  def id(symbol: String): Int = {
+    val id = ids.get(symbol)
+    if (id != null) id else -1
+  }
+
+  def symbol(id: Int): String = symbols(id)
+
+  def size: Int = symbols.length
+}
+
+/**
+ * Index of the grounded predicates by predicate name and individuals, with the same lookup semantics
+ * as Grounding.getGroundedPredicate on the grounded predicate map.
+ * The predicate names and the individuals are interned to ints and the keys are stored as packed int tuples
+ * in a single array with open addressing. A lookup hashes the ids of the individuals while it looks them up
+ * and compares the stored keys with the individuals directly, so it does not allocate a key.
+ * The index does not keep a reference to the map it was built from, the grounding releases the map once
+ * the index is built and only keeps the index.
+ *
+ * Each key takes 'stride' ints: the predicate id, the number of individuals and the individual ids.
+ */
+final class GroundedPredicateIndex(groundedPredicates: Map[(String, List[Individual]), GroundedPredicate]) {
+  val predicateNames = new SymbolTable
+  val individuals = new SymbolTable
+
+  private[this] val stride = 2 + (0 :: groundedPredicates.keys.map(_._2.length).toList).max
+  // Power of 2, at most half full.
+  private[this] val capacity = Integer.highestOneBit(math.max(groundedPredicates.size, 4) * 2) * 2
+  private[this] val mask = capacity - 1
+  private[this] val keys = Array.fill(capacity * stride)(-1)
+  private[this] val values = new Array[GroundedPredicate](capacity)
+
+  groundedPredicates.foreach {
+    case ((name, groundings), gp) =>
+      val predicateId = predicateNames.intern(name)
+      val individualIds = groundings.map(i => individuals.intern(i.value)).toArray
+      val slot = findSlot(predicateId, individualIds)
+      val offset = slot * stride
+      keys(offset) = predicateId
+      keys(offset + 1) = individualIds.length
+      System.arraycopy(individualIds, 0, keys, offset + 2, individualIds.length)
+      values(slot) = gp
+  }
+
+  val size: Int = groundedPredicates.size
+
+  def get(predicateName: String, groundings: List[Individual]): Option[GroundedPredicate] = {
+    val predicateId = predicateNames.id(predicateName)
+    if (predicateId < 0) {
+      return None
+    }
+    // Hash the ids in the order of the groundings, and keep the first two for the inverted order.
+    var h = MurmurHash3.mix(MurmurHash3.arraySeed, predicateId)
+    var first = -1
+    var second = -1
+    var length = 0
+    var remaining = groundings
+    while (!remaining.isEmpty) {
+      val individualId = individuals.id(remaining.head.value)
+      if (individualId < 0 || length == stride - 2) {
+        return None
+      }
+      h = MurmurHash3.mix(h, individualId)
+      if (length == 0) first = individualId else if (length == 1) second = individualId
+      length += 1
+      remaining = remaining.tail
+    }
+    val found = lookup(MurmurHash3.finalizeHash(h, length + 1), predicateId, groundings, length, false)
+    if (found != null) {
+      Some(found)
+    } else if (length == 2) {
+      // For symmetric predicates, retrieve the predicate p(a,b) also in case the request is for p(b,a).
+      val invertedHash = MurmurHash3.finalizeHash(
+        MurmurHash3.mix(MurmurHash3.mix(MurmurHash3.mix(MurmurHash3.arraySeed, predicateId), second), first), 3)
+      val inverted = lookup(invertedHash, predicateId, groundings, length, true)
+      if (inverted != null && inverted.definition.properties.contains(Symmetric)) Some(inverted) else None
+    } else {
+      None
+    }
+  }
+
+  def contains(predicateName: String, groundings: List[Individual]): Boolean = get(predicateName, groundings).isDefined
+
+  def groundedPredicates: Iterator[GroundedPredicate] = values.iterator.filter(_ != null)
+
+  // Probes from the hash of the key, the individuals are compared with the interned symbols of the stored key.
+  private[this] def lookup(hash: Int, predicateId: Int, groundings: List[Individual], length: Int,
+    inverted: Boolean): GroundedPredicate = {
+    var slot = hash & mask
+    while (true) {
+      val offset = slot * stride
+      if (keys(offset) == -1) {
+        return null
+      } else if (keys(offset) == predicateId && keys(offset + 1) == length && sameIndividuals(offset + 2, groundings, inverted)) {
+        return values(slot)
+      }
+      slot = (slot + 1) & mask
+    }
+    null
+  }
+
+  private[this] def sameIndividuals(offset: Int, groundings: List[Individual], inverted: Boolean): Boolean = {
+    if (inverted) {
+      individuals.symbol(keys(offset)) == groundings.tail.head.value && individuals.symbol(keys(offset + 1)) == groundings.head.value
+    } else {
+      var i = offset
+      var remaining = groundings
+      while (!remaining.isEmpty) {
+        if (individuals.symbol(keys(i)) != remaining.head.value) {
+          return false
+        }
+        i += 1
+        remaining = remaining.tail
+      }
+      true
+    }
+  }
+
+  // Returns the slot that holds the key, or the first empty slot.
+  private[this] def findSlot(predicateId: Int, individualIds: Array[Int]): Int = {
+    var slot = hash(predicateId, individualIds) & mask
+    while (true) {
+      val offset = slot * stride
+      if (keys(offset) == -1 || (keys(offset) == predicateId && keys(offset + 1) == individualIds.length &&
+        (0 until individualIds.length).forall(i => keys(offset + 2 + i) == individualIds(i)))) {
+        return slot
+      }
+      slot = (slot + 1) & mask
+    }
+    -1
+  }
+
+  // Same hash as the one computed incrementally in get.
+  private[this] def hash(predicateId: Int, individualIds: Array[Int]): Int = {
+    var h = MurmurHash3.mix(MurmurHash3.arraySeed, predicateId)
+    var i = 0
+    while (i < individualIds.length) {
+      h = MurmurHash3.mix(h, individualIds(i))
+      i += 1
+    }
+    MurmurHash3.finalizeHash(h, individualIds.length + 1)
+  }
+}
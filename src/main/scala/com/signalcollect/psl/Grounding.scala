@@ -35,21 +35,14 @@ object Grounding {
     val allPossibleSetsAndIndividuals = generateAllPossibleSetsAsIndividuals(pslData.rulesWithPredicates,
       pslData.individualsByClassAndCardinality, config)
     if (config.verbose) println(s"Generated all possible sets of individuals: ${allPossibleSetsAndIndividuals.size}.")
-    val groundedPredicates = createGroundedPredicates(pslData.rulesWithPredicates, pslData.predicates, pslData.facts,
+    val (groundedConstraints, groundedPredicateIndex) = groundPredicatesAndConstraints(pslData,
       allPossibleSetsAndIndividuals, config)
-    if (config.verbose) println(s"Created ${groundedPredicates.size} grounded predicates.")
-    // Start by grounding the constraints first, so you can use some of the trivial constraints (e.g. symmetric with only one unbound grounded predicate) to assign
-    // values to the grounded predicates before passing them to the rules.
-    val (groundedConstraints, updatedGroundedPredicates) = createGroundedConstraints(pslData.predicates,
-      groundedPredicates, allPossibleSetsAndIndividuals,
-      pslData.rulesWithPredicates.size, config)
-    if (config.verbose) println(s"Created ${groundedConstraints.size} grounded constraints.")
-    val groundedRules = createGroundedRules(pslData.rulesWithPredicates, updatedGroundedPredicates,
+    val groundedRules = createGroundedRules(pslData.rulesWithPredicates, groundedPredicateIndex,
       allPossibleSetsAndIndividuals, groundedConstraints.size + 1, config)
     if (config.verbose) println(s"Created ${groundedRules.size} grounded rules.")
-    val idToGpMap = updatedGroundedPredicates.values.map(gp => (gp.id, gp)).toMap
+    val idToGpMap = groundedPredicateIndex.groundedPredicates.map(gp => (gp.id, gp)).toMap
     if (!config.isBounded) {
-      val bounds = createGroundedConstraintBounds(updatedGroundedPredicates, groundedRules.size +
+      val bounds = createGroundedConstraintBounds(idToGpMap.values, groundedRules.size +
         groundedConstraints.size + 1, groundedRules.size + groundedConstraints.size + 1, config.pushBoundsInNodes)
       if (config.verbose) println(s"Created ${bounds.size} bounds.")
       (groundedRules, groundedConstraints ++ bounds, idToGpMap)
@@ -58,6 +51,52 @@ object Grounding {
     }
   }
 
+  /**
+   * Streaming version of ground.
+   * The grounded predicates and the constraints are created as in ground, but the grounded rules are only created
+   * while the returned iterator is consumed, so neither the bindings nor the grounded rules are ever all in memory.
+   * Since the number of grounded rules is not known in advance, their ids start after the ids of the constraints and bounds.
+   */
+  def groundStreaming(pslData: ParsedPslFile,
+    config: InferencerConfig = InferencerConfig()): (Iterator[GroundedRule], List[GroundedConstraint], Map[Int, GroundedPredicate]) = {
+    val allPossibleSetsAndIndividuals = generateAllPossibleSetsAsIndividuals(pslData.rulesWithPredicates,
+      pslData.individualsByClassAndCardinality, config)
+    if (config.verbose) println(s"Generated all possible sets of individuals: ${allPossibleSetsAndIndividuals.size}.")
+    val (groundedConstraints, groundedPredicateIndex) = groundPredicatesAndConstraints(pslData,
+      allPossibleSetsAndIndividuals, config)
+    val idToGpMap = groundedPredicateIndex.groundedPredicates.map(gp => (gp.id, gp)).toMap
+    // The constraint ids are not contiguous, so start after the largest one.
+    val lastConstraintId = (0 :: groundedConstraints.map(_.id)).max
+    val lastConstraintRuleId = (pslData.rulesWithPredicates.size :: groundedConstraints.map(_.ruleId)).max
+    val bounds = if (!config.isBounded) {
+      createGroundedConstraintBounds(idToGpMap.values, lastConstraintId, lastConstraintRuleId, config.pushBoundsInNodes)
+    } else {
+      List.empty
+    }
+    if (config.verbose && !config.isBounded) println(s"Created ${bounds.size} bounds.")
+    val groundedRules = groundedRulesIterator(pslData.rulesWithPredicates, groundedPredicateIndex,
+      allPossibleSetsAndIndividuals, lastConstraintId + bounds.size, config)
+    (groundedRules, groundedConstraints ++ bounds, idToGpMap)
+  }
+
+  /**
+   * Creates the grounded predicates and the grounded constraints, and indexes the grounded predicates.
+   * The grounded predicate map is only needed to build the index, so it is released before the rules are grounded.
+   */
+  def groundPredicatesAndConstraints(pslData: ParsedPslFile, allPossibleSetsAndIndividuals: Map[(String, Int), Set[Individual]],
+    config: InferencerConfig): (List[GroundedConstraint], GroundedPredicateIndex) = {
+    val groundedPredicates = createGroundedPredicates(pslData.rulesWithPredicates, pslData.predicates, pslData.facts,
+      allPossibleSetsAndIndividuals, config)
+    if (config.verbose) println(s"Created ${groundedPredicates.size} grounded predicates.")
+    // Start by grounding the constraints first, so you can use some of the trivial constraints (e.g. symmetric with only one unbound grounded predicate) to assign
+    // values to the grounded predicates before passing them to the rules.
+    val (groundedConstraints, updatedGroundedPredicates) = createGroundedConstraints(pslData.predicates,
+      groundedPredicates, allPossibleSetsAndIndividuals,
+      pslData.rulesWithPredicates.size, config)
+    if (config.verbose) println(s"Created ${groundedConstraints.size} grounded constraints.")
+    (groundedConstraints, new GroundedPredicateIndex(updatedGroundedPredicates))
+  }
+
   /**
    * Generates all possible bindings for the variables in 'variables' according to their classes.
    * Assumption: two variables designate two different individuals,
@@ -67,41 +106,62 @@ object Grounding {
    *  (A->anna, B->demo), (A->anna, B->repub), (A->repub, B->anna), (A->repub, B->demo),
    *  (A->demo, B->repub), (A->demo, B->anna).
    *
+   * The bindings are enumerated by JoinGrounding.bindings without any facts, so the repeated individuals are
+   * skipped while the variables are bound instead of after the cross product is created.
    */
   def generateBindings(variables: List[Variable], individuals: Map[(String, Int), Set[Individual]],
     config: InferencerConfig = InferencerConfig()): List[Map[String, Individual]] = {
-    if (variables.size < 1) {
-      return List.empty
+    JoinGrounding.bindings(variables, individuals).toList
+  }
+
+  /**
+   * Lazily generated bindings of the variables of a rule.
+   * Without join based grounding the fact index is not used, which generates the same bindings as generateBindings.
+   */
+  def bindingsIterator(rule: Rule, variables: List[Variable], individuals: Map[(String, Int), Set[Individual]],
+    factIndex: => FactIndex, config: InferencerConfig): Iterator[Map[String, Individual]] = {
+    if (config.joinBasedGrounding) {
+      JoinGrounding.bindings(rule, variables, individuals, factIndex)
+    } else {
+      JoinGrounding.bindings(variables, individuals)
     }
+  }
 
-    // For each variable try all the individuals that are in the intersection of the classes it has.
-    //     Need a list of List[Map[String, Individual]], each one representing the value of a variable.
-    //     e.g. List (Map(A -> anna), Map(A -> sara)) 	    
-    val allMappingsList = variables.map {
-      variable =>
-        val variableIndividuals = if (variable.classTypes.isEmpty) {
-          individuals(("_", 1)).map(v => Individual(v.value))
+  /**
+   * All the individuals that are in the intersection of the classes of the variable.
+   * They are not collected: they are taken from one of the classes, a class of single individuals if there is one,
+   * and filtered by the others. The set individuals, which are created on demand, are created again each time
+   * the result is iterated.
+   */
+  def individualsOfVariable(variable: Variable, individuals: Map[(String, Int), Set[Individual]]): Iterable[Individual] = {
+    if (variable.classTypes.isEmpty) {
+      individuals(("_", 1)).map(v => Individual(v.value))
+    } else {
+      def individualsOfClass(c: PslClass): List[Set[Individual]] = {
+        if (c.set) {
+          (c.minCardinality to c.maxCardinality).flatMap(r => individuals.get((c.id, r))).toList
         } else {
-          val sets = variable.classTypes.map {
-            c =>
-              if (c.set) {
-                val range = c.minCardinality to c.maxCardinality
-                range.flatMap(r => individuals.get((c.id, r))).flatten.toSet
-              } else {
-                individuals.getOrElse((c.id, 1), Set.empty)
-              }
-          }.toList
-          val intersection = sets.foldLeft(sets(0))(_ & _)
-          intersection.map(v => Individual(v.value))
+          individuals.get((c.id, 1)).toList
         }
-        if (variableIndividuals.isEmpty) {
-          return List.empty
-        }
-        variableIndividuals.map(v => Map[String, Individual](variable.value -> v)).toList
+      }
+      val classes = variable.classTypes.toList.sortBy(_.set)
+      val iterated = individualsOfClass(classes.head)
+      val others = classes.tail.map(individualsOfClass)
+      new Iterable[Individual] {
+        def iterator = iterated.iterator.flatMap(_.iterator).filter(v => others.forall(_.exists(_.contains(v))))
+          .map(v => Individual(v.value))
+      }
     }
+  }
 
-    combineListOfBindingsAndPruneRepeatedIndividuals(allMappingsList)
-
+  /**
+   * The individuals with this name, without enumerating the set individuals that are created on demand.
+   */
+  def individualsNamed(individuals: Set[Individual], name: String): Iterable[Individual] = {
+    individuals match {
+      case subsets: SubsetIndividuals => subsets.named(name).toList
+      case other => other.filter(_.name == name)
+    }
   }
 
   def combineListOfBindingsAndPruneRepeatedIndividuals(allMappingsList: List[List[Map[String, Individual]]]) = {
@@ -165,6 +225,9 @@ object Grounding {
 
   /**
    * Generate all possible sets as individuals, so that they can be grounded where needed.
+   * The set individuals are not enumerated here: the sets of each class and size are SubsetIndividuals,
+   * which create the subsets only while a binding iterates over them. The iterators of FOREACH and EXISTS
+   * clauses only look up the subsets of the individual bound to the iterable.
    */
   def generateAllPossibleSetsAsIndividuals(rules: List[Rule], individuals: Map[(PslClass, Int), Set[Individual]],
     config: InferencerConfig = InferencerConfig()): Map[(String, Int), Set[Individual]] = {
@@ -222,14 +285,10 @@ object Grounding {
           val nonSetIndividualsOfClass = nonSetIndividuals.filter(_._1._1.id == singularTypeName)
           if (nonSetIndividualsOfClass.size == 1) {
             val relevantIndividuals = nonSetIndividualsOfClass.head._2
-            // Subsets creates all possible subsets of a set.
+            // The subsets of each size are only created when they are iterated or looked up.
             sizes.flatMap {
               size =>
-                val subsetsPerSize = relevantIndividuals.subsets(size).map {
-                  subset =>
-                    val orderedSubset = subset.toList.sortBy(_.name).toSet
-                    Individual(orderedSubset.toString, Set(setClass))
-                }.toSet
+                val subsetsPerSize: Set[Individual] = new SubsetIndividuals(relevantIndividuals, size, setClass)
                 Some(Map((setClass.id, size) -> subsetsPerSize))
             }
           } else {
@@ -242,8 +301,13 @@ object Grounding {
     }
   }
 
-  def getBindingOfRule(rule: Rule, binding: Map[String, Individual]) = {
-    (rule.head ++ rule.body).flatMap {
+  /**
+   * The (predicate, grounding) keys of the atoms of a rule for a binding.
+   * Without set clauses a grounded rule needs all of its grounded predicates, so if a set argument of one
+   * of the atoms has the wrong cardinality, the binding creates none of them.
+   */
+  def getBindingOfRule(rule: Rule, binding: Map[String, Individual]): List[(Predicate, List[Individual])] = {
+    val keys = (rule.head ++ rule.body).map {
       p =>
         val key = p.predicate.get
         val value = p.allVarsOrIndsWithClasses.flatMap(getBinding(_, binding))
@@ -252,9 +316,21 @@ object Grounding {
         } else {
           Some((key, value))
         }
-    }.distinct
+    }
+    if (!hasSetClauses(rule) && keys.exists(_.isEmpty)) {
+      List.empty
+    } else {
+      keys.flatten.distinct
+    }
+  }
+
+  def hasSetClauses(rule: Rule): Boolean = {
+    rule.foreachInSetClauseInHead.nonEmpty || rule.existsInSetClauseInHead.nonEmpty ||
+      rule.foreachInSetClauseInBody.nonEmpty || rule.existsInSetClauseInBody.nonEmpty
   }
 
+  def hasSetClass(predicate: Predicate): Boolean = predicate.classes.exists(_.set)
+
   def getBinding(varOrInd: VariableOrIndividual, binding: Map[String, Individual]) = varOrInd match {
     case v: Variable if !v.set =>
       Some(binding(v.value))
@@ -300,62 +376,57 @@ object Grounding {
     }.toMap
 
     // Ground predicates in rules.
+    // With join based grounding the bindings of the rules that allow it are pruned by the facts, so the grounded
+    // predicates that only appear in trivially satisfied grounded rules are not created. The grounded rules are
+    // pruned with at least the same facts, so each of them only refers to grounded predicates created here.
     // TODO: generate a map containing all the intersections of PslClasses that we need.
+    lazy val factIndex = FactIndex.fromFacts(facts)
     val groundedPredicatesKeys =
       rules.flatMap {
         rule =>
-          val bindings = generateBindings(rule.variables, individuals, config)
-          if (config.verbose) {
-            println(s"Creating grounded predicate keys for rule: $rule")
-            rule.variables.map(v => println(s"- $v : ${v.classTypes}"))
-            println("Bindings for grounded predicates:")
-            bindings.map { m => println(s"- $m") }
-          }
-          val parallelMapOfBindings = if (config.parallelizeGrounding) {
-            bindings.par
-          } else {
-            bindings
-          }
-          val result = parallelMapOfBindings.flatMap {
-            binding => getBindingOfRule(rule, binding)
-          }
-          if (config.parallelizeGrounding) {
-            result.seq
+          if (config.joinBasedGrounding && JoinGrounding.prunesGroundedPredicates(rule, config)) {
+            JoinGrounding.bindings(rule, rule.variables, individuals, factIndex).flatMap(getBindingOfRule(rule, _))
           } else {
-            result
+            groundedPredicateKeysOfRule(rule, individuals, config)
           }
       }.toSet
 
     //Ground predicates in constraints
-    val groundedConstraintPredicatesKeys = predicates.filter(!_.properties.isEmpty).flatMap {
-      predicate =>
-        if (config.verbose) println(s"Creating grounded constraint keys for predicate: $predicate")
-        predicate.properties.flatMap {
-          property =>
-            property match {
-              case Functional | PartialFunctional =>
-                val varA = Variable("A", Set(predicate.classes(0)))
-                val varB = Variable("B", Set(predicate.classes(1)))
-                val bindings = generateBindings(List(varA, varB), individuals, config)
-                val parallelMapOfBindings = if (config.parallelizeGrounding) { bindings.par } else { bindings }
-                val result = parallelMapOfBindings.flatMap {
-                  binding => Some((predicate, List(binding("A"), binding("B"))))
-                }
-                if (config.parallelizeGrounding) { result.seq } else { result }
-              case Symmetric =>
-                val varA = Variable("A", predicate.classes.toSet)
-                val varB = Variable("B", predicate.classes.toSet)
-                val bindings = generateBindings(List(varA, varB), individuals, config)
-                val parallelMapOfBindings = if (config.parallelizeGrounding) { bindings.par } else { bindings }
-                val result = parallelMapOfBindings.flatMap {
-                  binding =>
-                    Some((predicate, List(binding("A"), binding("B"))))
-                }
-                if (config.parallelizeGrounding) { result.seq } else { result }
-              case _ => None
-            }
-        }
-    }.toSet
+    // The predicates over sets only get the keys that occur in the rules or the facts, not all the pairs of sets.
+    val groundedConstraintPredicatesKeys = if (config.factDrivenConstraintGrounding) {
+      occurringConstraintPredicateKeys(predicates, facts, groundedPredicatesKeys)
+    } else {
+      occurringConstraintPredicateKeys(predicates.filter(hasSetClass), facts, groundedPredicatesKeys) ++
+      predicates.filter(p => !p.properties.isEmpty && !hasSetClass(p)).flatMap {
+        predicate =>
+          if (config.verbose) println(s"Creating grounded constraint keys for predicate: $predicate")
+          predicate.properties.flatMap {
+            property =>
+              property match {
+                case Functional | PartialFunctional =>
+                  val varA = Variable("A", Set(predicate.classes(0)))
+                  val varB = Variable("B", Set(predicate.classes(1)))
+                  val bindings = generateBindings(List(varA, varB), individuals, config)
+                  val parallelMapOfBindings = if (config.parallelizeGrounding) { bindings.par } else { bindings }
+                  val result = parallelMapOfBindings.flatMap {
+                    binding => Some((predicate, List(binding("A"), binding("B"))))
+                  }
+                  if (config.parallelizeGrounding) { result.seq } else { result }
+                case Symmetric =>
+                  val varA = Variable("A", predicate.classes.toSet)
+                  val varB = Variable("B", predicate.classes.toSet)
+                  val bindings = generateBindings(List(varA, varB), individuals, config)
+                  val parallelMapOfBindings = if (config.parallelizeGrounding) { bindings.par } else { bindings }
+                  val result = parallelMapOfBindings.flatMap {
+                    binding =>
+                      Some((predicate, List(binding("A"), binding("B"))))
+                  }
+                  if (config.parallelizeGrounding) { result.seq } else { result }
+                case _ => None
+              }
+          }
+      }.toSet
+    }
 
     val allGroundedPredicatesKeys = groundedPredicatesKeys ++ groundedConstraintPredicatesKeys
 
@@ -405,6 +476,46 @@ object Grounding {
     unaffectedPredicateKeys ++ optimizedPredicateKeys
   }
 
+  /**
+   * For fact driven constraint grounding: instead of all the pairs of individuals, only the keys of the grounded
+   * predicates of functional, partial functional and symmetric predicates that appear in the rules or in the facts.
+   * For symmetric predicates also the inverted pairs, so that both sides of the symmetric constraints exist.
+   */
+  def occurringConstraintPredicateKeys(predicates: List[Predicate], facts: List[Fact],
+    ruleKeys: Set[(Predicate, List[Individual])]): Set[(Predicate, List[Individual])] = {
+    val constrainedPredicates = predicates.filter(_.properties.exists(p =>
+      p == Functional || p == PartialFunctional || p == Symmetric)).map(p => (p.name, p)).toMap
+    val keysInRules = ruleKeys.filter(key => constrainedPredicates.contains(key._1.name))
+    val keysInFacts = facts.flatMap(fact => constrainedPredicates.get(fact.name).map((_, fact.groundingsAsSingleIndividuals)))
+    val keys = (keysInRules ++ keysInFacts).filter(_._2.length == 2)
+    keys ++ keys.filter(_._1.properties.contains(Symmetric)).map { case (predicate, groundings) => (predicate, groundings.reverse) }
+  }
+
+  /**
+   * The (predicate, grounding) keys of all the grounded predicates that appear in the bindings of a rule.
+   * The bindings are only generated while the keys are consumed, in groups if they are processed in parallel.
+   */
+  def groundedPredicateKeysOfRule(rule: Rule, individuals: Map[(String, Int), Set[Individual]],
+    config: InferencerConfig): Iterator[(Predicate, List[Individual])] = {
+    val bindings = JoinGrounding.bindings(rule.variables, individuals)
+    if (config.verbose) {
+      println(s"Creating grounded predicate keys for rule: $rule")
+      rule.variables.map(v => println(s"- $v : ${v.classTypes}"))
+      println("Bindings for grounded predicates:")
+    }
+    bindings.grouped(10000).flatMap {
+      group =>
+        if (config.verbose) {
+          group.map { m => println(s"- $m") }
+        }
+        if (config.parallelizeGrounding) {
+          group.par.flatMap(getBindingOfRule(rule, _)).seq
+        } else {
+          group.flatMap(getBindingOfRule(rule, _))
+        }
+    }
+  }
+
   /**
    * Create the new rule based on the existential quantifiers on the right side.
    */
@@ -554,8 +665,34 @@ object Grounding {
   def createGroundedRules(rules: List[Rule], groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
     individuals: Map[(String, Int), Set[Individual]], startingId: Int = 0,
     config: InferencerConfig = InferencerConfig()): List[GroundedRule] = {
+    createGroundedRules(rules, new GroundedPredicateIndex(groundedPredicates), individuals, startingId, config)
+  }
+
+  def createGroundedRules(rules: List[Rule], groundedPredicateIndex: GroundedPredicateIndex,
+    individuals: Map[(String, Int), Set[Individual]], startingId: Int, config: InferencerConfig): List[GroundedRule] = {
+    groundedRulesIterator(rules, groundedPredicateIndex, individuals, startingId, config).toList
+  }
+
+  /**
+   * Creates the grounded rules while the iterator is consumed, in the same order and with the same ids as createGroundedRules.
+   * The bindings of a rule are also generated lazily.
+   * The grounded predicates are only looked up in the index, the iterator does not hold on to a grounded predicate map.
+   */
+  def groundedRulesIterator(rules: List[Rule], groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
+    individuals: Map[(String, Int), Set[Individual]], startingId: Int = 0,
+    config: InferencerConfig = InferencerConfig()): Iterator[GroundedRule] = {
+    groundedRulesIterator(rules, new GroundedPredicateIndex(groundedPredicates), individuals, startingId, config)
+  }
+
+  def groundedRulesIterator(rules: List[Rule], groundedPredicateIndex: GroundedPredicateIndex,
+    individuals: Map[(String, Int), Set[Individual]], startingId: Int, config: InferencerConfig): Iterator[GroundedRule] = {
     var id = startingId
-    rules.flatMap {
+    val factIndex = if (config.joinBasedGrounding) {
+      FactIndex.fromGroundedPredicates(groundedPredicateIndex.groundedPredicates)
+    } else {
+      FactIndex.empty
+    }
+    rules.iterator.flatMap {
       rule =>
         // Existentially quantified vars.
         val newRule = createExistentiallyGroundedRule(rule, individuals, config)
@@ -575,16 +712,16 @@ object Grounding {
         val normalVars = newRule.variables.filter(!iteratorVariables.contains(_))
         // println(s"normalVars : ${normalVars}")
         val bindings = if (normalVars.size == 0) {
-          List(Map.empty[String, Individual])
+          Iterator(Map.empty[String, Individual])
         } else {
-          generateBindings(normalVars, individuals, config)
+          bindingsIterator(newRule, normalVars, individuals, factIndex, config)
         }
         bindings.flatMap {
           binding =>
             if (iteratorVariables.size == 0) {
               // Standard execution.
-              val groundedBody = newRule.body.map(getGroundedPredicate(groundedPredicates, _, binding)).flatten
-              val groundedHead = newRule.head.map(getGroundedPredicate(groundedPredicates, _, binding)).flatten
+              val groundedBody = newRule.body.map(getGroundedPredicate(groundedPredicateIndex, _, binding)).flatten
+              val groundedHead = newRule.head.map(getGroundedPredicate(groundedPredicateIndex, _, binding)).flatten
               val unboundGroundedPredicates = groundedHead.filter(!_.truthValue.isDefined) ::: groundedBody.filter(!_.truthValue.isDefined)
               if (groundedBody.size >= newRule.body.size && groundedHead.size >= newRule.head.size && unboundGroundedPredicates.size > 0) {
                 List(GroundedRule({ id += 1; id }, newRule, groundedBody, groundedHead))
@@ -604,7 +741,7 @@ object Grounding {
                 if (existsInSetRule.isDefined) {
                   // Bind the FOREACH iterator variables a posteriori with the individuals bound in the iterable variables.
                   val (newId, newGroundedRules) = createNewRuleForeachIteratorInHead(forEachQuantifiedVariablesInHead, binding,
-                    existsInSetRule.get, id, groundedPredicates, individuals)
+                    existsInSetRule.get, id, groundedPredicateIndex, individuals)
                   id = newId
                   newGroundedRules
                 } else {
@@ -652,8 +789,9 @@ object Grounding {
                 range.flatMap {
                   r =>
                     val key = (c.id, r)
+                    val individualsOfKey = individuals.getOrElse(key, Set.empty)
                     val values = iterableBindingVarsOrInds.subsets(r).flatMap { v =>
-                      individuals.getOrElse(key, Set.empty).filter(_.name == v.toString)
+                      individualsNamed(individualsOfKey, v.toString)
                     }.toSet
                     //println(s"$r: $key $values")
                     Map(key -> values)
@@ -678,7 +816,7 @@ object Grounding {
 
   def createNewRuleForeachIteratorInHead(forEachQuantifiedVariables: Set[(Variable, Variable, String)],
     binding: Map[String, Individual], newRule: Rule, startingId: Int,
-    groundedPredicates: Map[(String, List[Individual]), GroundedPredicate], individuals: Map[(String, Int), Set[Individual]]): (Int, List[GroundedRule]) = {
+    groundedPredicateIndex: GroundedPredicateIndex, individuals: Map[(String, Int), Set[Individual]]): (Int, List[GroundedRule]) = {
     var id = startingId
     val foldedList = if (forEachQuantifiedVariables.size == 0) {
       List(Map.empty[String, Individual])
@@ -688,8 +826,8 @@ object Grounding {
 
     val newGroundedRules = foldedList.flatMap {
       newBinding =>
-        val groundedBody = newRule.body.map(getGroundedPredicate(groundedPredicates, _, newBinding ++ binding)).flatten
-        val groundedHead = newRule.head.map(getGroundedPredicate(groundedPredicates, _, newBinding ++ binding)).flatten
+        val groundedBody = newRule.body.map(getGroundedPredicate(groundedPredicateIndex, _, newBinding ++ binding)).flatten
+        val groundedHead = newRule.head.map(getGroundedPredicate(groundedPredicateIndex, _, newBinding ++ binding)).flatten
         val unboundGroundedPredicates = groundedHead.filter(!_.truthValue.isDefined) ::: groundedBody.filter(!_.truthValue.isDefined)
         if (groundedBody.size >= newRule.body.size && groundedHead.size >= newRule.head.size && unboundGroundedPredicates.size > 0) {
           Some(GroundedRule({ id += 1; id }, newRule, groundedBody, groundedHead))
@@ -717,6 +855,14 @@ object Grounding {
     // Update the grounded predicates with assignments for the easy cases.
     var currentGroundedPredicates = groundedPredicates
 
+    // With fact driven constraint grounding, or for predicates over sets, the constraints only involve the grounded predicates that were created,
+    // indexed by predicate in one pass. The keys do not change when the grounded predicates are updated.
+    lazy val keysByPredicate = groundedPredicates.keys.groupBy(_._1)
+    // The predicates over sets always use the keys, since not all the pairs of sets are created.
+    def occurringKeys(predicate: Predicate) = {
+      if (config.factDrivenConstraintGrounding || hasSetClass(predicate)) Some(keysByPredicate.getOrElse(predicate.name, Iterable.empty)) else None
+    }
+
     // Create the grounded constraints based on the predicate properties.
     val groundedConstraints = predicates.filter(!_.properties.isEmpty).flatMap {
       predicate =>
@@ -725,13 +871,15 @@ object Grounding {
             val (nextId, con, newGps: Map[(String, List[Individual]), GroundedPredicate]) = property match {
               case Symmetric =>
                 if (!config.removeSymmetricConstraints) {
-                  createSymmetricConstraints(id, { ruleId += 1; ruleId }, predicate, currentGroundedPredicates, individuals)
+                  createSymmetricConstraints(id, { ruleId += 1; ruleId }, predicate, currentGroundedPredicates, individuals,
+                    config, occurringKeys(predicate))
                 } else {
                   // We have avoided creating symmetric constraints by rewriting all gps (a,b) and (b,a) to a normalized form 
                   (id - 1, List.empty, Map.empty)
                 }
               case Functional | PartialFunctional | _ =>
-                createFunctionalConstraints(id, { ruleId += 1; ruleId }, property, predicate, currentGroundedPredicates, individuals, config)
+                createFunctionalConstraints(id, { ruleId += 1; ruleId }, property, predicate, currentGroundedPredicates, individuals,
+                  config, occurringKeys(predicate))
             }
             currentGroundedPredicates = currentGroundedPredicates ++ newGps
             id = nextId + 1
@@ -743,24 +891,32 @@ object Grounding {
 
   /**
    * Helper function creating functional/partialFunctional constraints for a given predicate and a list of individuals.
+   * If occurringKeys is defined, only the pairs of individuals of these grounded predicate keys are used.
    */
   def createFunctionalConstraints(startingId: Int, ruleId: Int, property: PredicateProperty, predicate: Predicate,
     groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
     individuals: Map[(String, Int), Set[Individual]],
-    config: InferencerConfig = InferencerConfig()): (Int, List[GroundedConstraint], Map[(String, List[Individual]), GroundedPredicate]) = {
+    config: InferencerConfig = InferencerConfig(),
+    occurringKeys: Option[Iterable[(String, List[Individual])]] = None): (Int, List[GroundedConstraint], Map[(String, List[Individual]), GroundedPredicate]) = {
 
     // Functional means that the first individual is the same in all the grounded predicates of the same constraint.
     var id = startingId
 
-    val varA = Variable("A", Set(predicate.classes(0)))
-    val varB = Variable("B", Set(predicate.classes(1)))
-    val bindings = generateBindings(List(varA, varB), individuals, config)
+    val bindings = occurringKeys match {
+      case Some(keys) =>
+        bindingsOfKeys(predicate, keys)
+      case None =>
+        val varA = Variable("A", Set(predicate.classes(0)))
+        val varB = Variable("B", Set(predicate.classes(1)))
+        generateBindings(List(varA, varB), individuals, config)
+    }
     val valuesOfA = bindings.map(m => m("A")).distinct
+    val bindingsByA = bindings.groupBy(m => m("A"))
 
     // For each individual, e.g. "a" create a constraint involving all other individuals.
     val constraintsAndAssignedGroundedPredicates: List[(Option[GroundedConstraint], Option[GroundedPredicate])] = valuesOfA.map {
       valueOfA =>
-        val allBindingsWithA = bindings.filter(_("A") == valueOfA)
+        val allBindingsWithA = bindingsByA(valueOfA)
         val groundedPredicatesWithA = allBindingsWithA.flatMap {
           binding =>
             val key = (predicate.name, List(binding("A"), binding("B")))
@@ -815,12 +971,22 @@ object Grounding {
 
   }
 
-  def createGroundedConstraintBounds(groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
+  /**
+   * The bindings of A and B for the pairs of individuals in the keys of a binary predicate,
+   * also inverted for symmetric predicates, where a grounded predicate also stands for the inverted pair.
+   */
+  def bindingsOfKeys(predicate: Predicate, keys: Iterable[(String, List[Individual])]): List[Map[String, Individual]] = {
+    val pairs = keys.map(_._2).filter(groundings => groundings.length == 2 && groundings(0) != groundings(1)).toList
+    val allPairs = if (predicate.properties.contains(Symmetric)) pairs ++ pairs.map(_.reverse) else pairs
+    allPairs.distinct.map(groundings => Map("A" -> groundings(0), "B" -> groundings(1)))
+  }
+
+  def createGroundedConstraintBounds(groundedPredicates: Iterable[GroundedPredicate],
     startingId: Int = 0, startingConstraintId: Int = 0, pushBoundsInNodes: Boolean = true): List[GroundedConstraint] = {
     var id = startingId
     var ruleId = startingConstraintId
 
-    val unboundedGroundedPredicates = groundedPredicates.values.filter(!_.truthValue.isDefined)
+    val unboundedGroundedPredicates = groundedPredicates.filter(!_.truthValue.isDefined)
     println(s"Unbounded grounded predicates: ${unboundedGroundedPredicates.size}")
 
     // Create the grounded constraints of >= 0 and <= 1 for each of the grounded predicates.
@@ -857,10 +1023,21 @@ object Grounding {
    */
   def getGroundedPredicate(groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
     p: PredicateInRule, binding: Map[String, Individual]): Option[GroundedPredicate] = {
+    val key = (p.name, getGroundings(p, binding))
+    getGroundedPredicate(groundedPredicates, key)
+  }
+
+  /**
+   * Same as above, but looks the grounded predicate up in the interned index.
+   */
+  def getGroundedPredicate(groundedPredicateIndex: GroundedPredicateIndex,
+    p: PredicateInRule, binding: Map[String, Individual]): Option[GroundedPredicate] = {
+    groundedPredicateIndex.get(p.name, getGroundings(p, binding))
+  }
+
+  def getGroundings(p: PredicateInRule, binding: Map[String, Individual]): List[Individual] = {
     // If the variables is a set of variables, union their bindings.
-    //    println(p)
-    //    println(binding)
-    val key = (p.name, p.allVarsOrIndsWithClasses.map {
+    p.allVarsOrIndsWithClasses.map {
       case v: Variable =>
         if (!v.set) {
           binding(v.value)
@@ -868,8 +1045,7 @@ object Grounding {
           getIndividualAsUnionOfBindings(v, binding)
         }
       case i: Individual => Individual(i.value)
-    })
-    getGroundedPredicate(groundedPredicates, key)
+    }
   }
 
   def getGroundedPredicate(groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
@@ -904,31 +1080,29 @@ object Grounding {
    */
   def createSymmetricConstraints(startingId: Int, ruleId: Int, predicate: Predicate, groundedPredicates: Map[(String, List[Individual]), GroundedPredicate],
     individuals: Map[(String, Int), Set[Individual]],
-    config: InferencerConfig = InferencerConfig()): (Int, List[GroundedConstraint], Map[(String, List[Individual]), GroundedPredicate]) = {
+    config: InferencerConfig = InferencerConfig(),
+    occurringKeys: Option[Iterable[(String, List[Individual])]] = None): (Int, List[GroundedConstraint], Map[(String, List[Individual]), GroundedPredicate]) = {
     // Given all the combinations of individuals, e.g. (a,b), (b,c), (a,c)
     // For each produce the constraint: (a,b) - (b,a) = 0.	  
 
-    // All the possible couples of individuals.
+    // All the possible couples of individuals, or only the ones of the occurring keys.
     // All of the current predicate properties refer to binary predicates.
-    val varA = Variable("A", predicate.classes.toSet)
-    val varB = Variable("B", predicate.classes.toSet)
-    val bindings = generateBindings(List(varA, varB), individuals, config)
+    val bindings = occurringKeys match {
+      case Some(keys) =>
+        bindingsOfKeys(predicate, keys)
+      case None =>
+        val varA = Variable("A", predicate.classes.toSet)
+        val varB = Variable("B", predicate.classes.toSet)
+        generateBindings(List(varA, varB), individuals, config)
+    }
 
     // Filter duplicates like Map(A-> a, B-> b) and Map(A -> b, B-> a) and avoid: (a,b) + (b,a) = 0 and (b,a) + (a, b) = 0.
-    // Choose the couple that has a lower index in the list.
-    val deduplicatedBindings = bindings.zipWithIndex.flatMap {
+    // Choose the couple that has a lower index in the list, couples without an inverted couple are dropped.
+    val indexOfBinding = bindings.zipWithIndex.toMap
+    val deduplicatedBindings = bindings.zipWithIndex.filter {
       case (mapping, i) =>
-        val duplicated = bindings.zipWithIndex.map {
-          case (other, j) =>
-            if (other("A") == mapping("B") && other("B") == mapping("A") && i < j) {
-              //keep i
-              Some(mapping)
-            } else if (other("A") == mapping("B") && other("B") == mapping("A") && i > j) {
-              Some(other)
-            } else { None }
-        }.flatten
-        duplicated
-    }.distinct
+        indexOfBinding.get(Map("A" -> mapping("B"), "B" -> mapping("A"))).exists(_ > i)
+    }.map(_._1)
 
     var id = startingId
 
@@ -0,0 +1,313 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.HashMap
+
+import com.signalcollect.psl.model.GreaterOrEqual
+import com.signalcollect.psl.model.GroundedConstraint
+import com.signalcollect.psl.model.GroundedPredicate
+import com.signalcollect.psl.model.GroundedRule
+import com.signalcollect.psl.model.Individual
+import com.signalcollect.psl.model.LessOrEqual
+import com.signalcollect.psl.model.Linear
+import com.signalcollect.psl.model.Predicate
+import com.signalcollect.psl.model.PredicateInRule
+import com.signalcollect.psl.model.PredicateProperty
+import com.signalcollect.psl.model.PslClass
+import com.signalcollect.psl.model.Rule
+import com.signalcollect.psl.model.Squared
+
+/**
+ * Binary cache of the output of Grounding.ground, keyed by a hash of the input files and of the settings
+ * that influence grounding. Loading a cached grounding skips parsing and grounding entirely.
+ *
+ * Format (big endian, strings are UTF-8 with an int length prefix):
+ * - magic, version
+ * - predicates: name, classes, properties, prior
+ * - individual names, referenced by index
+ * - grounded predicates: id, predicate index, individual indices, truth value, bounds
+ * - grounded rules: id, rule id, weight, distance measure, (grounded predicate id, negated) for body and head
+ * - grounded constraints: id, rule id, property, grounded predicate ids, explicit coefficients and constant
+ *
+ * The rule definitions of the loaded grounded rules only keep what is needed to create the optimizable functions:
+ * the rule id, the weight, the distance measure and the negations of the atoms.
+ */
+object GroundingCache {
+
+  val magic = 0x464f5847 // "FOXG"
+  val version = 1
+
+  /**
+   * Hash of the contents of the files and of the configuration settings that change the grounding.
+   */
+  def key(files: List[File], config: InferencerConfig): String = {
+    val digest = MessageDigest.getInstance("SHA-1")
+    val buffer = new Array[Byte](1 << 16)
+    for (file <- files) {
+      val in = new FileInputStream(file)
+      try {
+        var read = in.read(buffer)
+        while (read >= 0) {
+          digest.update(buffer, 0, read)
+          read = in.read(buffer)
+        }
+      } finally {
+        in.close
+      }
+    }
+    val settings = s"${config.isBounded} ${config.removeSymmetricConstraints} ${config.pushBoundsInNodes} ${config.joinBasedGrounding} ${config.factDrivenConstraintGrounding}"
+    digest.update(settings.getBytes("UTF-8"))
+    digest.digest.map(b => "%02x".format(b & 0xff)).mkString
+  }
+
+  def cacheFile(directory: File, files: List[File], config: InferencerConfig): File = {
+    new File(directory, key(files, config) + ".grounding")
+  }
+
+  /**
+   * The grounding is written to a temporary file in the same directory that is then moved into place,
+   * so an interrupted write never leaves a truncated cache file behind.
+   */
+  def write(file: File, groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint],
+    idToGpMap: Map[Int, GroundedPredicate]) {
+    val temporaryFile = File.createTempFile(file.getName, ".tmp", file.getAbsoluteFile.getParentFile)
+    try {
+      writeTo(temporaryFile, groundedRules, groundedConstraints, idToGpMap)
+      Files.move(temporaryFile.toPath, file.toPath, StandardCopyOption.ATOMIC_MOVE)
+    } finally {
+      temporaryFile.delete
+    }
+  }
+
+  private[this] def writeTo(file: File, groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint],
+    idToGpMap: Map[Int, GroundedPredicate]) {
+    val predicateIndices = new HashMap[Predicate, Int]
+    val individualIndices = new HashMap[String, Int]
+    val predicates = new ArrayBuffer[Predicate]
+    val individuals = new ArrayBuffer[String]
+    for (gp <- idToGpMap.values) {
+      if (!predicateIndices.contains(gp.definition)) {
+        predicateIndices(gp.definition) = predicates.length
+        predicates += gp.definition
+      }
+      for (i <- gp.groundings if !individualIndices.contains(i.value)) {
+        individualIndices(i.value) = individuals.length
+        individuals += i.value
+      }
+    }
+
+    val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))
+    try {
+      out.writeInt(magic)
+      out.writeInt(version)
+
+      out.writeInt(predicates.length)
+      for (p <- predicates) {
+        writeString(out, p.name)
+        out.writeInt(p.classes.length)
+        for (c <- p.classes) {
+          writeString(out, c.id)
+          out.writeBoolean(c.set)
+          out.writeInt(c.minCardinalityOption.getOrElse(-1))
+          out.writeInt(c.maxCardinalityOption.getOrElse(-1))
+          out.writeInt(c.maxPossibleCardinality)
+        }
+        out.writeInt(p.properties.size)
+        p.properties.foreach(property => writeString(out, property.toString))
+        out.writeBoolean(p.prior.isDefined)
+        out.writeDouble(p.prior.getOrElse(0.0))
+      }
+
+      out.writeInt(individuals.length)
+      individuals.foreach(writeString(out, _))
+
+      out.writeInt(idToGpMap.size)
+      for (gp <- idToGpMap.values) {
+        out.writeInt(gp.id)
+        out.writeInt(predicateIndices(gp.definition))
+        out.writeInt(gp.groundings.length)
+        gp.groundings.foreach(i => out.writeInt(individualIndices(i.value)))
+        out.writeBoolean(gp.truthValue.isDefined)
+        out.writeDouble(gp.truthValue.getOrElse(0.0))
+        out.writeDouble(gp.lowerBound)
+        out.writeDouble(gp.upperBound)
+      }
+
+      out.writeInt(groundedRules.size)
+      for (r <- groundedRules) {
+        out.writeInt(r.id)
+        out.writeInt(r.definition.id)
+        out.writeDouble(r.definition.weight)
+        out.writeBoolean(r.definition.distanceMeasure == Linear)
+        out.writeInt(r.body.length)
+        r.body.zip(r.definition.body).foreach { case (gp, p) => out.writeInt(gp.id); out.writeBoolean(p.negated) }
+        out.writeInt(r.head.length)
+        r.head.zip(r.definition.head).foreach { case (gp, p) => out.writeInt(gp.id); out.writeBoolean(p.negated) }
+      }
+
+      out.writeInt(groundedConstraints.size)
+      for (c <- groundedConstraints) {
+        out.writeInt(c.id)
+        out.writeInt(c.ruleId)
+        writeString(out, c.property.toString)
+        out.writeInt(c.groundedPredicates.length)
+        c.groundedPredicates.foreach(gp => out.writeInt(gp.id))
+        out.writeInt(c.explicitCoeff.length)
+        c.explicitCoeff.foreach(out.writeDouble(_))
+        out.writeDouble(c.explicitConst)
+      }
+    } finally {
+      out.close
+    }
+  }
+
+  /**
+   * Reads a cached grounding through a memory mapped buffer, the result is the same as the one of Grounding.ground.
+   */
+  def read(file: File): (List[GroundedRule], List[GroundedConstraint], Map[Int, GroundedPredicate]) = {
+    val channel = new RandomAccessFile(file, "r").getChannel
+    val buffer = try {
+      if (channel.size >= Int.MaxValue) {
+        throw new Exception(s"$file is larger than 2GB, cached groundings of that size are not supported.")
+      }
+      channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size)
+    } finally {
+      channel.close
+    }
+    if (buffer.getInt != magic || buffer.getInt != version) {
+      throw new Exception(s"$file is not a grounding cache of version $version.")
+    }
+
+    val predicates = Array.fill(buffer.getInt) {
+      val name = readString(buffer)
+      val classes = List.fill(buffer.getInt) {
+        val id = readString(buffer)
+        val set = buffer.get != 0
+        val minCardinality = buffer.getInt
+        val maxCardinality = buffer.getInt
+        val maxPossibleCardinality = buffer.getInt
+        PslClass(id, set, if (minCardinality < 0) None else Some(minCardinality),
+          if (maxCardinality < 0) None else Some(maxCardinality), maxPossibleCardinality)
+      }
+      val properties = List.fill(buffer.getInt)(parseProperty(readString(buffer))).toSet
+      val hasPrior = buffer.get != 0
+      val prior = buffer.getDouble
+      Predicate(name, classes, properties, if (hasPrior) Some(prior) else None)
+    }
+
+    val individuals = Array.fill(buffer.getInt)(Individual(readString(buffer)))
+
+    val numberOfGps = buffer.getInt
+    val gps = new HashMap[Int, GroundedPredicate]
+    for (i <- 0 until numberOfGps) {
+      val id = buffer.getInt
+      val predicate = predicates(buffer.getInt)
+      val groundings = List.fill(buffer.getInt)(individuals(buffer.getInt))
+      val hasTruthValue = buffer.get != 0
+      val truthValue = buffer.getDouble
+      val lowerBound = buffer.getDouble
+      val upperBound = buffer.getDouble
+      gps(id) = GroundedPredicate(id, predicate, groundings, if (hasTruthValue) Some(truthValue) else None, lowerBound, upperBound)
+    }
+
+    // Grounded rules with the same definition share the rule instance.
+    val rules = new HashMap[(Int, Double, Boolean, List[(String, Boolean)], List[(String, Boolean)]), Rule]
+    val groundedRules = List.fill(buffer.getInt) {
+      val id = buffer.getInt
+      val ruleId = buffer.getInt
+      val weight = buffer.getDouble
+      val linear = buffer.get != 0
+      val body = List.fill(buffer.getInt)((gps(buffer.getInt), buffer.get != 0))
+      val head = List.fill(buffer.getInt)((gps(buffer.getInt), buffer.get != 0))
+      val bodyAtoms = body.map { case (gp, negated) => (gp.definition.name, negated) }
+      val headAtoms = head.map { case (gp, negated) => (gp.definition.name, negated) }
+      val definition = rules.getOrElseUpdate((ruleId, weight, linear, bodyAtoms, headAtoms),
+        Rule(ruleId, bodyAtoms.map(atom), headAtoms.map(atom), if (linear) Linear else Squared, weight))
+      GroundedRule(id, definition, body.map(_._1), head.map(_._1))
+    }
+
+    val groundedConstraints = List.fill(buffer.getInt) {
+      val id = buffer.getInt
+      val ruleId = buffer.getInt
+      val property = parseProperty(readString(buffer))
+      val groundedPredicates = List.fill(buffer.getInt)(gps(buffer.getInt))
+      val explicitCoeff = Array.fill(buffer.getInt)(buffer.getDouble)
+      val explicitConst = buffer.getDouble
+      GroundedConstraint(id, ruleId, property, groundedPredicates, explicitCoeff, explicitConst)
+    }
+
+    (groundedRules, groundedConstraints, gps.toMap)
+  }
+
+  /**
+   * Reads a cached grounding, returns None and deletes the file if it cannot be read,
+   * e.g. because it is truncated, so the files are grounded again.
+   */
+  def tryRead(file: File): Option[(List[GroundedRule], List[GroundedConstraint], Map[Int, GroundedPredicate])] = {
+    try {
+      Some(read(file))
+    } catch {
+      case e: Exception =>
+        println(s"[Warning]: could not read the cached grounding $file ($e), it is deleted and the files are grounded again.")
+        file.delete
+        None
+    }
+  }
+
+  private[this] def atom(nameAndNegation: (String, Boolean)): PredicateInRule = {
+    PredicateInRule(nameAndNegation._1, List.empty, nameAndNegation._2)
+  }
+
+  private[this] def parseProperty(s: String): PredicateProperty = {
+    s match {
+      case LessOrEqual(_) => LessOrEqual
+      case GreaterOrEqual(_) => GreaterOrEqual
+      case other => PredicateProperty.parse(other)
+    }
+  }
+
+  private[this] def writeString(out: DataOutputStream, s: String) {
+    val bytes = s.getBytes("UTF-8")
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private[this] def readString(buffer: ByteBuffer): String = {
+    val length = buffer.getInt
+    val bytes = new Array[Byte](length)
+    buffer.get(bytes)
+    new String(bytes, "UTF-8")
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.HashMap
+
+import com.signalcollect.admm.Wolf
+import com.signalcollect.admm.optimizers.OptimizableFunction
+import com.signalcollect.admm.utils.Timer
+import com.signalcollect.psl.model.GroundedConstraint
+import com.signalcollect.psl.model.GroundedPredicate
+import com.signalcollect.psl.model.GroundedRule
+import com.signalcollect.psl.model.Symmetric
+import com.signalcollect.psl.parser.Fact
+import com.signalcollect.psl.parser.ParsedPslFile
+
+import akka.actor.ActorRef
+
+/**
+ * Inference on a PSL problem whose facts change over time.
+ *
+ * The problem is grounded once without the truth values of the facts, so the grounded predicates,
+ * grounded rules and grounded constraints (and their ids) only depend on the rules, the predicates
+ * and the individuals. The truth values are applied on top of this grounding.
+ * A batch of added, changed or removed facts only updates the affected grounded predicates and
+ * recreates the functions of the grounded rules and constraints that contain them. The new problem
+ * is then solved starting from the previous consensus values and multipliers.
+ *
+ * If a batch mentions an individual (or a class of an individual) that is not in the grounding yet,
+ * or removes the last fact about one, the problem is grounded again and the previous solution
+ * carries over by grounded predicate identity.
+ *
+ * Note: the grounding is done without pushing the trivial constraints into the truth values
+ * of the grounded predicates, because those truth values depend on the facts.
+ * For the same reason it keeps the grounded rules and constraints whose grounded predicates are all
+ * facts at the moment, so it takes more memory than the grounding of a single inference. They have
+ * no function until a batch makes one of their grounded predicates unknown again.
+ */
+class IncrementalInferencer(
+  initialPslData: ParsedPslFile,
+  config: InferencerConfig = InferencerConfig(),
+  nodeActors: Option[Array[ActorRef]] = None) {
+
+  private[this] val predicatesByName = initialPslData.predicates.map(p => (p.name, p)).toMap
+
+  // Current facts, by predicate name and individuals.
+  private[this] var facts: Map[(String, List[String]), Fact] =
+    initialPslData.facts.map(f => (factKey(f), f)).toMap
+
+  // The grounding without truth values.
+  private[this] var structuralGps: Map[(String, List[String]), GroundedPredicate] = Map.empty
+  private[this] var structuralRules: Array[GroundedRule] = Array.empty
+  private[this] var structuralConstraints: Array[GroundedConstraint] = Array.empty
+  private[this] val rulesByGp = new HashMap[Int, ArrayBuffer[Int]]
+  private[this] val constraintsByGp = new HashMap[Int, ArrayBuffer[Int]]
+
+  // Which individuals (by name and class id) the grounding was created for, and how often the facts mention them.
+  private[this] var groundedIndividuals: Set[(String, String)] = Set.empty
+  private[this] var individualsOutsideOfFacts: Set[(String, String)] = Set.empty
+  private[this] val factMentions = new HashMap[(String, String), Int]
+
+  // The grounding with truth values.
+  private[this] var idToGpMap: Map[Int, GroundedPredicate] = Map.empty
+  private[this] val groundedRules = new HashMap[Int, GroundedRule]
+  private[this] val groundedConstraints = new HashMap[Int, GroundedConstraint]
+  private[this] val functions = new HashMap[Int, OptimizableFunction]
+  private[this] val bounds = new HashMap[Int, (Double, Double)]
+
+  // The previous solution.
+  private[this] var consensus: Map[Int, Double] = Map.empty
+  private[this] var multipliers: Map[Int, Array[Double]] = Map.empty
+  private[this] var lastResult: Option[InferenceResult] = None
+
+  /**
+   * Returns the result of the last inference, running it first if there was none yet.
+   */
+  def infer(): InferenceResult = {
+    lastResult.getOrElse {
+      val (_, groundingTime) = Timer.time { ground() }
+      solve(groundingTime)
+    }
+  }
+
+  /**
+   * Applies a batch of fact changes and solves the updated problem.
+   * Added facts replace the facts with the same predicate and individuals, removed facts are matched the same way.
+   * If there was no inference yet, the changes are applied to the initial facts and the problem is grounded
+   * and solved once, like in infer().
+   */
+  def update(added: Iterable[Fact] = Iterable.empty, removed: Iterable[Fact] = Iterable.empty): InferenceResult = {
+    if (lastResult.isEmpty) {
+      changeFacts(added, removed)
+      return infer()
+    }
+    val (_, groundingTime) = Timer.time {
+      val (changedKeys, regroundingNeeded) = changeFacts(added, removed)
+      if (regroundingNeeded) {
+        println("The fact changes affect the individuals, grounding the problem again.")
+        val warmStart = lastResult.get.copy(multipliers = functionKeyMultipliers).warmStart
+        ground()
+        consensus = warmStart.initialConsensus(idToGpMap)
+        multipliers = warmStart.initialMultipliers(groundedRules.values, groundedConstraints.values)
+      } else {
+        patch(changedKeys)
+      }
+    }
+    solve(groundingTime)
+  }
+
+  /**
+   * Applies the fact changes, returns the keys of the changed facts and whether the problem has to be grounded again.
+   */
+  private[this] def changeFacts(added: Iterable[Fact], removed: Iterable[Fact]): (List[(String, List[String])], Boolean) = {
+    var changedKeys = List.empty[(String, List[String])]
+    var regroundingNeeded = false
+    for (fact <- removed; previous <- facts.get(factKey(fact))) {
+      facts -= factKey(fact)
+      regroundingNeeded |= removeMentions(previous)
+      changedKeys ::= factKey(fact)
+    }
+    for (fact <- added) {
+      facts.get(factKey(fact)).foreach(removeMentions(_))
+      facts += factKey(fact) -> fact
+      regroundingNeeded |= addMentions(fact)
+      changedKeys ::= factKey(fact)
+    }
+    (changedKeys, regroundingNeeded)
+  }
+
+  private[this] def factKey(fact: Fact): (String, List[String]) = {
+    (fact.name, fact.groundingsAsSingleIndividuals.map(_.value))
+  }
+
+  private[this] def individualClasses(fact: Fact): List[(String, String)] = {
+    predicatesByName.get(fact.name) match {
+      case Some(predicate) =>
+        fact.copy(predicate = Some(predicate)).indsWithClasses.toList.flatMap { i =>
+          (i.value, "_") :: i.classTypes.toList.map(c => (i.value, c.id))
+        }
+      case None =>
+        List.empty
+    }
+  }
+
+  // Returns true if the fact mentions an individual that was not grounded.
+  private[this] def addMentions(fact: Fact): Boolean = {
+    var unknown = false
+    for (mention <- individualClasses(fact)) {
+      factMentions(mention) = factMentions.getOrElse(mention, 0) + 1
+      unknown |= !groundedIndividuals.contains(mention)
+    }
+    unknown
+  }
+
+  // Returns true if the fact was the last mention of a grounded individual.
+  private[this] def removeMentions(fact: Fact): Boolean = {
+    var lastMention = false
+    for (mention <- individualClasses(fact)) {
+      val mentions = factMentions.getOrElse(mention, 0) - 1
+      if (mentions <= 0) {
+        factMentions -= mention
+        lastMention |= !individualsOutsideOfFacts.contains(mention)
+      } else {
+        factMentions(mention) = mentions
+      }
+    }
+    lastMention
+  }
+
+  /**
+   * Grounds the problem without truth values and applies the current facts.
+   */
+  private[this] def ground() {
+    val pslData = initialPslData.copy(facts = facts.values.toList)
+    val factsWithoutTruthValues = pslData.facts.map(_.copy(truthValue = None, minTruthValue = None, maxTruthValue = None))
+    val (rules, constraints, gps) = Grounding.ground(pslData.copy(facts = factsWithoutTruthValues),
+      config.copy(pushBoundsInNodes = false))
+    println(s"Grounding completed: ${rules.size} grounded rules, ${constraints.size} constraints and ${gps.size} grounded predicates.")
+
+    structuralGps = gps.values.map(gp => ((gp.definition.name, gp.groundings.map(_.value)), gp)).toMap
+    structuralRules = rules.toArray
+    structuralConstraints = constraints.toArray
+    rulesByGp.clear
+    constraintsByGp.clear
+    for (i <- 0 until structuralRules.length; gpId <- structuralRules(i).allGroundedPredicates.map(_.id).distinct) {
+      rulesByGp.getOrElseUpdate(gpId, new ArrayBuffer[Int]) += i
+    }
+    for (i <- 0 until structuralConstraints.length; gpId <- structuralConstraints(i).allGroundedPredicates.map(_.id).distinct) {
+      constraintsByGp.getOrElseUpdate(gpId, new ArrayBuffer[Int]) += i
+    }
+
+    val fromFacts = pslData.factsWithPredicates.flatMap(individualClasses(_)).toSet
+    groundedIndividuals = pslData.individuals.flatMap(i => (i.value, "_") :: i.classTypes.toList.map(c => (i.value, c.id))).toSet
+    individualsOutsideOfFacts = groundedIndividuals -- fromFacts
+    factMentions.clear
+    facts.values.foreach(addMentions(_))
+
+    idToGpMap = gps.map { case (id, gp) => (id, withTruthValue(gp)) }
+    bounds.clear
+    idToGpMap.values.foreach(updateBounds(_))
+    groundedRules.clear
+    groundedConstraints.clear
+    functions.clear
+    for (i <- 0 until structuralRules.length) updateRule(i)
+    for (i <- 0 until structuralConstraints.length) updateConstraint(i)
+    consensus = Map.empty
+    multipliers = Map.empty
+  }
+
+  /**
+   * Updates the grounded predicates with the changed keys and recreates the functions that contain them.
+   */
+  private[this] def patch(changedKeys: List[(String, List[String])]) {
+    val changedGps = changedKeys.flatMap(structuralGp).distinct.flatMap { structural =>
+      val updated = withTruthValue(structural)
+      if (updated != idToGpMap(structural.id)) Some(updated) else None
+    }
+    idToGpMap ++= changedGps.map(gp => (gp.id, gp))
+    changedGps.foreach(updateBounds(_))
+    val affectedRules = changedGps.flatMap(gp => rulesByGp.getOrElse(gp.id, Nil)).distinct
+    val affectedConstraints = changedGps.flatMap(gp => constraintsByGp.getOrElse(gp.id, Nil)).distinct
+    affectedRules.foreach(updateRule(_))
+    affectedConstraints.foreach(updateConstraint(_))
+    println(s"Updated ${changedGps.size} grounded predicates, ${affectedRules.size} grounded rules and ${affectedConstraints.size} constraints.")
+  }
+
+  // Symmetric predicates are only grounded in one order, the fact may be in the other one.
+  private[this] def structuralGp(key: (String, List[String])): Option[GroundedPredicate] = {
+    structuralGps.get(key).orElse {
+      if (key._2.length == 2) {
+        structuralGps.get((key._1, key._2.reverse)).filter(_.definition.properties.contains(Symmetric))
+      } else { None }
+    }
+  }
+
+  private[this] def withTruthValue(gp: GroundedPredicate): GroundedPredicate = {
+    val key = (gp.definition.name, gp.groundings.map(_.value))
+    val fact = facts.get(key).orElse {
+      if (key._2.length == 2 && gp.definition.properties.contains(Symmetric)) {
+        facts.get((key._1, key._2.reverse))
+      } else { None }
+    }
+    fact match {
+      case Some(f) =>
+        GroundedPredicate(gp.id, gp.definition, gp.groundings, f.truthValue, f.minTruthValue.getOrElse(0.0), f.maxTruthValue.getOrElse(1.0))
+      case None =>
+        gp
+    }
+  }
+
+  private[this] def updateBounds(gp: GroundedPredicate) {
+    if (config.pushBoundsInNodes && config.isBounded && (gp.lowerBound != 0.0 || gp.upperBound != 1.0)) {
+      bounds(gp.id) = (gp.lowerBound, gp.upperBound)
+    } else {
+      bounds -= gp.id
+    }
+  }
+
+  private[this] def updateRule(i: Int) {
+    val structural = structuralRules(i)
+    val rule = GroundedRule(structural.id, structural.definition,
+      structural.body.map(gp => idToGpMap(gp.id)), structural.head.map(gp => idToGpMap(gp.id)))
+    groundedRules -= rule.id
+    if (rule.unboundGroundedPredicates.size > 0) {
+      groundedRules(rule.id) = rule
+    }
+    updateFunction(rule.id, rule.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
+  }
+
+  private[this] def updateConstraint(i: Int) {
+    val structural = structuralConstraints(i)
+    val constraint = structural.copy(groundedPredicates = structural.groundedPredicates.map(gp => idToGpMap(gp.id)))
+    groundedConstraints -= constraint.id
+    if (constraint.unboundGroundedPredicates.size > 0) {
+      groundedConstraints(constraint.id) = constraint
+    }
+    updateFunction(constraint.id, constraint.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
+  }
+
+  // The previous multipliers are only kept if the function still has the same variables.
+  private[this] def updateFunction(id: Int, function: Option[OptimizableFunction]) {
+    val previous = functions.remove(id)
+    function match {
+      case Some(f) =>
+        functions(id) = f
+        if (previous.isEmpty || !previous.get.idToIndexMappings.sameElements(f.idToIndexMappings)) {
+          multipliers -= id
+        }
+      case None =>
+        multipliers -= id
+    }
+  }
+
+  /**
+   * The functions are reused across inferences and keep the local variables, multipliers and step size
+   * of the previous run. They are reset to a cold start, the solver then warm starts them from the
+   * previous consensus values and the multipliers that are still valid.
+   */
+  private[this] def reset(f: OptimizableFunction) {
+    val zeros = new Array[Double](f.idToIndexMappings.length)
+    f.warmStart(zeros, Some(zeros))
+    if (f.getStepSize != config.stepSize) f.setStepSize(config.stepSize)
+  }
+
+  private[this] def functionKeyMultipliers: Map[FunctionKey, Array[Double]] = {
+    multipliers.flatMap {
+      case (id, y) =>
+        groundedRules.get(id).map(r => (WarmStart.key(r), y)).orElse(
+          groundedConstraints.get(id).map(c => (WarmStart.key(c), y)))
+    }
+  }
+
+  private[this] def solve(groundingTime: Long): InferenceResult = {
+    val allFunctions = functions.values.toList
+    allFunctions.foreach(reset(_))
+    val (constraints, rules) = allFunctions.partition(f => groundedConstraints.contains(f.id.get))
+    println(s"Problem converted to consensus optimization with ${rules.size} functions,  ${constraints.size} constraints and ${bounds.size} bounds.")
+    val solution = Wolf.solveProblem(
+      allFunctions,
+      nodeActors,
+      config.getWolfConfig.copy(collectMultipliers = true),
+      bounds.toMap,
+      consensus,
+      multipliers)
+    consensus = solution.results.toScalaMap
+    multipliers = solution.multipliers.getOrElse(Map.empty)
+    val objectiveFunctionVal = if (config.computeObjectiveValueOfSolution) {
+      Some(allFunctions.foldLeft(0.0) { case (sum, f) => sum + f.evaluateAt(solution.results) })
+    } else { None }
+    val result = InferenceResult(solution, idToGpMap, objectiveFunctionVal,
+      groundingTime = Some(groundingTime), parsingTime = Some(0),
+      numGroundedRules = Some(groundedRules.size),
+      numGroundedConstraints = Some(groundedConstraints.size),
+      numBoundedVars = Some(bounds.size),
+      numFunctions = Some(rules.size),
+      numConstraints = Some(constraints.size))
+    lastResult = Some(result)
+    result
+  }
+
+}
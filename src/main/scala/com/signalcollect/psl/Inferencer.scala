@@ -36,6 +36,8 @@ import com.signalcollect.psl.model.GroundedPredicate
 import com.signalcollect.psl.model.GroundedRule
 import com.signalcollect.psl.model.GroundedConstraint
 import java.io.File
+import java.io.StringWriter
+import java.io.Writer
 import akka.actor.ActorRef
 import com.signalcollect.psl.model.GroundedPredicate
 
@@ -56,16 +58,41 @@ case class InferenceResult(
   numGroundedConstraints: Option[Int] = None,
   numBoundedVars: Option[Int] = None,
   numFunctions: Option[Int] = None,
-  numConstraints: Option[Int] = None) {
+  numConstraints: Option[Int] = None,
+  multipliers: Map[FunctionKey, Array[Double]] = Map.empty) { // Only retained if configured.
+
+  // Index of the grounded predicates by predicate name and individual names, built on the first query.
+  lazy val gpIndex: Map[(String, List[String]), GroundedPredicate] = {
+    idToGpMap.values.map(gp => ((gp.definition.name, gp.groundings.map(_.name)), gp)).toMap
+  }
+
+  lazy val gpsByPredicate: Map[String, List[GroundedPredicate]] = {
+    idToGpMap.values.toList.groupBy(_.definition.name)
+  }
 
   def getGp(predicate: String, individuals: String*): Option[GroundedPredicate] = {
-    val individualList = individuals.toList
-    val foundOption = idToGpMap.find {
-      case (id, gp) =>
-        gp.definition.name == predicate &&
-          gp.groundings.map(_.name) == individualList
+    gpIndex.get((predicate, individuals.toList))
+  }
+
+  def groundedPredicates(predicate: String): List[GroundedPredicate] = {
+    gpsByPredicate.getOrElse(predicate, List.empty)
+  }
+
+  /**
+   * The grounded predicates of a predicate with their truth values, the inferred ones or the ones of the facts.
+   */
+  def truthValues(predicate: String): Iterator[(GroundedPredicate, Double)] = {
+    groundedPredicates(predicate).iterator.map(gp => (gp, gp.truthValue.getOrElse(solution.results.get(gp.id))))
+  }
+
+  /**
+   * The solution of this inference, to warm start the inference on a similar problem.
+   */
+  def warmStart: WarmStart = {
+    val truthValues = solution.results.toScalaMap.flatMap {
+      case (id, truthValue) => idToGpMap.get(id).map(gp => (WarmStart.key(gp), truthValue))
     }
-    foundOption.map(_._2)
+    WarmStart(truthValues, multipliers)
   }
 
   def truthValue(predicate: String, individuals: String*): Option[Double] = {
@@ -75,19 +102,20 @@ case class InferenceResult(
   }
 
   override def toString() = {
-    var s = solution.stats.toString
-    s += printSelectedResults(printFacts = true)
+    val s = new StringWriter
+    s.write(solution.stats.toString)
+    writeSelectedResults(s, printFacts = true)
     objectiveFun match {
       case Some(x) =>
-        s += s"\nObjective function value: $x"
+        s.write(s"\nObjective function value: $x")
       case None =>
     }
     groundingTime match {
       case Some(x) =>
-        s += s"\nGrounding time: $groundingTime"
+        s.write(s"\nGrounding time: $groundingTime")
       case None =>
     }
-    s
+    s.toString
   }
 
   def nicerTruthValue(t: Double): Double = {
@@ -114,10 +142,10 @@ case class InferenceResult(
         if (printOutZeros || truthValue > 0) {
           val gp = idToGpMap(id)
           if (predicateNames.isEmpty || predicateNames.contains(gp.definition.name)) {
-            Some(Map(gp -> truthValue))
+            Some((gp, truthValue))
           } else { None }
         } else { None }
-    }.flatten.toList
+    }.toList
   }
 
   def getSelectedResultsAndFacts(predicateNames: List[String] = List.empty, printOutZeros: Boolean = false) = {
@@ -126,10 +154,10 @@ case class InferenceResult(
         if (predicateNames.isEmpty || predicateNames.contains(gp.definition.name)) {
           val truthValue = gp.truthValue.getOrElse(solution.results.get(id))
           if (printOutZeros || truthValue > 0) {
-            Some(Map(gp -> truthValue))
+            Some((gp, truthValue))
           } else { None }
         } else { None }
-    }.flatten.toList
+    }.toList
   }
 
   def getSortedSelectedResults(predicateNames: List[String] = List.empty, printFacts: Boolean = true, sortById: Boolean = false, printOutZeros: Boolean = false) = {
@@ -139,10 +167,8 @@ case class InferenceResult(
       getSelectedResultsOnly(predicateNames, printOutZeros)
     }
     if (!sortById) {
-      listGpToTruthValue.sortBy(
-        f =>
-          // (predicate name, groundings in alphabetical order)
-          (f._1.definition.name, f._1.groundings.toString))
+      // (predicate name, groundings in alphabetical order), the keys are computed once per grounded predicate.
+      listGpToTruthValue.map(f => ((f._1.definition.name, f._1.groundings.toString), f)).sortBy(_._1).map(_._2)
     } else {
       listGpToTruthValue.sortBy(f => f._1.id)
     }
@@ -150,21 +176,29 @@ case class InferenceResult(
 
   def printSelectedResults(predicateNames: List[String] = List.empty, printFacts: Boolean = true, sortById: Boolean = false, printOutZeros: Boolean = false,
     outputType: String = "inference") = {
-    var s = ""
+    val s = new StringWriter
+    writeSelectedResults(s, predicateNames, printFacts, sortById, printOutZeros, outputType)
+    s.toString
+  }
+
+  /**
+   * Same output as printSelectedResults, written to the writer one grounded predicate at a time.
+   */
+  def writeSelectedResults(writer: Writer, predicateNames: List[String] = List.empty, printFacts: Boolean = true, sortById: Boolean = false, printOutZeros: Boolean = false,
+    outputType: String = "inference") {
     val sortedListGpToTruthValue = getSortedSelectedResults(predicateNames, printFacts, sortById, printOutZeros)
     sortedListGpToTruthValue.foreach {
       case (gp, truthValue) =>
         if (outputType == "shortInference") {
-          s += s"\n$gp -> ${nicerTruthValue(truthValue)}"
+          writer.write(s"\n$gp -> ${nicerTruthValue(truthValue)}")
         } else if (outputType == "onlyTrueFacts" && truthValue > 0.5) {
-          s += s"""${gp.definition.name}${gp.groundings.mkString("(", ",", ")")} """
+          writer.write(s"""${gp.definition.name}${gp.groundings.mkString("(", ",", ")")} """)
         } else if (outputType == "inference") {
-          s += "\n" + s"""${gp.definition.name}${gp.groundings.mkString("(", ",", ")")}= ${nicerTruthValue(truthValue)}"""
+          writer.write("\n" + s"""${gp.definition.name}${gp.groundings.mkString("(", ",", ")")}= ${nicerTruthValue(truthValue)}""")
         } else {
           // Do nothing.
         }
     }
-    s
   }
 }
 
@@ -190,10 +224,23 @@ case class InferencerConfig(
   serializeMessages: Boolean = false,
   eagerSignalCollectConvergenceDetection: Boolean = true,
   heartbeatIntervalInMs: Int = 0,
-  verbose: Boolean = false) {
+  verbose: Boolean = false,
+  sharedMemoryBackend: Boolean = false, // Solve on flat arrays in this JVM instead of a Signal/Collect graph.
+  adaptiveStepSize: Boolean = false, // Balance primal and dual residuals by adapting the step size at every convergence check.
+  overRelaxation: Double = 1.0, // Over-relaxation parameter in (0, 2), values around 1.6 often converge faster.
+  retainMultipliers: Boolean = false, // Keep the multipliers in the result, so they can be used for warm starting.
+  joinBasedGrounding: Boolean = false, // Bind rule variables atom by atom and skip the bindings that known facts trivially satisfy.
+  streamingGrounding: Boolean = false, // Create the grounded rules and their functions while the graph is loaded, without keeping them.
+  factDrivenConstraintGrounding: Boolean = false, // Only ground the functional and symmetric constraints of the predicate groundings in rules or facts.
+  groundingCacheDirectory: Option[String] = None, // Reuse the grounding of the same input files from this directory, if it was cached.
+  subproblemBlockSize: Int = 1, // Number of functions per subproblem vertex, larger blocks mean fewer vertices and messages.
+  graphPartitions: Option[Int] = None, // Partition the graph into this many parts to keep signals on the same worker, ideally a multiple of the number of workers.
+  bulkGraphLoading: Boolean = false, // Create the ADMM vertices with their edges in parallel on the workers.
+  presolve: Boolean = false, // Fix variables, tighten bounds and remove or merge redundant functions before the graph is built.
+  parallelism: Option[Int] = None) { // Number of threads of the shared-memory backend, all the cores by default.
 
   override def toString: String =
-    s"asynchronous: $asynchronous, lazyThreshold: $lazyThreshold, breezeOptimizer: $breezeOptimizer, globalConvergenceDetection: $globalConvergenceDetection, absoluteEpsilon: $absoluteEpsilon, relativeEpsilon: $relativeEpsilon, computeObjectiveValueOfSolution: $computeObjectiveValueOfSolution, objectiveLoggingEnabled: $objectiveLoggingEnabled, maxIterations: $maxIterations, stepSize: $stepSize, tolerance: $tolerance, isBounded: $isBounded, removeSymmetricConstraints: $removeSymmetricConstraints, parallelizeGrounding: $parallelizeGrounding, pushBoundsInNodes: $pushBoundsInNodes, optimizedFunctionCreation: $optimizedFunctionCreation, verbose: $verbose"
+    s"asynchronous: $asynchronous, lazyThreshold: $lazyThreshold, breezeOptimizer: $breezeOptimizer, globalConvergenceDetection: $globalConvergenceDetection, absoluteEpsilon: $absoluteEpsilon, relativeEpsilon: $relativeEpsilon, computeObjectiveValueOfSolution: $computeObjectiveValueOfSolution, objectiveLoggingEnabled: $objectiveLoggingEnabled, maxIterations: $maxIterations, stepSize: $stepSize, tolerance: $tolerance, isBounded: $isBounded, removeSymmetricConstraints: $removeSymmetricConstraints, parallelizeGrounding: $parallelizeGrounding, pushBoundsInNodes: $pushBoundsInNodes, optimizedFunctionCreation: $optimizedFunctionCreation, verbose: $verbose, sharedMemoryBackend: $sharedMemoryBackend, adaptiveStepSize: $adaptiveStepSize, overRelaxation: $overRelaxation, retainMultipliers: $retainMultipliers, joinBasedGrounding: $joinBasedGrounding, streamingGrounding: $streamingGrounding, factDrivenConstraintGrounding: $factDrivenConstraintGrounding, groundingCacheDirectory: $groundingCacheDirectory, subproblemBlockSize: $subproblemBlockSize, graphPartitions: $graphPartitions, bulkGraphLoading: $bulkGraphLoading, presolve: $presolve, parallelism: $parallelism"
 
   def getWolfConfig = {
     WolfConfig(
@@ -209,7 +256,15 @@ case class InferencerConfig(
       isBounded = isBounded,
       serializeMessages = serializeMessages,
       eagerSignalCollectConvergenceDetection = eagerSignalCollectConvergenceDetection,
-      heartbeatIntervalInMs = heartbeatIntervalInMs)
+      heartbeatIntervalInMs = heartbeatIntervalInMs,
+      sharedMemoryBackend = sharedMemoryBackend,
+      adaptiveStepSize = adaptiveStepSize,
+      overRelaxation = overRelaxation,
+      collectMultipliers = retainMultipliers,
+      parallelism = parallelism,
+      subproblemBlockSize = subproblemBlockSize,
+      graphPartitions = graphPartitions,
+      bulkGraphLoading = bulkGraphLoading)
   }
 }
 
@@ -221,7 +276,11 @@ object Inferencer {
   def runInferenceFromFiles(
     pslFiles: List[File],
     nodeActors: Option[Array[ActorRef]] = None,
-    config: InferencerConfig = InferencerConfig()): InferenceResult = {
+    config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None): InferenceResult = {
+    if (config.groundingCacheDirectory.isDefined && !config.streamingGrounding) {
+      return runInferenceWithGroundingCache(pslFiles, nodeActors, config, warmStart)
+    }
     val (pslData, parsingTime) = Timer.time {
       if (config.parallelizeParsing) {
         PslParser.parse(pslFiles)
@@ -229,7 +288,7 @@ object Inferencer {
         PslParser.parseNonParallel(pslFiles)
       }
     }
-    runInference(pslData, parsingTime, nodeActors, config)
+    runInference(pslData, parsingTime, nodeActors, config, warmStart)
   }
 
   /**
@@ -238,7 +297,11 @@ object Inferencer {
   def runInferenceFromFile(
     pslFile: File,
     nodeActors: Option[Array[ActorRef]] = None,
-    config: InferencerConfig = InferencerConfig()): InferenceResult = {
+    config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None): InferenceResult = {
+    if (config.groundingCacheDirectory.isDefined && !config.streamingGrounding) {
+      return runInferenceWithGroundingCache(List(pslFile), nodeActors, config, warmStart)
+    }
     val (pslData, parsingTime) = Timer.time {
       if (config.parallelizeParsing) {
         PslParser.parseFileLineByLine(pslFile).toParsedPslFile()
@@ -246,7 +309,48 @@ object Inferencer {
         PslParser.parse(pslFile)
       }
     }
-    runInference(pslData, parsingTime, nodeActors, config)
+    runInference(pslData, parsingTime, nodeActors, config, warmStart)
+  }
+
+  /**
+   * Loads the grounding from the cache directory if the same files were already grounded with the same settings,
+   * otherwise parses and grounds the files and caches the grounding.
+   * The cache is keyed by the contents of the files, so changed files are grounded again.
+   */
+  def runInferenceWithGroundingCache(
+    pslFiles: List[File],
+    nodeActors: Option[Array[ActorRef]] = None,
+    config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None): InferenceResult = {
+    val directory = new File(config.groundingCacheDirectory.get)
+    directory.mkdirs
+    val cacheFile = GroundingCache.cacheFile(directory, pslFiles, config)
+    val (cached, loadingTime) = Timer.time {
+      if (cacheFile.exists) GroundingCache.tryRead(cacheFile) else None
+    }
+    cached match {
+      case Some((groundedRules, groundedConstraints, idToGpMap)) =>
+        println(s"Loaded the cached grounding $cacheFile in $loadingTime ms: ${groundedRules.size} grounded rules, ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates.")
+        solveInferenceProblem(groundedRules, groundedConstraints, idToGpMap, loadingTime, 0, nodeActors, config, warmStart)
+      case None =>
+        val (pslData, parsingTime) = Timer.time {
+          if (config.parallelizeParsing) {
+            PslParser.parse(pslFiles)
+          } else {
+            PslParser.parseNonParallel(pslFiles)
+          }
+        }
+        val ((groundedRules, groundedConstraints, idToGpMap), groundingTime) = Timer.time {
+          printIndividuals(pslData)
+          Grounding.ground(pslData, config)
+        }
+        println(s"Grounding completed in $groundingTime ms: ${groundedRules.size} grounded rules, ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates.")
+        val (_, cachingTime) = Timer.time {
+          GroundingCache.write(cacheFile, groundedRules, groundedConstraints, idToGpMap)
+        }
+        println(s"Cached the grounding in $cacheFile in $cachingTime ms.")
+        solveInferenceProblem(groundedRules, groundedConstraints, idToGpMap, groundingTime, parsingTime, nodeActors, config, warmStart)
+    }
   }
 
   /**
@@ -255,9 +359,10 @@ object Inferencer {
   def runInferenceFromString(
     pslFile: String,
     nodeActors: Option[Array[ActorRef]] = None,
-    config: InferencerConfig = InferencerConfig()): InferenceResult = {
+    config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None): InferenceResult = {
     val (pslData, parsingTime) = Timer.time { PslParser.parse(pslFile) }
-    runInference(pslData, parsingTime, nodeActors, config)
+    runInference(pslData, parsingTime, nodeActors, config, warmStart)
   }
 
   /**
@@ -269,55 +374,193 @@ object Inferencer {
     pslData: ParsedPslFile,
     parsingTime: Long,
     nodeActors: Option[Array[ActorRef]] = None,
-    config: InferencerConfig = InferencerConfig()): InferenceResult = {
+    config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None): InferenceResult = {
+    if (config.streamingGrounding) {
+      return runStreamingInference(pslData, parsingTime, nodeActors, config, warmStart)
+    }
     // Ground the rules with the individuals.
     val ((groundedRules, groundedConstraints, idToGpMap), groundingTime) = Timer.time {
-      var individualsString = s"Running inferences for ${pslData.individuals.size} individuals ..."
-      if (pslData.individuals.size <= 5) {
-        individualsString += pslData.individuals.map(i => s"${i.value}: ${i.classTypes}")
-      } else {
-        individualsString += "first 5 results: "
-        individualsString += pslData.individuals.slice(0, 5).map(i => s"${i.value}: ${i.classTypes}")
-      }
-      println(individualsString)
+      printIndividuals(pslData)
       Grounding.ground(pslData, config)
     }
     // groundedRules.map(println(_))
     // groundedConstraints.map(println(_))
     println(s"Grounding completed in $groundingTime ms: ${groundedRules.size} grounded rules, ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates.")
-    solveInferenceProblem(groundedRules, groundedConstraints, idToGpMap, groundingTime, parsingTime, nodeActors, config)
+    solveInferenceProblem(groundedRules, groundedConstraints, idToGpMap, groundingTime, parsingTime, nodeActors, config, warmStart)
   }
 
-  def recreateFunctions(groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint], idToGpMap: Map[Int, GroundedPredicate], config: InferencerConfig = InferencerConfig()): (Iterable[OptimizableFunction], Iterable[OptimizableFunction], Map[Int, (Double, Double)]) = {
-    val functions = groundedRules.flatMap(_.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
-    val constraints = groundedConstraints.flatMap(_.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
-    val boundsForConsensusVariables: Map[Int, (Double, Double)] = if (config.pushBoundsInNodes && config.isBounded) {
+  def printIndividuals(pslData: ParsedPslFile) {
+    var individualsString = s"Running inferences for ${pslData.individuals.size} individuals ..."
+    if (pslData.individuals.size <= 5) {
+      individualsString += pslData.individuals.map(i => s"${i.value}: ${i.classTypes}")
+    } else {
+      individualsString += "first 5 results: "
+      individualsString += pslData.individuals.slice(0, 5).map(i => s"${i.value}: ${i.classTypes}")
+    }
+    println(individualsString)
+  }
+
+  // Number of grounded rules that are converted to functions at once in streaming mode.
+  val streamingChunkSize = 10000
+
+  /**
+   * Runs inference without materializing the grounded rules and their functions:
+   * the grounded rules are created lazily and converted to functions chunk by chunk,
+   * while Wolf loads them into the graph. Only the grounded predicates and the constraints are kept.
+   * The objective value of the solution cannot be computed in this mode.
+   */
+  def runStreamingInference(
+    pslData: ParsedPslFile,
+    parsingTime: Long,
+    nodeActors: Option[Array[ActorRef]] = None,
+    config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None): InferenceResult = {
+    if (config.computeObjectiveValueOfSolution) {
+      println("The objective value cannot be computed with streaming grounding, the setting is being ignored.")
+    }
+    if (config.presolve) {
+      println("Presolving requires all the grounded rules in memory, it cannot be combined with streaming grounding, the setting is being ignored.")
+    }
+    // Blocks, partitioning and bulk loading materialize all the functions before the graph is built.
+    val wolfConfig = if (config.subproblemBlockSize > 1 || config.graphPartitions.isDefined || config.bulkGraphLoading) {
+      println("Blocks of subproblems, graph partitioning and bulk loading require all the functions in memory, they cannot be combined with streaming grounding, the settings are being ignored.")
+      config.getWolfConfig.copy(subproblemBlockSize = 1, graphPartitions = None, bulkGraphLoading = false)
+    } else {
+      config.getWolfConfig
+    }
+    val ((groundedRules, groundedConstraints, idToGpMap), groundingTime) = Timer.time {
+      printIndividuals(pslData)
+      Grounding.groundStreaming(pslData, config)
+    }
+    println(s"Grounding of the constraints completed in $groundingTime ms: ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates, the grounded rules are created while the graph is loaded.")
+
+    val (constraints, constraintCreationTime) = Timer.time {
+      groundedConstraints.flatMap(_.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
+    }
+    val bounds = boundsForConsensusVariables(idToGpMap, config)
+    val initialConsensus = warmStart.map(_.initialConsensus(idToGpMap)).getOrElse(Map.empty[Int, Double])
+    // The multipliers of the rules are set while their functions are created, they are not known by id in advance.
+    val initialMultipliers = warmStart.map(_.initialMultipliers(List.empty, groundedConstraints)).getOrElse(Map.empty[Int, Array[Double]])
+
+    // Only the keys of the rules are retained, in case the multipliers have to be returned.
+    val ruleKeys = scala.collection.mutable.Map.empty[Int, FunctionKey]
+    var numGroundedRules = 0
+    var numFunctions = 0
+    def createFunction(r: GroundedRule): Option[OptimizableFunction] = {
+      val function = r.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation)
+      for (w <- warmStart; f <- function; m <- w.multipliers.get(WarmStart.key(r)) if m.length == f.idToIndexMappings.length) {
+        f.setY(m)
+      }
+      function
+    }
+    val ruleFunctions = groundedRules.grouped(streamingChunkSize).flatMap { chunk =>
+      if (config.retainMultipliers) {
+        chunk.foreach(r => ruleKeys.put(r.id, WarmStart.key(r)))
+      }
+      val functions = if (config.parallelizeGrounding) {
+        chunk.par.flatMap(r => createFunction(r)).seq
+      } else {
+        chunk.flatMap(r => createFunction(r))
+      }
+      numGroundedRules += chunk.size
+      numFunctions += functions.size
+      functions
+    }
+
+    val solution = Wolf.solveProblem(
+      constraints.iterator ++ ruleFunctions,
+      nodeActors,
+      wolfConfig,
+      bounds,
+      initialConsensus,
+      initialMultipliers)
+    println(s"Problem converted to consensus optimization with $numFunctions functions,  ${constraints.size} constraints and ${bounds.size} bounds.")
+
+    val multipliers: Map[FunctionKey, Array[Double]] = solution.multipliers match {
+      case Some(m) =>
+        val ruleMultipliers = ruleKeys.flatMap { case (id, key) => m.get(id).map(y => (key, y)) }
+        val constraintMultipliers = groundedConstraints.flatMap(c => m.get(c.id).map(y => (WarmStart.key(c), y)))
+        (ruleMultipliers ++ constraintMultipliers).toMap
+      case None =>
+        Map.empty
+    }
+
+    InferenceResult(solution, idToGpMap, None,
+      groundingTime = Some(groundingTime), parsingTime = Some(parsingTime), functionCreationTime = Some(constraintCreationTime),
+      numGroundedRules = Some(numGroundedRules),
+      numGroundedConstraints = Some(groundedConstraints.size),
+      numBoundedVars = Some(bounds.size),
+      numFunctions = Some(numFunctions),
+      numConstraints = Some(constraints.size),
+      multipliers = multipliers)
+  }
+
+  def boundsForConsensusVariables(idToGpMap: Map[Int, GroundedPredicate], config: InferencerConfig): Map[Int, (Double, Double)] = {
+    if (config.pushBoundsInNodes && config.isBounded) {
       idToGpMap.filter(p => p._2.lowerBound != 0.0 || p._2.upperBound != 1.0).map {
         case (id, p) => (id, (p.lowerBound, p.upperBound))
       }
     } else {
       Map.empty
     }
+  }
+
+  def recreateFunctions(groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint], idToGpMap: Map[Int, GroundedPredicate], config: InferencerConfig = InferencerConfig()): (Iterable[OptimizableFunction], Iterable[OptimizableFunction], Map[Int, (Double, Double)]) = {
+    val functions = groundedRules.flatMap(_.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
+    val constraints = groundedConstraints.flatMap(_.createOptimizableFunction(config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation))
+    val boundsForConsensusVariables = Inferencer.boundsForConsensusVariables(idToGpMap, config)
     println(s"Problem converted to consensus optimization with ${functions.size} functions,  ${constraints.size} constraints and ${boundsForConsensusVariables.size} bounds.")
     (functions, constraints, boundsForConsensusVariables)
   }
 
   def solveInferenceProblem(groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint], idToGpMap: Map[Int, GroundedPredicate],
     groundingTime: Long, parsingTime: Long,
-    nodeActors: Option[Array[ActorRef]] = None, config: InferencerConfig = InferencerConfig()) = {
-    val ((functions, constraints, boundsForConsensusVariables), functionCreationTime) = Timer.time {
-      recreateFunctions(groundedRules, groundedConstraints, idToGpMap, config)
+    nodeActors: Option[Array[ActorRef]] = None, config: InferencerConfig = InferencerConfig(),
+    warmStart: Option[WarmStart] = None) = {
+    val ((functions, constraints, boundsForConsensusVariables, presolved), functionCreationTime) = Timer.time {
+      if (config.presolve) {
+        val p = Presolver.presolve(groundedRules, groundedConstraints, idToGpMap, config)
+        (p.functions, p.constraints, p.bounds, Some(p))
+      } else {
+        val (functions, constraints, bounds) = recreateFunctions(groundedRules, groundedConstraints, idToGpMap, config)
+        (functions, constraints, bounds, None)
+      }
+    }
+    // The multipliers of the functions that presolving changed do not match the grounded rules or constraints.
+    def isUnmodified(functionId: Int): Boolean = presolved.forall(!_.modifiedFunctionIds.contains(functionId))
+
+    val (initialConsensus, initialMultipliers) = warmStart match {
+      case Some(w) =>
+        val initialConsensus = w.initialConsensus(idToGpMap)
+        val initialMultipliers = w.initialMultipliers(groundedRules, groundedConstraints).filter(m => isUnmodified(m._1))
+        println(s"Warm starting ${initialConsensus.size} consensus variables and ${initialMultipliers.size} functions.")
+        (initialConsensus, initialMultipliers)
+      case None =>
+        (Map.empty[Int, Double], Map.empty[Int, Array[Double]])
     }
 
     val solution = Wolf.solveProblem(
       functions ++ constraints,
       nodeActors,
       config.getWolfConfig,
-      boundsForConsensusVariables)
+      boundsForConsensusVariables,
+      initialConsensus,
+      initialMultipliers)
+    presolved.foreach(_.removedVariables.foreach { case (id, value) => solution.results.put(id, value) })
+
+    val multipliers: Map[FunctionKey, Array[Double]] = solution.multipliers match {
+      case Some(m) =>
+        val ruleMultipliers = groundedRules.filter(r => isUnmodified(r.id)).flatMap(r => m.get(r.id).map(y => (WarmStart.key(r), y)))
+        val constraintMultipliers = groundedConstraints.filter(c => isUnmodified(c.id)).flatMap(c => m.get(c.id).map(y => (WarmStart.key(c), y)))
+        (ruleMultipliers ++ constraintMultipliers).toMap
+      case None =>
+        Map.empty
+    }
 
     val (objectiveFunctionVal: Option[Double], objEvaluationTime) = Timer.time {
       if (config.computeObjectiveValueOfSolution) {
-        val result = (functions ++ constraints).foldLeft(0.0) {
+        val result = (functions ++ constraints).foldLeft(presolved.map(_.objectiveOffset).getOrElse(0.0)) {
           case (sum, nextFunction) => sum + nextFunction.evaluateAt(solution.results)
         }
         Some(result)
@@ -330,6 +573,7 @@ object Inferencer {
       numGroundedConstraints = Some(groundedConstraints.size),
       numBoundedVars = Some(boundsForConsensusVariables.size),
       numFunctions = Some(functions.size),
-      numConstraints = Some(constraints.size))
+      numConstraints = Some(constraints.size),
+      multipliers = multipliers)
   }
 }
@@ -0,0 +1,358 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import com.signalcollect.psl.model.Functional
+import com.signalcollect.psl.model.GroundedPredicate
+import com.signalcollect.psl.model.Individual
+import com.signalcollect.psl.model.PartialFunctional
+import com.signalcollect.psl.model.Predicate
+import com.signalcollect.psl.model.PredicateInRule
+import com.signalcollect.psl.model.Rule
+import com.signalcollect.psl.model.Symmetric
+import com.signalcollect.psl.model.Variable
+import com.signalcollect.psl.parser.Fact
+
+/**
+ * Index of the known truth values by predicate name and individuals.
+ * The truth values that are exactly 0 or 1 are also indexed by predicate name, truth value, argument position
+ * and the individual at that position. This decides how selective an atom is during grounding and which values
+ * of a variable complete an atom to one of these facts, without looking at the other individuals.
+ */
+final class FactIndex(truthValues: Map[(String, List[String]), Double]) {
+
+  private[this] val extremeFacts = truthValues.toList.filter(t => t._2 == 0.0 || t._2 == 1.0)
+  private[this] val factsByTruthValue: Map[(String, Double), Vector[List[String]]] =
+    extremeFacts.groupBy { case ((name, _), t) => (name, t) }.map { case (key, facts) => (key, facts.map(_._1._2).toVector) }
+  private[this] val factsByArgument: Map[(String, Double, Int, String), Vector[List[String]]] =
+    extremeFacts.flatMap {
+      case ((name, individuals), t) =>
+        individuals.zipWithIndex.map { case (individual, position) => ((name, t, position, individual), individuals) }
+    }.groupBy(_._1).map { case (key, facts) => (key, facts.map(_._2).toVector) }
+
+  // Symmetric predicates are also looked up with the individuals in the other order.
+  def truthValue(predicate: Predicate, individuals: List[String]): Option[Double] = {
+    truthValues.get((predicate.name, individuals)).orElse {
+      if (individuals.length == 2 && predicate.properties.contains(Symmetric)) {
+        truthValues.get((predicate.name, individuals.reverse))
+      } else { None }
+    }
+  }
+
+  def numberOfFactsWithTruthValue(predicateName: String, truthValue: Double): Int = {
+    factsByTruthValue.get((predicateName, truthValue)).map(_.size).getOrElse(0)
+  }
+
+  /**
+   * The individuals of the facts of the predicate with this truth value, also inverted for symmetric predicates.
+   */
+  def factsWithTruthValue(predicate: Predicate, truthValue: Double): Iterator[List[String]] = {
+    val facts = factsByTruthValue.getOrElse((predicate.name, truthValue), Vector.empty)
+    if (isSymmetric(predicate)) {
+      facts.iterator ++ facts.iterator.map(_.reverse)
+    } else {
+      facts.iterator
+    }
+  }
+
+  /**
+   * Same as factsWithTruthValue, but only the facts with this individual at this argument position.
+   */
+  def factsWithArgument(predicate: Predicate, truthValue: Double, position: Int, individual: String): Iterator[List[String]] = {
+    val facts = factsByArgument.getOrElse((predicate.name, truthValue, position, individual), Vector.empty)
+    if (isSymmetric(predicate)) {
+      val inverted = factsByArgument.getOrElse((predicate.name, truthValue, 1 - position, individual), Vector.empty)
+      facts.iterator ++ inverted.iterator.map(_.reverse)
+    } else {
+      facts.iterator
+    }
+  }
+
+  def numberOfFactsWithArgument(predicate: Predicate, truthValue: Double, position: Int, individual: String): Int = {
+    val facts = factsByArgument.get((predicate.name, truthValue, position, individual)).map(_.size).getOrElse(0)
+    if (isSymmetric(predicate)) {
+      facts + factsByArgument.get((predicate.name, truthValue, 1 - position, individual)).map(_.size).getOrElse(0)
+    } else {
+      facts
+    }
+  }
+
+  private[this] def isSymmetric(predicate: Predicate) = predicate.arity == 2 && predicate.properties.contains(Symmetric)
+}
+
+object FactIndex {
+  val empty = new FactIndex(Map.empty)
+
+  def fromFacts(facts: List[Fact]): FactIndex = {
+    new FactIndex(facts.flatMap { fact =>
+      fact.truthValue.map(t => ((fact.name, fact.groundingsAsSingleIndividuals.map(_.value)), t))
+    }.toMap)
+  }
+
+  def fromGroundedPredicates(groundedPredicates: Iterator[GroundedPredicate]): FactIndex = {
+    new FactIndex(groundedPredicates.flatMap { gp =>
+      gp.truthValue.map(t => ((gp.definition.name, gp.groundings.map(_.value)), t))
+    }.toMap)
+  }
+}
+
+/**
+ * Binding generation for a rule as a join over its atoms, as an alternative to
+ * the cross product in Grounding.generateBindings followed by the pruning of repeated individuals.
+ *
+ * The variables are bound one at a time, in the order in which they complete the most selective atoms.
+ * An atom that is false in the body (true if negated) or true in the head (false if negated) makes the rule
+ * trivially satisfied: the distance to satisfaction of those grounded rules is always 0, so they do not change
+ * the solution. Before a variable is bound, the atoms it completes look up in the fact index, through their
+ * most selective bound argument, the values of the variable that would make the atom such a fact,
+ * and these values are skipped together with their whole subtree of bindings.
+ * The other individuals of the class are still candidates: a grounded predicate without a fact is unknown,
+ * not false, so the facts can only exclude values of a variable and never restrict it to the values they mention.
+ * Atoms with set arguments are never used for pruning.
+ *
+ * With join based grounding the grounded predicates of the rules that allow it are also created from the
+ * pruned bindings (see prunesGroundedPredicates), so the grounded predicates that only appear in
+ * trivially satisfied grounded rules are not created at all.
+ *
+ * The individuals that are bound have to be pairwise disjoint, like in generateBindings.
+ */
+object JoinGrounding {
+
+  // An atom that can prune bindings, with the truth value that makes the rule trivially satisfied.
+  case class PruningAtom(atom: PredicateInRule, satisfyingTruthValue: Double, variables: List[String])
+
+  def pruningAtoms(rule: Rule, variableNames: Set[String], factIndex: FactIndex): List[PruningAtom] = {
+    def usable(atom: PredicateInRule): Option[List[String]] = {
+      val args = atom.allVarsOrIndsWithClasses
+      if (atom.predicate.isEmpty || args.exists(_.set)) {
+        None
+      } else {
+        val variables = args.collect { case v: Variable => v.value }
+        if (variables.forall(variableNames.contains(_))) Some(variables.distinct) else None
+      }
+    }
+    val bodyAtoms = rule.body.flatMap(a => usable(a).map(PruningAtom(a, if (a.negated) 1.0 else 0.0, _)))
+    val headAtoms = rule.head.flatMap(a => usable(a).map(PruningAtom(a, if (a.negated) 0.0 else 1.0, _)))
+    (bodyAtoms ++ headAtoms).filter(a => factIndex.numberOfFactsWithTruthValue(a.atom.name, a.satisfyingTruthValue) > 0)
+  }
+
+  /**
+   * Whether the grounded predicates of a rule can be created from its pruned bindings.
+   * Existential and set quantifiers bind more variables when the grounded rules are created, and with fact driven
+   * constraint grounding the keys of the functional predicates decide which grounded predicates a constraint sums
+   * over, so the grounded predicates of these rules are created from all the bindings.
+   */
+  def prunesGroundedPredicates(rule: Rule, config: InferencerConfig): Boolean = {
+    val quantified = rule.existentialVars.nonEmpty || Grounding.hasSetClauses(rule)
+    val functional = config.factDrivenConstraintGrounding && rule.allPredicatesInRule.exists(_.predicate.exists(
+      _.properties.exists(p => p == Functional || p == PartialFunctional)))
+    !quantified && !functional
+  }
+
+  def generateBindings(rule: Rule, variables: List[Variable], individuals: Map[(String, Int), Set[Individual]],
+    factIndex: FactIndex): List[Map[String, Individual]] = {
+    bindings(rule, variables, individuals, factIndex).toList
+  }
+
+  /**
+   * The bindings of the variables without any pruning by facts, generated lazily like the pruned ones.
+   */
+  def bindings(variables: List[Variable], individuals: Map[(String, Int), Set[Individual]]): Iterator[Map[String, Individual]] = {
+    val candidates = variables.map(v => Grounding.individualsOfVariable(v, individuals)).toArray
+    if (variables.size < 1 || candidates.exists(_.isEmpty)) {
+      Iterator.empty
+    } else {
+      new BindingIterator(variables.map(_.value).toArray, candidates, Array.fill(variables.size)(List.empty[PruningAtom]),
+        FactIndex.empty)
+    }
+  }
+
+  /**
+   * Lazy version of generateBindings: the bindings are only created while the iterator is consumed.
+   */
+  def bindings(rule: Rule, variables: List[Variable], individuals: Map[(String, Int), Set[Individual]],
+    factIndex: FactIndex): Iterator[Map[String, Individual]] = {
+    if (variables.size < 1) {
+      return Iterator.empty
+    }
+    val variableNames = variables.map(_.value).toSet
+
+    // Most selective first: the atoms of the predicates with most satisfying facts.
+    val atoms = pruningAtoms(rule, variableNames, factIndex).sortBy(a =>
+      -factIndex.numberOfFactsWithTruthValue(a.atom.name, a.satisfyingTruthValue))
+    val orderedVariables = {
+      val fromAtoms = atoms.flatMap(_.variables).distinct.flatMap(name => variables.find(_.value == name))
+      fromAtoms ++ variables.filter(v => !fromAtoms.contains(v))
+    }
+    val candidates = orderedVariables.map(v => Grounding.individualsOfVariable(v, individuals)).toArray
+    if (candidates.exists(_.isEmpty)) {
+      return Iterator.empty
+    }
+
+    // The atoms that the variable at this depth completes, they exclude some of its values.
+    val atomsCompletedAtDepth = orderedVariables.indices.map { depth =>
+      val boundNames = orderedVariables.take(depth + 1).map(_.value).toSet
+      val boundBefore = orderedVariables.take(depth).map(_.value).toSet
+      atoms.filter(a => a.variables.forall(boundNames.contains(_)) && !a.variables.forall(boundBefore.contains(_)))
+    }.toArray
+    val constantAtoms = atoms.filter(_.variables.isEmpty)
+    if (constantAtoms.exists(trivializes(_, Map.empty, factIndex))) {
+      return Iterator.empty
+    }
+
+    new BindingIterator(orderedVariables.map(_.value).toArray, candidates, atomsCompletedAtDepth, factIndex)
+  }
+
+  /**
+   * Depth first enumeration of the bindings, one variable per depth.
+   * A candidate is only accepted if it is disjoint from the individuals bound so far, with the same
+   * semantics as combineListOfBindingsAndPruneRepeatedIndividuals (the empty set is ignored),
+   * and if it is not one of the values for which an atom it completes trivially satisfies the rule.
+   * Only the candidate iterators on the current path are alive, so candidates that are created on demand,
+   * like the set individuals, are never all in memory.
+   */
+  final class BindingIterator(
+    variableNames: Array[String],
+    candidates: Array[Iterable[Individual]],
+    atomsCompletedAtDepth: Array[List[PruningAtom]],
+    factIndex: FactIndex) extends Iterator[Map[String, Individual]] {
+
+    private[this] val numberOfVariables = variableNames.length
+    private[this] val remaining = new Array[Iterator[Individual]](numberOfVariables)
+    private[this] val chosen = new Array[Individual](numberOfVariables)
+    private[this] val bound = new Array[Map[String, Individual]](numberOfVariables)
+    private[this] var depth = 0
+    private[this] var nextBinding: Map[String, Individual] = null
+    private[this] var exhausted = false
+
+    remaining(0) = candidatesAtDepth(0, Map.empty)
+
+    def hasNext: Boolean = {
+      if (nextBinding == null && !exhausted) {
+        advance()
+      }
+      nextBinding != null
+    }
+
+    def next(): Map[String, Individual] = {
+      if (!hasNext) {
+        throw new NoSuchElementException("No more bindings.")
+      }
+      val binding = nextBinding
+      nextBinding = null
+      binding
+    }
+
+    private[this] def advance() {
+      while (!exhausted && nextBinding == null) {
+        if (!remaining(depth).hasNext) {
+          remaining(depth) = null
+          depth -= 1
+          if (depth < 0) {
+            exhausted = true
+          }
+        } else {
+          val individual = remaining(depth).next
+          if (isDisjointFromBound(individual)) {
+            val previous = if (depth == 0) Map.empty[String, Individual] else bound(depth - 1)
+            val binding = previous + (variableNames(depth) -> individual)
+            chosen(depth) = individual
+            bound(depth) = binding
+            if (depth == numberOfVariables - 1) {
+              nextBinding = binding
+            } else {
+              depth += 1
+              remaining(depth) = candidatesAtDepth(depth, binding)
+            }
+          }
+        }
+      }
+    }
+
+    // The candidates of the variable at this depth, without the values excluded by the atoms it completes.
+    private[this] def candidatesAtDepth(d: Int, binding: Map[String, Individual]): Iterator[Individual] = {
+      val atoms = atomsCompletedAtDepth(d)
+      val excluded = if (atoms.isEmpty) {
+        Set.empty[String]
+      } else {
+        atoms.iterator.flatMap(excludedValues(_, variableNames(d), binding, factIndex)).toSet
+      }
+      if (excluded.isEmpty) {
+        candidates(d).iterator
+      } else {
+        candidates(d).iterator.filter(i => !excluded.contains(i.value))
+      }
+    }
+
+    private[this] def isDisjointFromBound(individual: Individual): Boolean = {
+      if (individual.value == "") {
+        true
+      } else {
+        var j = 0
+        while (j < depth) {
+          val other = chosen(j)
+          if (other.value != "" && (other.value == individual.value || !other.isDisjoint(individual) || !individual.isDisjoint(other))) {
+            return false
+          }
+          j += 1
+        }
+        true
+      }
+    }
+  }
+
+  /**
+   * The values of the variable that complete the atom to a fact that trivially satisfies the rule,
+   * given the bindings of the other variables of the atom. The facts are looked up through the bound argument
+   * with the fewest facts, or among all the satisfying facts of the predicate if no argument is bound.
+   */
+  def excludedValues(a: PruningAtom, variableName: String, binding: Map[String, Individual],
+    factIndex: FactIndex): Iterator[String] = {
+    val predicate = a.atom.predicate.get
+    val arguments = a.atom.allVarsOrIndsWithClasses.map {
+      case v: Variable if v.value == variableName => None
+      case v: Variable => Some(binding(v.value).value)
+      case i => Some(i.value)
+    }.toArray
+    val variablePositions = arguments.indices.filter(arguments(_).isEmpty)
+    val boundPositions = arguments.indices.filter(arguments(_).isDefined)
+    val facts = if (boundPositions.isEmpty) {
+      factIndex.factsWithTruthValue(predicate, a.satisfyingTruthValue)
+    } else {
+      val mostSelective = boundPositions.minBy(p =>
+        factIndex.numberOfFactsWithArgument(predicate, a.satisfyingTruthValue, p, arguments(p).get))
+      factIndex.factsWithArgument(predicate, a.satisfyingTruthValue, mostSelective, arguments(mostSelective).get)
+    }
+    val variablePosition = variablePositions.head
+    facts.filter { fact =>
+      fact.length == arguments.length && boundPositions.forall(p => fact(p) == arguments(p).get) &&
+        variablePositions.forall(p => fact(p) == fact(variablePosition))
+    }.map(_(variablePosition))
+  }
+
+  def trivializes(a: PruningAtom, binding: Map[String, Individual], factIndex: FactIndex): Boolean = {
+    val individuals = a.atom.allVarsOrIndsWithClasses.map {
+      case v: Variable => binding(v.value).value
+      case i => i.value
+    }
+    factIndex.truthValue(a.atom.predicate.get, individuals) == Some(a.satisfyingTruthValue)
+  }
+}
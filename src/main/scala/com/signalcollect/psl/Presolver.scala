@@ -0,0 +1,355 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.HashMap
+import scala.collection.mutable.HashSet
+import scala.collection.mutable.LinkedHashMap
+
+import com.signalcollect.admm.optimizers.OptimizableFunction
+import com.signalcollect.psl.model.DistanceMeasure
+import com.signalcollect.psl.model.GroundedConstraint
+import com.signalcollect.psl.model.GroundedPredicate
+import com.signalcollect.psl.model.GroundedRule
+import com.signalcollect.psl.model.GroundedRuleOrConstraint
+import com.signalcollect.psl.model.Squared
+
+/**
+ * A grounded rule or constraint before its function is created:
+ * weight * distance(coeffs^T * x - constant) for the soft rules,
+ * coeffs^T * x [comparator] constant for the hard rules and the constraints.
+ * Every variable appears once, with the sum of its coefficients.
+ */
+case class PresolveTerm(
+  id: Int,
+  weight: Double, // Double.MaxValue for hard rules and constraints.
+  distanceMeasure: DistanceMeasure, // Only used by the soft rules.
+  comparator: String, // "leq" for the rules.
+  zIndices: Array[Int],
+  coefficients: Array[Double],
+  constant: Double,
+  source: GroundedRuleOrConstraint,
+  modified: Boolean = false) { // If the function is not the one the grounded rule or constraint would create.
+
+  def isHard: Boolean = weight == Double.MaxValue || source.isGroundedConstraint
+
+  // Key of the linear expression, independent of the order of the variables.
+  def expressionKey: List[(Int, Double)] = zIndices.zip(coefficients).sortBy(_._1).toList
+
+  def maxValue(bounds: Int => (Double, Double)): Double = {
+    var sum = 0.0
+    var i = 0
+    while (i < zIndices.length) {
+      val (lower, upper) = bounds(zIndices(i))
+      sum += coefficients(i) * (if (coefficients(i) > 0) upper else lower)
+      i += 1
+    }
+    sum
+  }
+
+  def minValue(bounds: Int => (Double, Double)): Double = {
+    var sum = 0.0
+    var i = 0
+    while (i < zIndices.length) {
+      val (lower, upper) = bounds(zIndices(i))
+      sum += coefficients(i) * (if (coefficients(i) > 0) lower else upper)
+      i += 1
+    }
+    sum
+  }
+}
+
+object PresolveTerm {
+
+  def apply(r: GroundedRule): PresolveTerm = {
+    val unbound = r.unboundGroundedPredicates.map(_.id).toArray
+    val (zIndices, coefficients) = combined(unbound, r.computeCoefficientMatrix)
+    PresolveTerm(r.id, r.definition.weight, r.definition.distanceMeasure, "leq", zIndices, coefficients, r.computeConstant, r,
+      modified = zIndices.length != unbound.length)
+  }
+
+  def apply(c: GroundedConstraint): PresolveTerm = {
+    val unbound = c.unboundGroundedPredicates.map(_.id).toArray
+    val (zIndices, coefficients) = combined(unbound, c.computeCoefficientMatrix)
+    PresolveTerm(c.id, Double.MaxValue, Squared, c.computeComparator, zIndices, coefficients, c.computeConstant, c,
+      modified = zIndices.length != unbound.length)
+  }
+
+  /**
+   * Sums the coefficients of the variables that appear more than once and removes the variables with coefficient 0.
+   */
+  def combined(zIndices: Array[Int], coefficients: Array[Double]): (Array[Int], Array[Double]) = {
+    val sums = new LinkedHashMap[Int, Double]
+    var i = 0
+    while (i < zIndices.length) {
+      sums(zIndices(i)) = sums.getOrElse(zIndices(i), 0.0) + coefficients(i)
+      i += 1
+    }
+    val nonZero = sums.filter(_._2 != 0.0)
+    (nonZero.keys.toArray, nonZero.values.toArray)
+  }
+}
+
+/**
+ * The problem after presolving. The functions are created in the same way as from the grounded rules and constraints.
+ * The variables that are not part of any function anymore have to be added to the solution with their values.
+ */
+case class PresolvedProblem(
+  functions: Iterable[OptimizableFunction],
+  constraints: Iterable[OptimizableFunction],
+  bounds: Map[Int, (Double, Double)],
+  removedVariables: Map[Int, Double], // Values of the variables that are fixed or not in any function anymore.
+  modifiedFunctionIds: Set[Int], // Functions that do not match the grounded rule or constraint with the same id.
+  objectiveOffset: Double) // Value of the terms in which all variables were fixed.
+
+/**
+ * Shrinks the consensus problem before the graph is built:
+ * - Variables with equal lower and upper bounds are substituted into the constant of every term.
+ * - Hard terms on a single variable are folded into the bounds of that variable. If that fixes the variable,
+ * it is substituted as well, until nothing changes anymore.
+ * - Terms that are satisfied for all values within the bounds are removed: soft rules that are always 0,
+ * constraints that always hold and, of parallel constraints, all but the tightest one.
+ * - Soft rules with the same distance measure, linear expression and constant are merged by summing their weights.
+ *
+ * Bounds are only used if the problem is bounded, the variables without explicit bounds are in [0, 1].
+ */
+object Presolver {
+
+  def presolve(groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint],
+    idToGpMap: Map[Int, GroundedPredicate], config: InferencerConfig): PresolvedProblem = {
+    val initialBounds = Inferencer.boundsForConsensusVariables(idToGpMap, config)
+    val bounds = new HashMap[Int, (Double, Double)] ++= initialBounds
+    def boundsOf(id: Int): (Double, Double) = {
+      if (config.isBounded) bounds.getOrElse(id, (0.0, 1.0)) else (Double.NegativeInfinity, Double.PositiveInfinity)
+    }
+
+    var terms = new ArrayBuffer[PresolveTerm]
+    groundedRules.foreach { r =>
+      if (!r.unboundGroundedPredicates.isEmpty) terms += PresolveTerm(r)
+    }
+    groundedConstraints.foreach { c =>
+      if (!c.unboundGroundedPredicates.isEmpty && c.hasSupportedArity) terms += PresolveTerm(c)
+    }
+    val numberOfTerms = terms.length
+    val variables = new HashSet[Int]
+    terms.foreach(t => variables ++= t.zIndices)
+
+    val fixed = new HashMap[Int, Double]
+    var objectiveOffset = 0.0
+    var folded = 0
+
+    // Terms whose coefficients cancel out.
+    terms.filter(_.zIndices.isEmpty).foreach(t => objectiveOffset += constantValue(t, config.tolerance))
+    terms = terms.filter(!_.zIndices.isEmpty)
+
+    if (config.isBounded) {
+      for ((id, (lower, upper)) <- bounds if lower == upper) {
+        fixed(id) = lower
+      }
+      var changed = true
+      while (changed) {
+        changed = false
+        val remaining = new ArrayBuffer[PresolveTerm]
+        for (term <- terms) {
+          val t = substituted(term, fixed)
+          if (t.zIndices.isEmpty) {
+            objectiveOffset += constantValue(t, config.tolerance)
+          } else if (t.isHard && t.zIndices.length == 1 && fold(t, boundsOf, bounds)) {
+            folded += 1
+            val (lower, upper) = bounds(t.zIndices(0))
+            if (lower == upper && !fixed.contains(t.zIndices(0))) {
+              fixed(t.zIndices(0)) = lower
+              changed = true
+            }
+          } else {
+            remaining += t
+          }
+        }
+        terms = remaining
+      }
+      terms = terms.filterNot(t => isRedundant(t, boundsOf))
+      terms = tightestOfParallelConstraints(terms)
+    }
+    terms = mergedSoftRules(terms)
+
+    val functions = new ArrayBuffer[OptimizableFunction]
+    val constraints = new ArrayBuffer[OptimizableFunction]
+    for (t <- terms) {
+      t.source match {
+        case r: GroundedRule =>
+          functions ++= GroundedRule.createOptimizableFunction(t.id, t.weight, t.distanceMeasure, t.constant, t.coefficients,
+            t.zIndices, config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation, r)
+        case c: GroundedConstraint =>
+          constraints ++= GroundedConstraint.createOptimizableFunction(t.id, t.comparator, t.constant, t.coefficients,
+            t.zIndices, config.stepSize, config.tolerance, config.breezeOptimizer, config.optimizedFunctionCreation)
+      }
+    }
+
+    // The variables that are not in the graph get the value closest to 0 within their bounds, if they are not fixed.
+    val remainingVariables = new HashSet[Int]
+    (functions ++ constraints).foreach(f => remainingVariables ++= f.idToIndexMappings)
+    val removedVariables = variables.filter(!remainingVariables.contains(_)).map { id =>
+      val (lower, upper) = boundsOf(id)
+      (id, fixed.getOrElse(id, math.max(lower, math.min(upper, 0.0))))
+    }.toMap
+    val presolvedBounds = bounds.filter {
+      case (id, (lower, upper)) => remainingVariables.contains(id) && (lower != 0.0 || upper != 1.0)
+    }.toMap
+
+    println(s"Presolve removed ${numberOfTerms - functions.size - constraints.size} of $numberOfTerms grounded rules and constraints, " +
+      s"fixed ${fixed.size} variables and folded $folded single variable constraints into the bounds.")
+    println(s"Problem converted to consensus optimization with ${functions.size} functions,  ${constraints.size} constraints and ${presolvedBounds.size} bounds.")
+    PresolvedProblem(functions, constraints, presolvedBounds, removedVariables,
+      terms.filter(_.modified).map(_.id).toSet, objectiveOffset)
+  }
+
+  /**
+   * Moves the fixed variables into the constant.
+   */
+  def substituted(t: PresolveTerm, fixed: collection.Map[Int, Double]): PresolveTerm = {
+    if (!t.zIndices.exists(fixed.contains(_))) {
+      t
+    } else {
+      var constant = t.constant
+      val zIndices = new ArrayBuffer[Int]
+      val coefficients = new ArrayBuffer[Double]
+      var i = 0
+      while (i < t.zIndices.length) {
+        fixed.get(t.zIndices(i)) match {
+          case Some(value) =>
+            constant -= t.coefficients(i) * value
+          case None =>
+            zIndices += t.zIndices(i)
+            coefficients += t.coefficients(i)
+        }
+        i += 1
+      }
+      t.copy(zIndices = zIndices.toArray, coefficients = coefficients.toArray, constant = constant, modified = true)
+    }
+  }
+
+  /**
+   * Value of a term without variables, the constraints that do not hold are reported and their value is ignored.
+   */
+  def constantValue(t: PresolveTerm, tolerance: Double): Double = {
+    if (t.isHard) {
+      val holds = t.comparator match {
+        case "leq" => 0 <= t.constant + tolerance
+        case "geq" => 0 >= t.constant - tolerance
+        case _ => math.abs(t.constant) <= tolerance
+      }
+      if (!holds) {
+        println(s"[WARNING]: The fixed truth values violate ${t.source}.")
+      }
+      0.0
+    } else {
+      val distance = math.max(0.0, -t.constant)
+      if (t.distanceMeasure == Squared) t.weight * distance * distance else t.weight * distance
+    }
+  }
+
+  /**
+   * Tightens the bounds of the variable of a hard term a * x [comparator] constant.
+   * Returns false and leaves the bounds unchanged if the term would make the bounds empty.
+   */
+  def fold(t: PresolveTerm, boundsOf: Int => (Double, Double), bounds: HashMap[Int, (Double, Double)]): Boolean = {
+    val id = t.zIndices(0)
+    val a = t.coefficients(0)
+    val limit = t.constant / a
+    val comparator = t.comparator match {
+      case "leq" if a < 0 => "geq"
+      case "geq" if a < 0 => "leq"
+      case other => other
+    }
+    val (lower, upper) = boundsOf(id)
+    val newLower = if (comparator != "leq") math.max(lower, limit) else lower
+    val newUpper = if (comparator != "geq") math.min(upper, limit) else upper
+    if (newLower > newUpper) {
+      false
+    } else {
+      bounds(id) = (newLower, newUpper)
+      true
+    }
+  }
+
+  /**
+   * Soft rules that are 0 and constraints that hold for all the values within the bounds.
+   */
+  def isRedundant(t: PresolveTerm, boundsOf: Int => (Double, Double)): Boolean = {
+    if (!t.isHard) {
+      t.maxValue(boundsOf) - t.constant <= 0
+    } else {
+      t.comparator match {
+        case "leq" => t.maxValue(boundsOf) <= t.constant
+        case "geq" => t.minValue(boundsOf) >= t.constant
+        case _ => false
+      }
+    }
+  }
+
+  /**
+   * Of the hard terms with the same comparator and linear expression only the tightest is kept,
+   * equalities are only deduplicated.
+   */
+  def tightestOfParallelConstraints(terms: ArrayBuffer[PresolveTerm]): ArrayBuffer[PresolveTerm] = {
+    val tightest = new LinkedHashMap[(String, List[(Int, Double)]), PresolveTerm]
+    val result = new ArrayBuffer[PresolveTerm]
+    for (t <- terms) {
+      if (!t.isHard || t.comparator == "eq") {
+        result += t
+      } else {
+        val key = (t.comparator, t.expressionKey)
+        tightest.get(key) match {
+          case Some(other) =>
+            val tighter = if (t.comparator == "leq") t.constant < other.constant else t.constant > other.constant
+            if (tighter) tightest(key) = t
+          case None =>
+            tightest(key) = t
+        }
+      }
+    }
+    val equalities = new HashSet[(List[(Int, Double)], Double)]
+    result.filter(t => !t.isHard || equalities.add((t.expressionKey, t.constant))) ++= tightest.values
+  }
+
+  /**
+   * Merges the soft rules with the same distance measure, linear expression and constant into the first of them.
+   */
+  def mergedSoftRules(terms: ArrayBuffer[PresolveTerm]): ArrayBuffer[PresolveTerm] = {
+    val merged = new LinkedHashMap[(DistanceMeasure, List[(Int, Double)], Double), PresolveTerm]
+    val result = new ArrayBuffer[PresolveTerm]
+    for (t <- terms) {
+      if (t.isHard) {
+        result += t
+      } else {
+        val key = (t.distanceMeasure, t.expressionKey, t.constant)
+        merged.get(key) match {
+          case Some(other) =>
+            merged(key) = other.copy(weight = other.weight + t.weight, modified = true)
+          case None =>
+            merged(key) = t
+        }
+      }
+    }
+    result ++= merged.values.filter(_.weight != 0.0)
+  }
+}
@@ -153,7 +153,7 @@ class PslOptimizerWrapper(
   override def optimizeEfficient(z: Array[Double]) = {
     assert(idToIndexMappings.length == z.length,
       "zMap needs to have the same size as the one with which this optimizer was initized.\n" +
-        s"previous: ${pslOptimizer.reasoner.z} new: ${z.mkString("[", ",", "]")}, idToIndexMap=${idToIndexMappings.mkString("[", ",", "]")}")
+        s"previous: ${pslOptimizer.z.mkString("[", ",", "]")} new: ${z.mkString("[", ",", "]")}, idToIndexMap=${idToIndexMappings.mkString("[", ",", "]")}")
     setZ(z)
     pslOptimizer.minimize
   }
@@ -168,7 +168,7 @@ class PslOptimizerWrapper(
   override def updateLagrangeEfficient(z: Array[Double]) = {
     assert(idToIndexMappings.length == z.length,
       "z needs to have the same size as the one with which this optimizer was initized.\n" +
-        s"previous: ${pslOptimizer.reasoner.z} new: ${z.mkString("[", ",", "]")}, idToIndexMap=${idToIndexMappings.mkString("[", ",", "]")}")
+        s"previous: ${pslOptimizer.z.mkString("[", ",", "]")} new: ${z.mkString("[", ",", "]")}, idToIndexMap=${idToIndexMappings.mkString("[", ",", "]")}")
     setZ(z)
     pslOptimizer.updateLagrange
   }
@@ -182,10 +182,10 @@ class PslOptimizerWrapper(
   override def getStepSize: Double = pslOptimizer.reasoner.stepSize
 
   override def setZ(z: Array[Double]) {
-    pslOptimizer.setZMap(JavaConversionHelper.toZMapJava(arrayToMap(z)))
+    pslOptimizer.setZ(z)
   }
   override def evaluateAtEfficient(x: Array[Double]): Double = {
-    pslOptimizer.evaluateAt(JavaConversionHelper.toZMapJava(arrayToMap(x)))
+    pslOptimizer.evaluateAt(x)
   }
 
   override def getX = pslOptimizer.x
@@ -0,0 +1,94 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package com.signalcollect.psl
+
+import com.signalcollect.psl.model.Individual
+import com.signalcollect.psl.model.PslClass
+
+/**
+ * The subsets with 'subsetSize' elements of 'elements', as set individuals of 'setClass'.
+ * Behaves like the set of all of them, but the subsets are only created while iterating and are not retained,
+ * so the memory does not depend on the number of subsets. Looking up a subset does not enumerate them.
+ */
+final class SubsetIndividuals(elements: Set[Individual], val subsetSize: Int, setClass: PslClass) extends Set[Individual] {
+
+  private[this] val elementsByValue = elements.map(i => (i.value, i)).toMap
+
+  def iterator: Iterator[Individual] = elements.subsets(subsetSize).map(toIndividual)
+
+  /**
+   * The individual of the subset with exactly this name, e.g. Set(anna, bob), if it is one of the subsets.
+   */
+  def named(name: String): Option[Individual] = {
+    subsetWithValues(Individual(name).varsOrIndividualsInSet).filter(_.name == name)
+  }
+
+  // Individuals are equal if their values are, the value of a set individual is its name.
+  def contains(individual: Individual): Boolean = {
+    subsetWithValues(Individual(individual.value).varsOrIndividualsInSet).exists(_.value == individual.value)
+  }
+
+  def +(individual: Individual): Set[Individual] = {
+    if (contains(individual)) this else iterator.toSet + individual
+  }
+
+  def -(individual: Individual): Set[Individual] = {
+    if (contains(individual)) iterator.toSet - individual else this
+  }
+
+  override def isEmpty: Boolean = subsetSize < 0 || subsetSize > elements.size
+
+  // Binomial coefficient, capped at Int.MaxValue.
+  override def size: Int = {
+    val n = elements.size
+    val k = math.min(subsetSize, n - subsetSize)
+    if (k < 0) {
+      0
+    } else {
+      var result = BigInt(1)
+      for (i <- 1 to k) {
+        result = result * (n - k + i) / i
+      }
+      if (result > Int.MaxValue) Int.MaxValue else result.toInt
+    }
+  }
+
+  override def toString = s"SubsetIndividuals($subsetSize of ${elements.size} $setClass)"
+
+  /**
+   * Same name as the individual created by the eager enumeration in generateAllPossibleSetsAsIndividuals:
+   * the elements are ordered by name before the set is created.
+   */
+  private[this] def toIndividual(subset: Set[Individual]): Individual = {
+    val orderedSubset = subset.toList.sortBy(_.name).toSet
+    Individual(orderedSubset.toString, Set(setClass))
+  }
+
+  private[this] def subsetWithValues(values: Set[String]): Option[Individual] = {
+    val nonEmptyValues = values.filter(_ != "")
+    if (nonEmptyValues.size != subsetSize || !nonEmptyValues.forall(elementsByValue.contains(_))) {
+      None
+    } else {
+      Some(toIndividual(nonEmptyValues.map(elementsByValue)))
+    }
+  }
+}
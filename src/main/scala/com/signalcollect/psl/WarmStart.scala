@@ -0,0 +1,84 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import com.signalcollect.psl.model.GroundedConstraint
+import com.signalcollect.psl.model.GroundedPredicate
+import com.signalcollect.psl.model.GroundedRule
+
+// Identifies a grounded predicate across groundings, e.g. ("votes", List("anna", "DP")).
+case class GroundedPredicateKey(predicate: String, individuals: List[String])
+
+// Identifies a function across groundings: the rule or constraint type, all its grounded predicates and the unbound ones, in order.
+// The bound grounded predicates tell apart the groundings that only differ in facts, the unbound ones are the order of the multipliers.
+case class FunctionKey(definition: String, groundedPredicates: List[GroundedPredicateKey], variables: List[GroundedPredicateKey])
+
+/**
+ * The solution of a previous inference, used to seed the inference on a similar problem,
+ * e.g. after a few facts have changed.
+ * The ids of grounded predicates and grounded rules change every time a problem is grounded,
+ * so the values are stored by identity instead.
+ * Grounded predicates that are new start at 0, functions that are new start with 0 multipliers.
+ */
+case class WarmStart(
+  truthValues: Map[GroundedPredicateKey, Double],
+  multipliers: Map[FunctionKey, Array[Double]] = Map.empty) {
+
+  /**
+   * Initial consensus values by id for the grounded predicates that do not have a truth value.
+   */
+  def initialConsensus(idToGpMap: Map[Int, GroundedPredicate]): Map[Int, Double] = {
+    idToGpMap.flatMap {
+      case (id, gp) =>
+        if (gp.truthValue.isEmpty) {
+          truthValues.get(WarmStart.key(gp)).map(truthValue => (id, truthValue))
+        } else { None }
+    }
+  }
+
+  /**
+   * Initial multipliers by function id. A function gets the same id as the grounded rule or constraint it was created from.
+   */
+  def initialMultipliers(groundedRules: Iterable[GroundedRule], groundedConstraints: Iterable[GroundedConstraint]): Map[Int, Array[Double]] = {
+    if (multipliers.isEmpty) {
+      Map.empty
+    } else {
+      val ruleMultipliers = groundedRules.flatMap(r => multipliers.get(WarmStart.key(r)).map(m => (r.id, m)))
+      val constraintMultipliers = groundedConstraints.flatMap(c => multipliers.get(WarmStart.key(c)).map(m => (c.id, m)))
+      (ruleMultipliers ++ constraintMultipliers).toMap
+    }
+  }
+}
+
+object WarmStart {
+  def key(gp: GroundedPredicate): GroundedPredicateKey = {
+    GroundedPredicateKey(gp.definition.name, gp.groundings.map(_.name))
+  }
+
+  def key(r: GroundedRule): FunctionKey = {
+    FunctionKey(s"rule ${r.definition.id}", r.allGroundedPredicates.map(key), r.unboundGroundedPredicates.map(key))
+  }
+
+  // Constraints are identified by their type, the ids of the bounds constraints are not stable.
+  def key(c: GroundedConstraint): FunctionKey = {
+    FunctionKey(c.property.toString, c.allGroundedPredicates.map(key), c.unboundGroundedPredicates.map(key))
+  }
+}
@@ -98,6 +98,12 @@ case class GroundedConstraint(
     groundedPredicates
   }
 
+  // Constraints work only for binary predicates.
+  // Arity 0 is allowed only as retrocompatibility with grounded rules in PSL format.
+  def hasSupportedArity: Boolean = {
+    groundedPredicates(0).definition.arity == 0 || groundedPredicates(0).definition.arity == 2
+  }
+
   def createOptimizableFunction(stepSize: Double, tolerance: Double = 0.0,
     breezeOptimizer: Boolean = false,
     optimizedFunctionCreation: Boolean = true): Option[OptimizableFunction] = {
@@ -105,15 +111,28 @@ case class GroundedConstraint(
     if (unboundGroundedPredicates.size == 0)
       return None
 
-    // Constraints work only for binary predicates.
-    // Arity 0 is allowed only as retrocompatibility with grounded rules in PSL format.
-    if (groundedPredicates(0).definition.arity != 0 && groundedPredicates(0).definition.arity != 2) {
+    if (!hasSupportedArity) {
       return None
     }
 
-    val coefficientMatrix = computeCoefficientMatrix
-    val constant = computeConstant
-    val comparator = computeComparator
+    GroundedConstraint.createOptimizableFunction(id, computeComparator, computeConstant, computeCoefficientMatrix,
+      unboundGroundedPredicates.map(gp => gp.id).toArray, stepSize, tolerance, breezeOptimizer, optimizedFunctionCreation)
+  }
+
+}
+
+object GroundedConstraint {
+
+  /**
+   * Creates the function of a constraint coeffs^T * x [comparator] constant, where the comparator is "leq", "geq" or "eq".
+   * The variables with a known truth value have to be already part of the constant.
+   */
+  def createOptimizableFunction(id: Int, comparator: String, constant: Double, coefficientMatrix: Array[Double],
+    zIndices: Array[Int], stepSize: Double, tolerance: Double,
+    breezeOptimizer: Boolean, optimizedFunctionCreation: Boolean): Option[OptimizableFunction] = {
+    if (zIndices.isEmpty) {
+      return None
+    }
 
     /**
      * Optimization: Check for trivially always false constraints (they will be discarded)
@@ -144,8 +163,7 @@ case class GroundedConstraint(
     }
 
     // TODO: Define zMap - currently just initialized to 0.
-    val zMap: Map[Int, Double] = unboundGroundedPredicates.map(gp => (gp.id, 0.0)).toMap
-    val zIndices: Array[Int] = unboundGroundedPredicates.map(gp => gp.id).toArray
+    val zMap: Map[Int, Double] = zIndices.map(id => (id, 0.0)).toMap
     val optimizableFunction: OptimizableFunction =
       if (breezeOptimizer) {
         new LinearConstraintOptimizer(id, comparator, constant, zIndices, stepSize, zMap, coefficientMatrix, tolerance)
@@ -102,9 +102,24 @@ case class GroundedRule(
     if (unboundGroundedPredicates.size == 0) {
       return None
     }
+    GroundedRule.createOptimizableFunction(id, definition.weight, definition.distanceMeasure, computeConstant, computeCoefficientMatrix,
+      unboundGroundedPredicates.map(gp => gp.id).toArray, stepSize, tolerance, breezeOptimizer, optimizedFunctionCreation, this)
+  }
+}
 
-    val constant = computeConstant
-    val coefficientMatrix = computeCoefficientMatrix
+object GroundedRule {
+
+  /**
+   * Creates the function of a grounded rule from its terms, weight * distance(coeffs^T * x - constant),
+   * the description is only used in the warnings.
+   * The variables with a known truth value have to be already part of the constant.
+   */
+  def createOptimizableFunction(id: Int, weight: Double, distanceMeasure: DistanceMeasure, constant: Double,
+    coefficientMatrix: Array[Double], zIndices: Array[Int], stepSize: Double, tolerance: Double,
+    breezeOptimizer: Boolean, optimizedFunctionCreation: Boolean, description: => Any): Option[OptimizableFunction] = {
+    if (zIndices.isEmpty) {
+      return None
+    }
 
     /**
      * Optimization: Check for trivially always true (distance to satisfaction always zero) formulas:
@@ -120,10 +135,9 @@ case class GroundedRule(
     }
 
     // TODO: Define zMap - currently just initialized to 0.
-    val zMap: Map[Int, Double] = unboundGroundedPredicates.map(gp => (gp.id, 0.0)).toMap
-    val zIndices: Array[Int] = unboundGroundedPredicates.map(gp => gp.id).toArray
+    val zMap: Map[Int, Double] = zIndices.map(id => (id, 0.0)).toMap
 
-    if (definition.weight != Double.MaxValue) {
+    if (weight != Double.MaxValue) {
       // Not a hard rule.
       /**
        * Optimization: Check for functions that don't need the hingeloss, because they are always above 0.
@@ -134,78 +148,78 @@ case class GroundedRule(
        */
       val worstPossibleScenario = coefficientMatrix.map { coeff => if (coeff > 0) 0 else coeff }.sum - constant
 
-      val optimizableFunction: OptimizableFunction = definition.distanceMeasure match {
+      val optimizableFunction: OptimizableFunction = distanceMeasure match {
         case Linear =>
           if (worstPossibleScenario > 0) {
             // The constant doesn't influence the minimization.
             if (breezeOptimizer) {
               new LinearLossOptimizer(
                 id,
-                weight = definition.weight,
+                weight = weight,
                 constant = constant,
                 zIndices = zIndices,
                 stepSize = stepSize,
                 initialZmap = zMap,
                 coefficientMatrix = coefficientMatrix)
             } else {
-              Optimizer.linearLoss(stepSize, zMap, definition.weight, coefficientMatrix, zIndices, id)
+              Optimizer.linearLoss(stepSize, zMap, weight, coefficientMatrix, zIndices, id)
             }
 
           } else {
-            if (definition.weight < 0) {
-              println(s"[WARNING]: Adding a concave function like: neg * max(0, coeff*x - const): $this")
+            if (weight < 0) {
+              println(s"[WARNING]: Adding a concave function like: neg * max(0, coeff*x - const): $description")
             }
             if (breezeOptimizer) {
               new HingeLossOptimizer(
                 id,
-                weight = definition.weight,
+                weight = weight,
                 constant = constant,
                 zIndices = zIndices,
                 stepSize = stepSize,
                 initialZmap = zMap,
                 coefficientMatrix = coefficientMatrix)
             } else {
-              Optimizer.hingeLoss(stepSize, zMap, definition.weight, constant, coefficientMatrix, zIndices, id)
+              Optimizer.hingeLoss(stepSize, zMap, weight, constant, coefficientMatrix, zIndices, id)
             }
           }
 
         case Squared =>
           if (worstPossibleScenario > 0) {
-            if (definition.weight < 0) {
-              println(s"[WARNING]: Adding a concave function like: neg * (coeff*x - const)^2: $this")
+            if (weight < 0) {
+              println(s"[WARNING]: Adding a concave function like: neg * (coeff*x - const)^2: $description")
             }
             if (breezeOptimizer) {
               new SquaredLossOptimizer(
                 id,
-                weight = definition.weight,
+                weight = weight,
                 constant = constant,
                 zIndices = zIndices,
                 stepSize = stepSize,
                 initialZmap = zMap,
                 coefficientMatrix = coefficientMatrix)
             } else {
-              Optimizer.squaredLinearLoss(stepSize, zMap, definition.weight, constant, coefficientMatrix, zIndices, id)
+              Optimizer.squaredLinearLoss(stepSize, zMap, weight, constant, coefficientMatrix, zIndices, id)
             }
           } else {
-            if (definition.weight < 0) {
-              println(s"[WARNING]: Adding a concave function like: neg * max(0, coeff*x - const)^2: $this")
+            if (weight < 0) {
+              println(s"[WARNING]: Adding a concave function like: neg * max(0, coeff*x - const)^2: $description")
             }
             if (breezeOptimizer) {
               new SquaredHingeLossOptimizer(
                 id,
-                weight = definition.weight,
+                weight = weight,
                 constant = constant,
                 zIndices = zIndices,
                 stepSize = stepSize,
                 initialZmap = zMap,
                 coefficientMatrix = coefficientMatrix)
             } else {
-              Optimizer.squaredHingeLoss(stepSize, zMap, definition.weight, constant, coefficientMatrix, zIndices, id)
+              Optimizer.squaredHingeLoss(stepSize, zMap, weight, constant, coefficientMatrix, zIndices, id)
             }
           }
         case _ =>
           throw new Exception("No distance measure specified.")
-        //Optimizer.hingeLoss(stepSize, zMap, definition.weight, constant, coefficientMatrix, zIndices, id)
+        //Optimizer.hingeLoss(stepSize, zMap, weight, constant, coefficientMatrix, zIndices, id)
       }
       Some(optimizableFunction)
     } else {
@@ -0,0 +1,181 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl.parser
+
+import scala.collection.mutable.ArrayBuffer
+
+import com.signalcollect.psl.model.Individual
+
+/**
+ * Hand written scanner for the lines that dominate large evidence files:
+ *
+ * fact: votes(anna, republicans)
+ * fact [truthValue = 0.5]: !votes(anna, democrats) // comment
+ * individuals: anna, bob
+ *
+ * Returns None for anything it does not recognize (rules, predicates, sets, urls, block comments, errors),
+ * those lines are parsed with the PslParser grammar, which also reports the errors.
+ * For the lines it recognizes, the result is the same as with the grammar.
+ */
+object FastLineParser {
+
+  private val doublePattern = java.util.regex.Pattern.compile("\\-?[0-9]+\\.?[0-9]*((e|E)(\\+|-)?[0-9]+)?")
+
+  /**
+   * Returns a Fact or a Set[Individual], in the same way as the PslParser.pslLine parser.
+   */
+  def parseLine(line: String): Option[Any] = {
+    val scanner = new LineScanner(line)
+    scanner.skipWhitespace
+    if (scanner.keyword("fact")) {
+      parseFact(scanner)
+    } else if (scanner.keyword("individuals")) {
+      parseIndividuals(scanner)
+    } else {
+      None
+    }
+  }
+
+  private[this] def parseFact(s: LineScanner): Option[Fact] = {
+    s.skipWhitespace
+    val truthValues = if (s.consume('[')) {
+      s.skipWhitespace
+      if (s.keyword("truthValue")) {
+        s.skipWhitespace
+        if (!s.consume('=')) return None
+        s.skipWhitespace
+      }
+      val values = new ArrayBuffer[Double]
+      var more = s.peek != ']'
+      while (more) {
+        val value = s.number
+        if (value.isEmpty) return None
+        values += value.get
+        s.skipWhitespace
+        more = s.consume(',')
+        s.skipWhitespace
+      }
+      if (!s.consume(']')) return None
+      if (values.size > 2 || values.exists(t => t > 1 || t < 0)) {
+        // Let the grammar report the error.
+        return None
+      }
+      Some(values.toList)
+    } else {
+      None
+    }
+    s.skipWhitespace
+    if (!s.consume(':')) return None
+    s.skipWhitespace
+    val negated = s.consume('!')
+    s.skipWhitespace
+    val name = s.identifier(allowUnderscore = false)
+    if (name.isEmpty) return None
+    s.skipWhitespace
+    if (!s.consume('(')) return None
+    val groundings = new ArrayBuffer[Set[Individual]]
+    var more = true
+    while (more) {
+      s.skipWhitespace
+      val individual = s.identifier(allowUnderscore = true)
+      // Empty and uppercase individuals, sets and urls are left to the grammar.
+      if (individual.isEmpty || individual.charAt(0).isUpper) return None
+      groundings += Set(Individual(individual))
+      s.skipWhitespace
+      more = s.consume(',')
+    }
+    if (!s.consume(')') || !s.atEndOrComment) return None
+    Some(PslParser.createFact(truthValues, negated, name, groundings.toList))
+  }
+
+  private[this] def parseIndividuals(s: LineScanner): Option[Set[Individual]] = {
+    s.skipWhitespace
+    if (!s.consume(':')) return None
+    val individuals = new ArrayBuffer[Individual]
+    var more = true
+    while (more) {
+      s.skipWhitespace
+      val individual = s.identifier(allowUnderscore = false)
+      if (individual.isEmpty || individual.exists(_.isUpper)) return None
+      individuals += Individual(individual)
+      s.skipWhitespace
+      more = s.consume(',')
+    }
+    if (!s.atEndOrComment) return None
+    Some(individuals.toSet)
+  }
+
+  private final class LineScanner(line: String) {
+    private[this] var position = 0
+    private[this] val length = line.length
+
+    def peek: Char = if (position < length) line.charAt(position) else 0
+
+    def skipWhitespace {
+      while (position < length && Character.isWhitespace(line.charAt(position))) {
+        position += 1
+      }
+    }
+
+    def consume(c: Char): Boolean = {
+      if (peek == c) {
+        position += 1
+        true
+      } else { false }
+    }
+
+    // The keyword has to be followed by something that is not part of an identifier.
+    def keyword(k: String): Boolean = {
+      if (line.startsWith(k, position) && !isIdentifierChar(charAt(position + k.length), allowUnderscore = true)) {
+        position += k.length
+        true
+      } else { false }
+    }
+
+    def identifier(allowUnderscore: Boolean): String = {
+      val start = position
+      while (position < length && isIdentifierChar(line.charAt(position), allowUnderscore)) {
+        position += 1
+      }
+      line.substring(start, position)
+    }
+
+    def number: Option[Double] = {
+      val start = position
+      while (position < length && "0123456789.-+eE".indexOf(line.charAt(position)) >= 0) {
+        position += 1
+      }
+      val candidate = line.substring(start, position)
+      if (doublePattern.matcher(candidate).matches) Some(candidate.toDouble) else None
+    }
+
+    def atEndOrComment: Boolean = {
+      skipWhitespace
+      position == length || line.startsWith("//", position) || line.charAt(position) == '#'
+    }
+
+    private[this] def charAt(i: Int): Char = if (i < length) line.charAt(i) else 0
+
+    private[this] def isIdentifierChar(c: Char, allowUnderscore: Boolean): Boolean = {
+      (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || (allowUnderscore && c == '_')
+    }
+  }
+}
@@ -26,6 +26,10 @@ import com.signalcollect.psl.model.Individual
 import com.signalcollect.psl.model.Variable
 import com.signalcollect.psl.model.Squared
 import com.signalcollect.psl.model.PslClass
+import scala.collection.mutable.ListBuffer
+import scala.collection.mutable.HashMap
+import scala.collection.mutable.HashSet
+import scala.collection.mutable.LinkedHashMap
 
 case class ParsedPslFragment(
   explicitlyMentionedIndividualsInClasses: Map[PslClass, Set[Individual]] = Map.empty,
@@ -45,6 +49,43 @@ case class ParsedPslFragment(
 
 }
 
+/**
+ * Collects parsed lines and fragments in time linear in their size,
+ * instead of concatenating lists pairwise as in ParsedPslFragment.merge.
+ */
+class ParsedPslFragmentBuilder {
+  private[this] val predicates = new ListBuffer[Predicate]
+  private[this] val rules = new ListBuffer[Rule]
+  private[this] val facts = new ListBuffer[Fact]
+  private[this] val classes = new HashMap[PslClass, Set[Individual]]
+  private[this] val constants = new HashSet[Individual]
+
+  /**
+   * Adds a line, as returned by PslParser.pslLine or FastLineParser.parseLine, or a whole fragment.
+   */
+  def +=(line: Any): this.type = {
+    line match {
+      case p: Predicate => predicates += p
+      case r: Rule => rules += r
+      case f: Fact => facts += f
+      case ind: Set[Individual] => constants ++= ind
+      case c: (PslClass, Set[Individual]) => classes += c
+      case fragment: ParsedPslFragment =>
+        predicates ++= fragment.predicates
+        rules ++= fragment.rules
+        facts ++= fragment.facts
+        constants ++= fragment.constants
+        classes ++= fragment.explicitlyMentionedIndividualsInClasses
+      case _ =>
+    }
+    this
+  }
+
+  def result(): ParsedPslFragment = {
+    ParsedPslFragment(classes.toMap, predicates.toList, rules.toList, facts.toList, constants.toSet)
+  }
+}
+
 case class ParsedPslFile(
   explicitlyMentionedIndividualsInClasses: Map[PslClass, Set[Individual]] = Map.empty,
   predicates: List[Predicate] = List.empty,
@@ -56,17 +97,15 @@ case class ParsedPslFile(
   def individualsInRules = rulesWithPredicates.flatMap(_.body.flatMap(p => p.singleIndividuals)) ++
     rulesWithPredicates.flatMap(_.head.flatMap(p => p.singleIndividuals))
 
-  def individuals: List[Individual] = {
+  lazy val individuals: List[Individual] = {
     val individualsInClasses = explicitlyMentionedIndividualsInClasses.map(_._2).flatten
     val allIndividuals = constants.toList ++ individualsInFacts ++ individualsInClasses ++ individualsInRules
-    val individualNames = allIndividuals.map(v => v.name).distinct
-    val mergedIndividuals = individualNames.map {
-      name =>
-        val individualsToMerge = allIndividuals.filter(_.name == name)
-        val classTypes = individualsToMerge.map(v => v.classTypes).flatten.toSet
-        Individual(name, classTypes)
+    // Merge the class types of the individuals with the same name, in order of first appearance.
+    val classTypesByName = new LinkedHashMap[String, Set[PslClass]]
+    allIndividuals.foreach { i =>
+      classTypesByName(i.name) = classTypesByName.getOrElse(i.name, Set.empty[PslClass]) ++ i.classTypes
     }
-    mergedIndividuals
+    classTypesByName.map { case (name, classTypes) => Individual(name, classTypes) }.toList
   }
 
   def classes: Set[PslClass] = {
@@ -144,12 +183,15 @@ case class ParsedPslFile(
     }
     standardRulesWithPredicates ++ priorRules
   }
+  // The first predicate declared with each name.
+  private[this] lazy val predicatesByName = predicates.reverse.map(p => (p.name, p)).toMap
+
   val factsWithPredicates =
     facts.map {
       fact =>
-        val predicate = predicates.filter(_.name == fact.name)
-        if (predicate.length >= 1) {
-          Fact(fact.name, fact.variableGroundings, fact.truthValue, Some(predicate(0)))
+        val predicate = predicatesByName.get(fact.name)
+        if (predicate.isDefined) {
+          Fact(fact.name, fact.variableGroundings, fact.truthValue, predicate)
         } else {
           println(s"[ERROR] Predicate not declared: $fact.name; will not be grounded properly.")
           fact
@@ -157,9 +199,9 @@ case class ParsedPslFile(
     }
 
   def mergePredicateInRule(pInR: PredicateInRule) = {
-    val predicate = predicates.filter(_.name == pInR.name)
-    if (predicate.length >= 1) {
-      PredicateInRule(pInR.name, pInR.variableOrIndividual, pInR.negated, Some(predicate(0)))
+    val predicate = predicatesByName.get(pInR.name)
+    if (predicate.isDefined) {
+      PredicateInRule(pInR.name, pInR.variableOrIndividual, pInR.negated, predicate)
     } else {
       println(s"[ERROR] Predicate not declared: $pInR.name; will not be grounded properly.")
       pInR
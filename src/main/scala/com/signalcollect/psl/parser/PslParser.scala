@@ -20,10 +20,6 @@
 
 package com.signalcollect.psl.parser
 
-import scala.collection.mutable.ListBuffer
-import scala.collection.mutable.HashMap
-import scala.collection.mutable.HashSet
-
 import scala.util.parsing.combinator.ImplicitConversions
 import scala.util.parsing.combinator.RegexParsers
 import scala.util.parsing.combinator.lexical.StdLexical
@@ -72,22 +68,32 @@ object PslParser extends ParseHelper[ParsedPslFile] with ImplicitConversions {
   val maxPossibleCardinality = 50
   
   def parse(files: List[File]): ParsedPslFile= {
-    val ParsedPslFragments = files.map(parseFileLineByLine(_))
-    ParsedPslFragments.foldLeft(ParsedPslFragment()) (_ merge _).toParsedPslFile()
+    val builder = new ParsedPslFragmentBuilder
+    files.foreach(file => builder += parseFileLineByLine(file))
+    builder.result().toParsedPslFile()
   }
   
   def parseNonParallel(files: List[File]): ParsedPslFile= {
-    val ParsedPslFragments = files.map(parseFile(_, fragmentParser))
-    ParsedPslFragments.foldLeft(ParsedPslFragment()) (_ merge _).toParsedPslFile()
+    val builder = new ParsedPslFragmentBuilder
+    files.foreach(file => builder += parseFile(file, fragmentParser))
+    builder.result().toParsedPslFile()
   }
   
   def parseFileLineByLine(file: File): ParsedPslFragment = {
     val chunkSize = 12800 * 1024
     val iterator = io.Source.fromFile(file).getLines.grouped(chunkSize)
-    val parsedLines = iterator.flatMap { lines =>
-      lines.par.map { line => parseString(line, fragmentParser) }
+    val builder = new ParsedPslFragmentBuilder
+    iterator.foreach { lines =>
+      lines.par.map(parseLine).seq.foreach(builder += _)
     }
-    parsedLines.foldLeft(ParsedPslFragment()) (_ merge _)
+    builder.result()
+  }
+
+  /**
+   * Facts and individuals are scanned directly, everything else is parsed with the grammar.
+   */
+  def parseLine(line: String): Any = {
+    FastLineParser.parseLine(line).getOrElse(parseString(line, fragmentParser))
   }
   
   var ruleId = 0
@@ -346,46 +352,51 @@ object PslParser extends ParseHelper[ParsedPslFile] with ImplicitConversions {
   lazy val fact: Parser[Fact] = {
     "fact" ~> opt(truthValues) ~ ":" ~ opt("!") ~ (identifier|regexUrl) ~ "(" ~ individualsInFact <~ ")" ^^ {
       case truthValues ~ ":" ~ negation ~ predicateName ~ "(" ~ variableGroundings =>
-        val factTruth = 
-          if (truthValues.isDefined && truthValues.get.size == 1 ){
-          // fact [ 0.1]: votes(anna, demo)
-            if (!negation.isDefined) {
-              Some(truthValues.get(0))
-            } else {
-              Some(1.0- truthValues.get(0))
-            }
-          } else if (!truthValues.isDefined || truthValues.get.size == 0 ){
-            // fact : votes(anna, demo)
-            if (!negation.isDefined) {
-              Some(1.0)
-            } else {
-              Some(0.0)
-            }
-          } else {
-            // fact [0.1, 0.3]: votes(anna, demo)
-            // an interval fact, we will take care of it in normalizedFactTruth1 and normalizedFactTruth2
-            None
-          }
-        val normalizedFactTruth1 = if (!truthValues.isDefined || truthValues.get.size <= 1){
-          None
-        } else{
-          if (!negation.isDefined) {
-            Some(truthValues.get(0)) 
-          } else {
-            Some(1 - truthValues.get(0)) 
-          }
-        }   
-        val normalizedFactTruth2 = if (!truthValues.isDefined || truthValues.get.size <= 1){
-          None
-        } else{
-          if (!negation.isDefined) {
-            Some(truthValues.get(1)) 
-          } else {
-            Some(1 - truthValues.get(1)) 
-          }
+        createFact(truthValues, negation.isDefined, predicateName, variableGroundings)
+    }
+  }
+
+  def createFact(truthValues: Option[List[Double]], negated: Boolean, predicateName: String,
+    variableGroundings: List[Set[Individual]]): Fact = {
+    val factTruth = 
+      if (truthValues.isDefined && truthValues.get.size == 1 ){
+      // fact [ 0.1]: votes(anna, demo)
+        if (!negated) {
+          Some(truthValues.get(0))
+        } else {
+          Some(1.0- truthValues.get(0))
+        }
+      } else if (!truthValues.isDefined || truthValues.get.size == 0 ){
+        // fact : votes(anna, demo)
+        if (!negated) {
+          Some(1.0)
+        } else {
+          Some(0.0)
         }
-        Fact(predicateName, variableGroundings, factTruth, minTruthValue = normalizedFactTruth1, maxTruthValue = normalizedFactTruth2)
+      } else {
+        // fact [0.1, 0.3]: votes(anna, demo)
+        // an interval fact, we will take care of it in normalizedFactTruth1 and normalizedFactTruth2
+        None
+      }
+    val normalizedFactTruth1 = if (!truthValues.isDefined || truthValues.get.size <= 1){
+      None
+    } else{
+      if (!negated) {
+        Some(truthValues.get(0)) 
+      } else {
+        Some(1 - truthValues.get(0)) 
+      }
+    }   
+    val normalizedFactTruth2 = if (!truthValues.isDefined || truthValues.get.size <= 1){
+      None
+    } else{
+      if (!negated) {
+        Some(truthValues.get(1)) 
+      } else {
+        Some(1 - truthValues.get(1)) 
+      }
     }
+    Fact(predicateName, variableGroundings, factTruth, minTruthValue = normalizedFactTruth1, maxTruthValue = normalizedFactTruth2)
   }
 
   lazy val individualsInFact: Parser[List[Set[Individual]]] = {
@@ -418,21 +429,9 @@ object PslParser extends ParseHelper[ParsedPslFile] with ImplicitConversions {
  lazy val pslFileFragment: Parser[ParsedPslFragment] = {
     rep(pslLine) ^^ {
       case lines =>
-       val predicates = new ListBuffer[Predicate]
-       val rules = new ListBuffer[Rule]
-       val facts = new ListBuffer[Fact]
-       val classes = new HashMap[PslClass, Set[Individual]]
-       val inds = new HashSet[Individual]
-       
-       lines.map{ 
-         case p: Predicate => predicates += p 
-         case r: Rule => rules += r
-         case f: Fact => facts += f
-         case ind: Set[Individual]  => inds ++= ind
-         case c: (PslClass, Set[Individual]) => classes += c 
-         case _ => None} 
-       
-       ParsedPslFragment(classes.toMap, predicates.toList, rules.toList, facts.toList, inds.toSet)  
+       val builder = new ParsedPslFragmentBuilder
+       lines.foreach(builder += _)
+       builder.result()
     }
   }
  
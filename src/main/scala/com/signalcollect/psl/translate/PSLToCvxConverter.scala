@@ -21,6 +21,7 @@
 package com.signalcollect.psl.translate
 
 import java.io.File
+import java.io.Writer
 import com.signalcollect.admm.optimizers.OptimizableFunction
 import com.signalcollect.psl.Optimizer
 import com.signalcollect.psl.model.GroundedPredicate
@@ -33,6 +34,8 @@ import com.signalcollect.psl.Grounding
 import breeze.optimize.DiffFunction
 import breeze.linalg.DenseVector
 
+import scala.collection.mutable
+
 object PSLToCvxConverter {
 
   def toCvx(pslString: String): (String, Map[Int, GroundedPredicate]) = {
@@ -61,6 +64,53 @@ object PSLToCvxConverter {
     s"cvx_begin\nvariables ${variables.mkString(" ")}\nminimize ${functions} \nsubject to \n${subjectTo}\ncvx_end"
   }
 
+  /**
+   * Streaming version of toCvx: grounds the problem and writes the translation while the grounded rules are created.
+   * Returns the map from variable id to grounded predicate, which is needed to interpret the solution.
+   */
+  def writeCvx(pslData: ParsedPslFile, writer: Writer): Map[Int, GroundedPredicate] = {
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.groundStreaming(pslData)
+    println(s"Grounding completed: ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates, the grounded rules are translated while they are created.")
+    writeCvx(groundedRules, groundedConstraints, writer)
+    idToGpMap
+  }
+
+  /**
+   * Writes the same problem as toCvx, consuming the grounded rules one at a time.
+   * The variables have to be declared before the objective, so the objective and the hard rules are spilled
+   * to temporary files until all the variables are known. Only the ids of the variables are kept in memory.
+   */
+  def writeCvx(rules: Iterator[GroundedRule], constraints: List[GroundedConstraint], writer: Writer) {
+    val variables = new mutable.BitSet
+    val objective = new SpillFile("cvx-objective")
+    val hardRules = new SpillFile("cvx-hard-rules")
+    var firstFunction = true
+    rules.foreach { rule =>
+      rule.unboundGroundedPredicates.foreach(gp => variables += gp.id)
+      if (rule.definition.weight != Double.MaxValue) {
+        if (!firstFunction) objective.writer.write(" + ")
+        objective.writer.write(toCvxFunction(rule))
+        firstFunction = false
+      } else {
+        hardRules.writer.write(toCvxConstraint(rule))
+        hardRules.writer.write("\n")
+      }
+    }
+    constraints.foreach(_.unboundGroundedPredicates.foreach(gp => variables += gp.id))
+    writer.write("cvx_begin\nvariables")
+    variables.foreach(id => writer.write(s" x$id"))
+    writer.write("\nminimize ")
+    objective.copyTo(writer)
+    writer.write(" \nsubject to \n")
+    hardRules.copyTo(writer)
+    constraints.foreach { constraint =>
+      writer.write(toCvxConstraint(constraint))
+      writer.write("\n")
+    }
+    variables.foreach(id => writer.write(s"x$id >= 0\nx$id <= 1\n"))
+    writer.write("cvx_end")
+  }
+
   def getVariables(rules: List[GroundedRule], constraints: List[GroundedConstraint]) = {
     val variables =
       (rules ++ constraints).map(rule => rule.unboundGroundedPredicates.map(gp => "x" + gp.id))
@@ -19,9 +19,13 @@
 
 package com.signalcollect.psl.translate
 
+import java.io.BufferedWriter
 import java.io.File
+import java.io.FileInputStream
 import java.io.FileWriter
 import java.io.FileReader
+import java.io.Writer
+import java.nio.file.Files
 import com.signalcollect.admm.optimizers.OptimizableFunction
 import com.signalcollect.psl.Optimizer
 import com.signalcollect.psl.model.GroundedConstraint
@@ -42,6 +46,12 @@ import scala.util.parsing.input.CharArrayReader
 import scala.util.parsing.input.StreamReader
 import scala.util.parsing.input.Reader
 import scala.annotation.tailrec
+import scala.collection.mutable
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
+import scala.concurrent.duration._
+import scala.util.Try
 
 import scala.sys.process._
 
@@ -56,23 +66,104 @@ object PSLToLPConverter {
   }
 
   def solve(pslData: ParsedPslFile, isBinary: Boolean, inputFilename: String): Map[GroundedPredicate, Double] = {
-    val (translatedProblem, idToGpMap) = toLP(pslData, isBinary)
-    solve(translatedProblem, idToGpMap, isBinary, inputFilename)
+    solveStreaming(pslData, isBinary, inputFilename, pipeToSolver = false)
   }
 
-  def solve(translatedProblem: String, idToGpMap: Map[Int, GroundedPredicate], isBinary: Boolean, 
+  /**
+   * Grounds the problem and writes the LP file while the grounded rules are created, so neither the grounded rules
+   * nor the translated problem are ever all in memory.
+   * With pipeToSolver the LP file is a named pipe from which mosek reads while the problem is being written.
+   */
+  def solveStreaming(pslData: ParsedPslFile, isBinary: Boolean, inputFilename: String, pipeToSolver: Boolean): Map[GroundedPredicate, Double] = {
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.groundStreaming(pslData)
+    val mosekResult = runMosek(inputFilename, isBinary, pipeToSolver) {
+      writer => writeLP(groundedRules, groundedConstraints, isBinary, writer)
+    }
+    mosekResult.map { case (id, value) => (idToGpMap(id), value) }
+  }
+
+  def solve(translatedProblem: String, idToGpMap: Map[Int, GroundedPredicate], isBinary: Boolean,
       patternFilename: String = "temp-mosek-translation"): Map[GroundedPredicate, Double] = {
-    val writer = new FileWriter(s"$patternFilename.lp")
-    writer.append(translatedProblem)
-    writer.close()
-    val mosekCommand = s"mosek $patternFilename.lp"
-    val mosekOutput = mosekCommand.!!
-    val mosekResult = if (isBinary) {
+    val mosekResult = runMosek(patternFilename, isBinary, pipeToSolver = false)(_.write(translatedProblem))
+    mosekResult.map { case (id, value) => (idToGpMap(id), value) }
+  }
+
+  // How long to wait for mosek to open the named pipe before giving up.
+  val pipeOpenTimeout = 60.seconds
+
+  /**
+   * Writes the problem to $patternFilename.lp with 'writeProblem', runs mosek on it and parses the solution.
+   * With pipeToSolver the LP file is created as a named pipe, so mosek reads the problem while it is written
+   * and the problem is never stored on disk. If the pipe cannot be created or a regular file with the same name
+   * already exists, a normal file is used.
+   */
+  def runMosek(patternFilename: String, isBinary: Boolean, pipeToSolver: Boolean)(writeProblem: Writer => Unit): Map[Int, Double] = {
+    val lpFile = new File(s"$patternFilename.lp")
+    val piped = pipeToSolver && !Files.isRegularFile(lpFile.toPath) && {
+      // Only a named pipe left over by an earlier run is replaced.
+      lpFile.delete
+      Try(Seq("mkfifo", lpFile.getPath).! == 0).getOrElse(false)
+    }
+    if (pipeToSolver && !piped) {
+      println(s"[Warning]: could not create a named pipe for mosek at $lpFile, the setting is being ignored.")
+    }
+    val mosekCommand = Seq("mosek", lpFile.getPath)
+    if (piped) {
+      val mosek = mosekCommand.run(ProcessLogger(_ => (), line => println(s"[mosek]: $line")))
+      try {
+        val writer = openPipe(lpFile, mosek)
+        try {
+          writeProblem(writer)
+        } finally {
+          writer.close
+        }
+        val exitValue = mosek.exitValue
+        if (exitValue != 0) {
+          throw new Exception(s"mosek exited with code $exitValue.")
+        }
+      } finally {
+        mosek.destroy
+        lpFile.delete
+      }
+    } else {
+      val writer = new BufferedWriter(new FileWriter(lpFile))
+      try {
+        writeProblem(writer)
+      } finally {
+        writer.close
+      }
+      val mosekOutput = mosekCommand.!!
+    }
+    if (isBinary) {
       LpResultParser.parse(new File(s"$patternFilename.int"))
     } else {
       LpResultParser.parse(new File(s"$patternFilename.sol"))
     }
-    mosekResult.map { case (id, value) => (idToGpMap(id), value) }
+  }
+
+  /**
+   * Opens the write end of the named pipe. Opening blocks until mosek opens the pipe for reading,
+   * so it is done on another thread and abandoned if mosek exits first or does not open it in time.
+   */
+  private[this] def openPipe(pipe: File, mosek: Process): Writer = {
+    val exited = Future(mosek.exitValue)
+    val opened = Future(new BufferedWriter(new FileWriter(pipe)))
+    val deadline = pipeOpenTimeout.fromNow
+    while (!opened.isCompleted && !exited.isCompleted && deadline.hasTimeLeft) {
+      Try(Await.ready(opened, 100.milliseconds))
+    }
+    if (opened.isCompleted) {
+      Await.result(opened, Duration.Zero)
+    } else {
+      // Unblock the pending open by opening the read end ourselves.
+      Try(new FileInputStream(pipe).close)
+      opened.foreach(_.close)
+      val reason = exited.value match {
+        case Some(exitValue) => s"mosek exited with ${exitValue.map(v => s"code $v").getOrElse("an error")} before reading the problem."
+        case None => s"mosek did not start reading the problem within $pipeOpenTimeout."
+      }
+      throw new Exception(reason)
+    }
   }
 
   def printSelectedResults(mosekResult: Map[GroundedPredicate, Double], queryList: List[String] = List.empty, outputType: String = "inference",
@@ -135,6 +226,63 @@ object PSLToLPConverter {
     }
   }
 
+  /**
+   * Streaming version of toLP: grounds the problem and writes the translation while the grounded rules are created.
+   * Returns the map from variable id to grounded predicate, which is needed to interpret the solution.
+   */
+  def writeLP(pslData: ParsedPslFile, isBinary: Boolean, writer: Writer): Map[Int, GroundedPredicate] = {
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.groundStreaming(pslData)
+    println(s"Grounding completed: ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates, the grounded rules are translated while they are created.")
+    writeLP(groundedRules, groundedConstraints, isBinary, writer)
+    idToGpMap
+  }
+
+  /**
+   * Writes the same problem as toLP, with the soft rules in the objective consumed one at a time.
+   * The hard rules belong in the constraints section after the objective, they are spilled to a temporary file
+   * until the objective is complete. Only the ids of the variables are kept in memory.
+   */
+  def writeLP(rules: Iterator[GroundedRule], constraints: List[GroundedConstraint], isBinary: Boolean, writer: Writer) {
+    val variables = new mutable.BitSet
+    val hardRules = new SpillFile("lp-hard-rules")
+    writer.write("\nminimize\nobj:")
+    rules.foreach { rule =>
+      rule.unboundGroundedPredicates.foreach(gp => variables += gp.id)
+      if (rule.definition.weight != Double.MaxValue) {
+        writer.write(" ")
+        writer.write(toLPFunction(rule))
+      } else {
+        hardRules.writer.write(toLPConstraint(rule))
+        hardRules.writer.write("\n")
+      }
+    }
+    writer.write(" \nsubject to\n")
+    hardRules.copyTo(writer)
+    constraints.foreach { constraint =>
+      constraint.unboundGroundedPredicates.foreach(gp => variables += gp.id)
+      writer.write(toLPConstraint(constraint))
+      writer.write("\n")
+    }
+    if (isBinary) {
+      writer.write("binary\n")
+      var first = true
+      variables.foreach { id =>
+        if (!first) writer.write(" ")
+        writer.write(s"x$id")
+        first = false
+      }
+    } else {
+      writer.write("bounds\n")
+      var first = true
+      variables.foreach { id =>
+        if (!first) writer.write("\n")
+        writer.write(s" 0 <= x$id <= 1")
+        first = false
+      }
+    }
+    writer.write("\nend")
+  }
+
   def getVariables(rules: List[GroundedRule], constraints: List[GroundedConstraint]) = {
     val variables =
       (rules ++ constraints).map(rule => rule.unboundGroundedPredicates.map(gp => "x" + gp.id))
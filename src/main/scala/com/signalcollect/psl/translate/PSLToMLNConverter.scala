@@ -23,11 +23,13 @@ package com.signalcollect.psl.translate
 import java.io.File
 import java.io.FileWriter
 import java.io.FileReader
+import java.io.Writer
 import com.signalcollect.admm.optimizers.OptimizableFunction
 import com.signalcollect.psl.Optimizer
 import com.signalcollect.psl.model.GroundedPredicate
 import com.signalcollect.psl.model.GroundedConstraint
 import com.signalcollect.psl.model.GroundedRule
+import com.signalcollect.psl.model.Individual
 import com.signalcollect.psl.parser.ParsedPslFile
 import com.signalcollect.psl.parser.PslParser
 import com.signalcollect.psl.Grounding
@@ -41,6 +43,7 @@ import scala.util.parsing.input.CharArrayReader
 import scala.util.parsing.input.StreamReader
 import scala.util.parsing.input.Reader
 import scala.annotation.tailrec
+import scala.collection.mutable
 
 import scala.sys.process._
 
@@ -77,6 +80,60 @@ object PSLToMLNConverter {
     (evidence, classes + predicates + rules, idToGpMap)
   }
 
+  /**
+   * Streaming version of toMLN, writes the evidence followed by the rules, like the concatenation of the two strings.
+   * The grounded rules are translated while they are created and spilled to a temporary file, because the evidence
+   * with all the individuals that appear in them has to be written first. Only the individuals are kept in memory.
+   * The soft rule weights are normalized by the largest weight of the grounded soft rules, like in toMLN.
+   * That weight is only known once all the grounded rules have been seen, so the rules are spilled with their
+   * weights and normalized while they are copied.
+   */
+  def writeMLN(pslData: ParsedPslFile, writer: Writer): Map[Int, GroundedPredicate] = {
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.groundStreaming(pslData)
+    println(s"Grounding completed: ${groundedConstraints.size} constraints and ${idToGpMap.keys.size} grounded predicates, the grounded rules are translated while they are created.")
+    writeMLN(pslData, groundedRules, groundedConstraints, writer)
+    idToGpMap
+  }
+
+  def writeMLN(pslData: ParsedPslFile, groundedRules: Iterator[GroundedRule], groundedConstraints: List[GroundedConstraint], writer: Writer) {
+    var maxWeight = Double.NegativeInfinity
+    val individuals = new mutable.HashSet[Individual]
+    // Soft rules are spilled with a leading 'S' and their weight divided by 1, hard rules with a leading 'H'.
+    val rules = new SpillFile("mln-rules")
+    groundedRules.foreach { rule =>
+      rule.allGroundedPredicates.foreach(individuals ++= _.groundings)
+      val isSoft = rule.definition.weight != Double.MaxValue
+      if (isSoft) {
+        maxWeight = math.max(maxWeight, rule.definition.weight)
+      }
+      toMLNRule(rule, 1.0).foreach { translated =>
+        rules.writer.write(if (isSoft) "S" else "H")
+        rules.writer.write(translated)
+        rules.writer.write("\n")
+      }
+    }
+    groundedConstraints.foreach(_.allGroundedPredicates.foreach(individuals ++= _.groundings))
+
+    // Write all possible individuals as facts of the predicate Variable(v) in evidence.db
+    writer.write(individuals.map(i => s"""Individual(\"$i\")""").mkString("\n"))
+    // Write all necessary predicates, all with the class individual as arguments.
+    writer.write("\nIndividual(individual)\n")
+    pslData.predicates.foreach { p =>
+      val arguments = p.classes.map(_ => "individual").mkString("(", ", ", ")")
+      writer.write(s"${p.name}${arguments}\n")
+    }
+    // Write all possible grounded rules in CNF form.
+    rules.copyLinesTo(writer) { line =>
+      if (line.charAt(0) == 'S') {
+        val separator = line.indexOf(' ')
+        s"${line.substring(1, separator).toDouble / maxWeight}${line.substring(separator)}"
+      } else {
+        line.substring(1)
+      }
+    }
+    groundedConstraints.flatMap(toMLNConstraint(_)).foreach(c => writer.write(s"$c\n"))
+  }
+
   def getIndividuals(rules: List[GroundedRule], constraints: List[GroundedConstraint]) = {
     (rules ++ constraints).flatMap(rule => rule.allGroundedPredicates.flatMap(_.groundings).toSet).toSet
   }
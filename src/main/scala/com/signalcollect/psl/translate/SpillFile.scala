@@ -0,0 +1,80 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl.translate
+
+import java.io.BufferedReader
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.InputStreamReader
+import java.io.OutputStreamWriter
+import java.io.Writer
+
+/**
+ * Temporary file for the parts of a translation that have to be written after a part which is only complete
+ * once all the grounded rules have been seen, e.g. the hard rules that go in the constraints section of an LP file.
+ * Keeps the memory bounded while the grounded rules are streamed.
+ */
+final class SpillFile(prefix: String) {
+  private[this] val file = File.createTempFile(prefix, ".tmp")
+  file.deleteOnExit
+
+  val writer: Writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))
+
+  /**
+   * Appends everything that was written so far to 'out' and deletes the file.
+   */
+  def copyTo(out: Writer) {
+    writer.close
+    val reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))
+    try {
+      val buffer = new Array[Char](1 << 16)
+      var read = reader.read(buffer)
+      while (read >= 0) {
+        out.write(buffer, 0, read)
+        read = reader.read(buffer)
+      }
+    } finally {
+      reader.close
+      file.delete
+    }
+  }
+
+  /**
+   * Appends every line that was written so far to 'out', after passing it through 'transform', and deletes the file.
+   */
+  def copyLinesTo(out: Writer)(transform: String => String) {
+    writer.close
+    val reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))
+    try {
+      var line = reader.readLine
+      while (line != null) {
+        out.write(transform(line))
+        out.write("\n")
+        line = reader.readLine
+      }
+    } finally {
+      reader.close
+      file.delete
+    }
+  }
+}
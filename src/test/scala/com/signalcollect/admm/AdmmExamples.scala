@@ -0,0 +1,45 @@
+/*
+ * NOTICE: The original file was changed by Philip Stutz and Sara Magliacane.
+ * 
+ * This file is part of the PSL software.
+ * Copyright 2011-2013 University of Maryland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.signalcollect.admm
+
+import com.signalcollect.psl.InferencerConfig
+
+object AdmmExamples {
+
+  val movies = """
+	predicate: likes(_, _)
+	predicate: playsIn(_, _)
+
+	rule [weight = 1]: likes(PERSON, MOVIE) && playsIn(ACTOR, MOVIE) => likes(PERSON, ACTOR)
+	rule [weight = 1]: likes(PERSON-A, A) && likes(PERSON-B, A) && likes(PERSON-B, B) => likes(PERSON-A, B)
+
+	fact: playsIn(john-travolta, pulp-fiction)
+	fact: playsIn(john-travolta, grease)
+
+	fact [truthValue = 0.9]: likes(sara, pulp-fiction)
+	fact [truthValue = 0.8]: likes(sara, star-wars)
+
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	fact [truthValue = 0.7]: likes(philip, grease)
+	"""
+
+  // Tight convergence without lazy signalling, so the solutions of different configurations can be compared.
+  val preciseConfig = InferencerConfig(computeObjectiveValueOfSolution = true, absoluteEpsilon = 10e-09, relativeEpsilon = 10e-04, lazyThreshold = None)
+}
@@ -21,13 +21,20 @@ package com.signalcollect.admm
 import org.scalatest.FlatSpec
 import org.scalatest.Matchers
 
+import com.signalcollect.admm.graph.ConsensusVertex
+import com.signalcollect.admm.graph.DummyEdge
+import com.signalcollect.admm.graph.SubproblemVertex
+import com.signalcollect.psl.Inferencer
 import com.signalcollect.psl.Optimizer
+import com.signalcollect.util.SolutionComparison
 import com.signalcollect.util.TestAnnouncements
 
 /**
  *  weight * coeffs^T * x
  */
-class AdmmSpec extends FlatSpec with Matchers with TestAnnouncements {
+class AdmmSpec extends FlatSpec with Matchers with TestAnnouncements with SolutionComparison {
+
+  import AdmmExamples._
 
   "Admm" should "correctly construct a network of nodes" in {
     val z = Array(0.0, 0.0)
@@ -96,4 +103,51 @@ class AdmmSpec extends FlatSpec with Matchers with TestAnnouncements {
 //   List(hlt, constraint21, constraint22)) , stepSize)
    }
 
+  it should "keep the residual terms of the consensus vertices up to date in collect" in {
+    val votes = Array(0.2, 0.9, 1.4)
+    val vertex = new ConsensusVertex(1, 0.0, true)
+    for (i <- votes.indices) {
+      vertex.addEdge(new DummyEdge(-(i + 1)), null)
+      vertex.deliverSignalWithSourceId(votes(i), -(i + 1), null)
+    }
+    vertex.setState(vertex.collect)
+    val consensus = vertex.consensus
+    consensus should be(0.8333 +- 1e-4)
+    val primal = PrimalAggregator.extract(vertex)
+    primal.sumOfSquaredErrors should be(votes.map(v => (consensus - v) * (consensus - v)).sum +- 1e-12)
+    primal.sumOfSquaredLocalVars should be(votes.map(v => v * v).sum +- 1e-12)
+    primal.sumOfSquaredConsensus should be(consensus * consensus * 3 +- 1e-12)
+    primal.numberOfLocalVars should be(3)
+    ResidualAggregator.extract(vertex) should be((primal, DualAggregator.extract(vertex)))
+  }
+
+  it should "signal each consensus variable of a subproblem once and reuse its consensus buffer" in {
+    SubproblemVertex.firstOccurrences(Array(4, 2, 4, 7, 2)) should be(Array(0, 1, 3))
+    val f = Optimizer.linearLoss(1.0, Map(1 -> 0.0, 2 -> 0.0), 1.0, Array(1.0, -1.0, 0.5), Array(1, 2, 1), 1)
+    val vertex = new SubproblemVertex(-1, f)
+    vertex.deliverSignalWithSourceId(0.3, 1, null)
+    vertex.deliverSignalWithSourceId(0.7, 2, null)
+    val assignments = vertex.consensusAssignments
+    assignments should be(Array(0.3, 0.7, 0.3))
+    vertex.deliverSignalWithSourceId(0.1, 2, null)
+    vertex.consensusAssignments should be theSameInstanceAs (assignments)
+    assignments should be(Array(0.3, 0.1, 0.3))
+  }
+
+  "Blocks of subproblems" should "converge to the same solution as one vertex per function" in {
+    val plainResults = Inferencer.runInferenceFromString(movies, config = preciseConfig)
+    val blockResults = Inferencer.runInferenceFromString(movies, config = preciseConfig.copy(subproblemBlockSize = 4, retainMultipliers = true))
+    assertSameSolution(plainResults, blockResults)
+    blockResults.multipliers.size should be > 0
+  }
+
+  "Bulk graph loading" should "converge to the same solution as adding the edges one by one" in {
+    val plainResults = Inferencer.runInferenceFromString(movies, config = preciseConfig)
+    val bulkResults = Inferencer.runInferenceFromString(movies, config = preciseConfig.copy(bulkGraphLoading = true))
+    val bulkBlockResults = Inferencer.runInferenceFromString(movies,
+      config = preciseConfig.copy(bulkGraphLoading = true, subproblemBlockSize = 3, graphPartitions = Some(4)))
+    assertSameSolution(plainResults, bulkResults)
+    assertSameSolution(plainResults, bulkBlockResults)
+  }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * NOTICE: The original file was changed by Philip Stutz and Sara Magliacane.
+ * 
+ * This file is part of the PSL software.
+ * Copyright 2011-2013 University of Maryland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.signalcollect.admm
+
+package com.signalcollect.admm
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.Inferencer
+import com.signalcollect.psl.InferencerConfig
+import com.signalcollect.util.TestAnnouncements
+
+class FactorGraphPartitionerSpec extends FlatSpec with Matchers with TestAnnouncements {
+
+  // Two clusters of subproblems that do not share any consensus variable.
+  val subproblemIds = Array(-1, -2, -3, -4, -5, -6)
+  val consensusIds = Array(Array(1, 2), Array(10, 11), Array(2, 3), Array(11, 12), Array(1, 3), Array(10, 12))
+
+  "FactorGraphPartitioner" should "place subproblems with their consensus variables" in {
+    val partitioning = FactorGraphPartitioner.partition(subproblemIds, consensusIds, 2)
+    partitioning.edges should be(12)
+    partitioning.edgeCut should be(0)
+    for ((subproblemId, variables) <- subproblemIds.zip(consensusIds); variable <- variables) {
+      partitioning.part(variable) should be(partitioning.part(subproblemId))
+    }
+    partitioning.part(1) should not be (partitioning.part(10))
+  }
+
+  it should "map the vertices it does not know by hash" in {
+    val partitioning = FactorGraphPartitioner.partition(subproblemIds, consensusIds, 2)
+    partitioning.part(1000) should be(FactorGraphPartitioner.hashPart(1000, 2))
+    partitioning.part(-1000) should be(FactorGraphPartitioner.hashPart(-1000, 2))
+  }
+
+  it should "map contiguous ranges of parts to the workers" in {
+    val partitioning = FactorGraphPartitioner.partition(subproblemIds, consensusIds, 8)
+    val mapper = PartitionedMapperFactory(partitioning).createInstance(numberOfNodes = 2, workersPerNode = 2)
+    for (id <- subproblemIds ++ consensusIds.flatten) {
+      mapper.getWorkerIdForVertexId(id) should be(partitioning.part(id) / 2)
+    }
+  }
+
+  it should "not change the solution of the inference" in {
+    val example = """
+	predicate: likes(_, _)
+	predicate: playsIn(_, _)
+
+	rule [weight = 1]: likes(PERSON, MOVIE) && playsIn(ACTOR, MOVIE) => likes(PERSON, ACTOR)
+
+	fact: playsIn(john-travolta, pulp-fiction)
+	fact [truthValue = 0.9]: likes(sara, pulp-fiction)
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	"""
+    val config = InferencerConfig(absoluteEpsilon = 10e-09, relativeEpsilon = 10e-04, lazyThreshold = None)
+    val hashed = Inferencer.runInferenceFromString(example, config = config)
+    val partitioned = Inferencer.runInferenceFromString(example, config = config.copy(graphPartitions = Some(4)))
+    hashed.solution.results.foreach {
+      case (id, truthValue) =>
+        partitioned.solution.results(id) should be(truthValue +- 0.01)
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * NOTICE: The original file was changed by Philip Stutz and Sara Magliacane.
+ * 
+ * This file is part of the PSL software.
+ * Copyright 2011-2013 University of Maryland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.signalcollect.admm
+
+import java.util.concurrent.ConcurrentHashMap
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.Grounding
+import com.signalcollect.psl.Inferencer
+import com.signalcollect.psl.InferencerConfig
+import com.signalcollect.psl.parser.PslParser
+import com.signalcollect.util.SolutionComparison
+import com.signalcollect.util.TestAnnouncements
+
+class SharedMemoryWolfSpec extends FlatSpec with Matchers with TestAnnouncements with SolutionComparison {
+
+  import AdmmExamples._
+
+  "The shared-memory backend" should "find the same solution as the Signal/Collect backend" in {
+    val graphResults = Inferencer.runInferenceFromString(movies, config = preciseConfig)
+    val flatResults = Inferencer.runInferenceFromString(movies, config = preciseConfig.copy(sharedMemoryBackend = true))
+    assertSameSolution(graphResults, flatResults)
+  }
+
+  "Adaptive step sizes" should "adapt a step size that is too small and converge to the same solution on both backends" in {
+    val plainResults = Inferencer.runInferenceFromString(movies, config = preciseConfig)
+    // With a tiny step size the primal residual dominates, so the step size has to grow.
+    val adaptiveConfig = preciseConfig.copy(adaptiveStepSize = true, stepSize = 0.01, globalConvergenceDetection = Some(2))
+    for (backendConfig <- List(adaptiveConfig, adaptiveConfig.copy(sharedMemoryBackend = true))) {
+      val adaptiveResults = Inferencer.runInferenceFromString(movies, config = backendConfig)
+      assertSameSolution(plainResults, adaptiveResults)
+      val adaptive = adaptiveResults.solution.convergence.get.asInstanceOf[AdaptiveStepSize]
+      adaptive.stepSizeChanges should be > 0
+      adaptive.adaptedStepSize should be > adaptiveConfig.stepSize
+    }
+  }
+
+  "Over-relaxation" should "change the number of iterations and converge to the same solution on both backends" in {
+    val config = preciseConfig.copy(globalConvergenceDetection = Some(2))
+    for (backendConfig <- List(config, config.copy(sharedMemoryBackend = true))) {
+      val plainResults = Inferencer.runInferenceFromString(movies, config = backendConfig)
+      val relaxedResults = Inferencer.runInferenceFromString(movies, config = backendConfig.copy(overRelaxation = 1.6))
+      assertSameSolution(plainResults, relaxedResults)
+      relaxedResults.solution.convergence.get.collectStepsSoFar should not be (plainResults.solution.convergence.get.collectStepsSoFar)
+    }
+  }
+
+  "The shared-memory backend" should "respect the iteration limit" in {
+    val config = InferencerConfig(maxIterations = 3, sharedMemoryBackend = true)
+    val results = Inferencer.runInferenceFromString(movies, config = config)
+    results.solution.stats should be(None)
+    results.solution.results.size should be > 0
+  }
+
+  "Both backends" should "stream the results to a sink like they return them" in {
+    val config = InferencerConfig(lazyThreshold = None)
+    val (groundedRules, groundedConstraints, _) = Grounding.ground(PslParser.parse(movies), config)
+    def functions = groundedRules.flatMap(_.createOptimizableFunction(config.stepSize)) ++
+      groundedConstraints.flatMap(_.createOptimizableFunction(config.stepSize))
+    for (wolfConfig <- List(config.getWolfConfig, config.copy(sharedMemoryBackend = true).getWolfConfig)) {
+      val returned = Wolf.solveProblem(functions, None, wolfConfig).results
+      val streamed = new ConcurrentHashMap[Int, Double]
+      val sink = new ConsensusSink {
+        def put(variableId: Int, consensus: Double) {
+          streamed.put(variableId, consensus)
+        }
+      }
+      Wolf.solveProblem(functions, None, wolfConfig, resultSink = Some(sink)).results.size should be(0)
+      streamed.size should be(returned.size)
+      returned.foreach {
+        case (id, truthValue) =>
+          streamed.get(id) should be(truthValue +- 0.02)
+      }
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package com.signalcollect.psl
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.util.TestAnnouncements
+
+class FactorizationCacheSpec extends FlatSpec with Matchers with TestAnnouncements {
+
+  val coeffs = Array(0.3, -1.0, 0.4, 2.0)
+
+  "FactorizationCache" should "return the Cholesky factor of the term matrix" in {
+    val cache = new FactorizationCache(10)
+    val weight = 0.5
+    val stepSize = 2.0
+    val l = cache.getL(coeffs, weight, stepSize)
+    for (i <- 0 until coeffs.length; j <- 0 until coeffs.length) {
+      val product = (0 until coeffs.length).map(k => l.getQuick(i, k) * l.getQuick(j, k)).sum
+      val expected = 2 * weight * coeffs(i) * coeffs(j) + (if (i == j) stepSize else 0.0)
+      product should be(expected +- 1e-10)
+    }
+  }
+
+  it should "reuse factors by structure and rekey them when the step size changes" in {
+    val cache = new FactorizationCache(10)
+    val l = cache.getL(coeffs, 1.0, 1.0)
+    cache.getL(coeffs.clone, 1.0, 1.0) should be theSameInstanceAs (l)
+    cache.getL(coeffs, 1.0, 1.5) should not be theSameInstanceAs(l)
+    cache.getL(coeffs, 2.0, 1.0) should not be theSameInstanceAs(l)
+    cache.size should be(3)
+  }
+
+  it should "evict the least recently used factors" in {
+    val cache = new FactorizationCache(2)
+    val first = cache.getL(coeffs, 1.0, 1.0)
+    val second = cache.getL(coeffs, 1.0, 2.0)
+    cache.getL(coeffs, 1.0, 1.0) should be theSameInstanceAs (first)
+    cache.getL(coeffs, 1.0, 3.0)
+    cache.size should be(2)
+    cache.getL(coeffs, 1.0, 1.0) should be theSameInstanceAs (first)
+    cache.getL(coeffs, 1.0, 2.0) should not be theSameInstanceAs(second)
+  }
+
+  it should "stay bounded when it is used concurrently" in {
+    val cache = new FactorizationCache(16)
+    (1 to 1000).par.foreach { i =>
+      val stepSize = 1.0 + i % 40
+      val l = cache.getL(coeffs, 1.0, stepSize)
+      l.getQuick(0, 0) should be(math.sqrt(2 * coeffs(0) * coeffs(0) + stepSize) +- 1e-10)
+    }
+    cache.size should be <= 16
+  }
+
+}
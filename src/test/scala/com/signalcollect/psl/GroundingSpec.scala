@@ -24,15 +24,17 @@ import org.scalatest.Finders
 import org.scalatest.FlatSpec
 import org.scalatest.Matchers
 
+import com.signalcollect.util.SolutionComparison
 import com.signalcollect.util.TestAnnouncements
 
 import com.signalcollect.psl.model.Functional
 import com.signalcollect.psl.model.Individual
+import com.signalcollect.psl.model.PslClass
 import com.signalcollect.psl.model.Symmetric
 import com.signalcollect.psl.model.Variable
 import com.signalcollect.psl.parser.PslParser
 
-class GroundingSpec extends FlatSpec with Matchers with TestAnnouncements {
+class GroundingSpec extends FlatSpec with Matchers with TestAnnouncements with SolutionComparison {
 
   val anna = Individual("anna")
   val bob = Individual("bob")
@@ -248,4 +250,212 @@ class GroundingSpec extends FlatSpec with Matchers with TestAnnouncements {
     //TODO: The commented out checks above sometimes fails on Travis, but not from within Eclipse.
   }
 
+  it should "generate the same bindings with joins if there are no trivially satisfying facts" in {
+    val pslData = PslParser.parse("""
+        predicate: 	votes(_,_)
+        predicate: 	idol( _, _)
+        rule: votes(A,P) && idol(B,A)  => votes(B,P)
+        fact [truthValue = 0.5]: votes(anna, democrats)
+        fact [truthValue = 0.666]: votes(bob, republicans)
+	""")
+    val individualsMap = pslData.individualsByClassAndCardinality.map { case ((k, card), v) => (k.id, card) -> v }
+    val rule = pslData.rulesWithPredicates(0)
+    val bindings = Grounding.generateBindings(rule.variables, individualsMap)
+    val joinBindings = JoinGrounding.generateBindings(rule, rule.variables, individualsMap, FactIndex.fromFacts(pslData.facts))
+    joinBindings.toSet should be(bindings.toSet)
+    joinBindings.size should be(bindings.size)
+  }
+
+  it should "skip the bindings that facts trivially satisfy, without changing the solution" in {
+    val pslString = """
+        predicate: 	votes(_,_)
+        predicate: 	idol( _, _)
+        rule [weight = 0.5]: votes(A,P) && idol(B,A)  => votes(B,P)
+        fact [truthValue = 0]: idol(bob, anna)
+        fact [truthValue = 0]: idol(anna, bob)
+        fact [truthValue = 0.8]: idol(carl, anna)
+        fact [truthValue = 1]: votes(carl, democrats)
+        fact [truthValue = 0.5]: votes(anna, democrats)
+	"""
+    val pslData = PslParser.parse(pslString)
+    val individualsMap = pslData.individualsByClassAndCardinality.map { case ((k, card), v) => (k.id, card) -> v }
+    val rule = pslData.rulesWithPredicates(0)
+    val bindings = Grounding.generateBindings(rule.variables, individualsMap)
+    val joinBindings = JoinGrounding.generateBindings(rule, rule.variables, individualsMap, FactIndex.fromFacts(pslData.facts))
+    joinBindings.size should be < bindings.size
+    joinBindings.toSet.subsetOf(bindings.toSet) should be(true)
+    joinBindings.exists(b => b("B") == bob && b("A") == anna) should be(false)
+
+    val config = InferencerConfig(computeObjectiveValueOfSolution = true, lazyThreshold = None)
+    val (joined, cartesian) = inferWithBoth(pslString, config.copy(joinBasedGrounding = true), config)
+    joined.objectiveFun.get should be(cartesian.objectiveFun.get +- 0.02)
+    // The grounded predicates that only appear in trivially satisfied grounded rules are not created.
+    joined.gpIndex.keySet.subsetOf(cartesian.gpIndex.keySet) should be(true)
+    joined.gpIndex.contains(("idol", List("bob", "anna"))) should be(false)
+  }
+
+  it should "create the same grounded rules and solution when streaming" in {
+    val pslString = """
+        predicate: 	votes(_,_)
+        predicate: 	idol( _, _)
+        rule [weight = 0.5]: votes(A,P) && idol(B,A)  => votes(B,P)
+        rule [weight = 0.3]: idol(A,B) => !idol(B,A)
+        fact [truthValue = 0.8]: idol(carl, anna)
+        fact [truthValue = 1]: votes(carl, democrats)
+        fact [truthValue = 0.5]: votes(anna, democrats)
+	"""
+    val pslData = PslParser.parse(pslString)
+    val (groundedRules, _, _) = Grounding.ground(pslData)
+    val (streamedRules, _, _) = Grounding.groundStreaming(pslData, InferencerConfig(streamingGrounding = true))
+    streamedRules.map(r => WarmStart.key(r)).toSet should be(groundedRules.map(r => WarmStart.key(r)).toSet)
+
+    val config = InferencerConfig(lazyThreshold = None)
+    val (_, streamed) = inferWithBoth(pslString, config, config.copy(streamingGrounding = true))
+    streamed.numGroundedRules should be(Some(groundedRules.size))
+  }
+
+  it should "look up grounded predicates in the interned index like in the map" in {
+    val pslData = PslParser.parse("""
+        predicate[Symmetric]: 	friend( _, _)
+        predicate: 	votes(_,_)
+        rule: votes(A,P) && friend(B,A)  => votes(B,P)
+        fact [truthValue = 0.5]: votes(anna, democrats)
+        fact: friend(bob, anna)
+	""")
+    val individualsMap = pslData.individualsByClassAndCardinality.map { case ((k, card), v) => (k.id, card) -> v }
+    val groundedPredicates = Grounding.createGroundedPredicates(pslData.rulesWithPredicates, pslData.predicates, pslData.facts, individualsMap)
+    val index = new GroundedPredicateIndex(groundedPredicates)
+    index.size should be(groundedPredicates.size)
+    groundedPredicates.foreach {
+      case ((name, groundings), gp) =>
+        index.get(name, groundings) should be(Some(gp))
+        index.get(name, groundings.reverse) should be(Grounding.getGroundedPredicate(groundedPredicates, (name, groundings.reverse)))
+    }
+    index.get("friend", List(anna, bob)) should be(index.get("friend", List(bob, anna)))
+    index.get("votes", List(anna, Individual("nobody"))) should be(None)
+    index.get("likes", List(anna, bob)) should be(None)
+    index.get("votes", List(anna, demo, bob)) should be(None)
+    index.groundedPredicates.toSet should be(groundedPredicates.values.toSet)
+  }
+
+  it should "load a cached grounding that gives the same solution" in {
+    val pslString = """
+        predicate: 	votes(_,_)
+        predicate [Functional]: 	idol( _, _)
+        rule [weight = 0.5]: votes(A,P) && idol(B,A)  => votes(B,P)
+        rule [weight = 0.3, distanceMeasure = linear]: idol(A,B) => !idol(B,A)
+        fact [truthValue = 0.8]: idol(carl, anna)
+        fact [truthValue = 1]: votes(carl, democrats)
+        fact [truthValue = 0.5]: votes(anna, democrats)
+	"""
+    val directory = java.nio.file.Files.createTempDirectory("grounding-cache").toFile
+    val pslFile = new java.io.File(directory, "votes.psl")
+    val writer = new java.io.PrintWriter(pslFile)
+    writer.write(pslString)
+    writer.close
+
+    val config = InferencerConfig(lazyThreshold = None, groundingCacheDirectory = Some(directory.getAbsolutePath))
+    val cacheFile = GroundingCache.cacheFile(directory, List(pslFile), config)
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.ground(PslParser.parse(pslString), config)
+    GroundingCache.write(cacheFile, groundedRules, groundedConstraints, idToGpMap)
+    val (cachedRules, cachedConstraints, cachedIdToGpMap) = GroundingCache.read(cacheFile)
+    cachedIdToGpMap should be(idToGpMap)
+    cachedRules.map(r => WarmStart.key(r)).toSet should be(groundedRules.map(r => WarmStart.key(r)).toSet)
+    cachedConstraints.map(c => (c.id, c.property, c.groundedPredicates)) should be(groundedConstraints.map(c => (c.id, c.property, c.groundedPredicates)))
+
+    val materialized = Inferencer.runInferenceFromString(pslString, config = config.copy(groundingCacheDirectory = None))
+    val cached = Inferencer.runInferenceFromFile(pslFile, config = config)
+    assertSameTruthValues(materialized, cached)
+    cacheFile.delete
+    pslFile.delete
+    directory.delete
+  }
+
+  it should "ground the files again if the cached grounding is truncated" in {
+    val pslString = """
+        predicate: 	votes(_,_)
+        rule [weight = 0.5]: votes(A,P) => !votes(A,P)
+        fact [truthValue = 1]: votes(carl, democrats)
+        individuals: anna
+	"""
+    val directory = java.nio.file.Files.createTempDirectory("grounding-cache").toFile
+    val pslFile = new java.io.File(directory, "votes.psl")
+    val writer = new java.io.PrintWriter(pslFile)
+    writer.write(pslString)
+    writer.close
+
+    val config = InferencerConfig(lazyThreshold = None, groundingCacheDirectory = Some(directory.getAbsolutePath))
+    val cacheFile = GroundingCache.cacheFile(directory, List(pslFile), config)
+    val truncated = new java.io.FileOutputStream(cacheFile)
+    truncated.write(Array[Byte](0x46, 0x4f, 0x58, 0x47, 0, 0, 0, 1, 0, 0))
+    truncated.close
+
+    GroundingCache.tryRead(cacheFile) should be(None)
+    cacheFile.exists should be(false)
+    val result = Inferencer.runInferenceFromFile(pslFile, config = config)
+    result.idToGpMap.size should be > 0
+    GroundingCache.tryRead(cacheFile).map(_._3) should be(Some(result.idToGpMap))
+    directory.listFiles.map(_.getName).filter(_.endsWith(".tmp")) should be(empty)
+    cacheFile.delete
+    pslFile.delete
+    directory.delete
+  }
+
+  it should "only ground the constraints of predicate groundings in rules or facts if they are fact driven" in {
+    val pslString = """
+        predicate[PartialFunctional]: 	votes(_,_)
+        predicate[Symmetric]: 	friend( _, _)
+        rule [weight = 0.5]: friend(A, B) && votes(A, democrats) => votes(B, democrats)
+        fact [truthValue = 0.8]: votes(anna, democrats)
+        fact [truthValue = 0.9]: friend(bob, anna)
+        fact [truthValue = 0.7]: friend(anna, carl)
+	"""
+    val pslData = PslParser.parse(pslString)
+    val config = InferencerConfig(lazyThreshold = None, removeSymmetricConstraints = false)
+    val factDrivenConfig = config.copy(factDrivenConstraintGrounding = true)
+    val (_, allConstraints, allGps) = Grounding.ground(pslData, config)
+    val (_, factDrivenConstraints, factDrivenGps) = Grounding.ground(pslData, factDrivenConfig)
+    factDrivenGps.size should be < allGps.size
+    factDrivenConstraints.size should be <= allConstraints.size
+    factDrivenGps.values.filter(_.definition.name == "votes").foreach(_.groundings(1).name should be("democrats"))
+
+    // The fact driven grounding creates fewer grounded predicates, so compare on those.
+    inferWithBoth(pslString, factDrivenConfig, config)
+  }
+
+  it should "create the set individuals on demand like the eager enumeration" in {
+    val setClass = PslClass("symptom", true)
+    val symptoms = Set("cough", "fever", "headache", "nausea", "rash").map(Individual(_))
+    for (size <- 0 to 6) {
+      val eager = symptoms.subsets(size).map(subset => Individual(subset.toList.sortBy(_.name).toSet.toString, Set(setClass))).toSet
+      val subsets = new SubsetIndividuals(symptoms, size, setClass)
+      subsets.size should be(eager.size)
+      subsets.isEmpty should be(eager.isEmpty)
+      subsets.iterator.toSet should be(eager)
+      eager.foreach { individual =>
+        subsets.contains(individual) should be(true)
+        subsets.named(individual.name).map(_.name) should be(Some(individual.name))
+      }
+    }
+    val pairs = new SubsetIndividuals(symptoms, 2, setClass)
+    pairs.contains(Individual("Set(cough, unknown)")) should be(false)
+    pairs.named("Set(cough, fever, rash)") should be(None)
+    Grounding.individualsNamed(pairs, "Set(cough, fever)").map(_.name).toList should be(List("Set(cough, fever)"))
+  }
+
+  it should "only create the set valued grounded predicates of bindings that ground the whole rule" in {
+    val pslData = PslParser.parse("""
+      predicate: indep(Variable, Variable, Set{0,1}[Variable])
+      predicate: causes(Variable, Variable)
+      rule: indep(X, Y, W) && indep(X, Y, {W, Z}) => causes(Z, X)
+      class Variable: u, w, x, y
+	""")
+    val (groundedRules, _, idToGpMap) = Grounding.ground(pslData)
+    // If W is not empty the union {W, Z} has too many individuals, these bindings create no grounded predicates.
+    val inRules = groundedRules.flatMap(r => r.body ++ r.head).map(_.id).toSet
+    val indepGps = idToGpMap.values.filter(_.definition.name == "indep")
+    indepGps should not be empty
+    indepGps.foreach(gp => inRules.contains(gp.id) should be(true))
+  }
+
 }
@@ -20,6 +20,7 @@ package com.signalcollect.psl
 
 import org.scalatest.FlatSpec
 import org.scalatest.Matchers
+import com.signalcollect.admm.optimizers.HingeLossOptimizer
 import com.signalcollect.util.TestAnnouncements
 
 class HingeLossSpec extends FlatSpec with Matchers with TestAnnouncements {
@@ -108,9 +109,22 @@ class HingeLossSpec extends FlatSpec with Matchers with TestAnnouncements {
       zMap.keys.toArray,
       1)
     hlt.setY(y)
+
+    val ownOptimizer = new HingeLossOptimizer(
+      1,
+      weight = weight,
+      constant = constant,
+      zIndices = zMap.keys.toArray,
+      stepSize = stepSize,
+      initialZmap = zMap,
+      coefficientMatrix = coeffs)
+    ownOptimizer.setY(y)
+
     val resultMap = hlt.optimize(zMap)
+    val ownResultMap = ownOptimizer.optimize(zMap)
     for (i <- 0 until z.length) {
       resultMap(i) should be(expected(i) +- 5e-5)
+      ownResultMap(i) should be(expected(i) +- 5e-5)
     }
     // TODO: check also the number of iterations?
   }
@@ -0,0 +1,134 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.parser.PslParser
+import com.signalcollect.util.SolutionComparison
+import com.signalcollect.util.TestAnnouncements
+
+class IncrementalInferencerSpec extends FlatSpec with Matchers with TestAnnouncements with SolutionComparison {
+
+  val rules = """
+	predicate: likes(_, _)
+	predicate: playsIn(_, _)
+
+	rule [weight = 1]: likes(PERSON, MOVIE) && playsIn(ACTOR, MOVIE) => likes(PERSON, ACTOR)
+	rule [weight = 1]: likes(PERSON-A, A) && likes(PERSON-B, A) && likes(PERSON-B, B) => likes(PERSON-A, B)
+
+	fact: playsIn(john-travolta, pulp-fiction)
+	fact: playsIn(john-travolta, grease)
+	fact [truthValue = 0.9]: likes(sara, pulp-fiction)
+	fact [truthValue = 0.8]: likes(sara, star-wars)
+	"""
+
+  val config = InferencerConfig(computeObjectiveValueOfSolution = true, lazyThreshold = None)
+
+  def facts(s: String) = PslParser.parse(rules + s).facts.filterNot(PslParser.parse(rules).facts.contains(_))
+
+  def shouldMatchFullInference(incremental: InferenceResult, pslString: String) {
+    val full = Inferencer.runInferenceFromString(pslString, config = config)
+    incremental.objectiveFun.get should be(full.objectiveFun.get +- 0.02)
+    assertSameTruthValues(full, incremental)
+  }
+
+  "The incremental inferencer" should "update the solution when a fact changes" in {
+    val initial = """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	"""
+    val changed = """
+	fact [truthValue = 0.3]: likes(philip, pulp-fiction)
+	"""
+    val inferencer = new IncrementalInferencer(PslParser.parse(rules + initial), config)
+    shouldMatchFullInference(inferencer.infer(), rules + initial)
+    val result = inferencer.update(added = facts(changed))
+    shouldMatchFullInference(result, rules + changed + """
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	""")
+  }
+
+  it should "update the solution when facts are added and removed" in {
+    val initial = """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	"""
+    val removed = """
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	"""
+    val added = """
+	fact [truthValue = 0.7]: likes(philip, star-wars)
+	"""
+    val inferencer = new IncrementalInferencer(PslParser.parse(rules + initial), config)
+    inferencer.infer()
+    val result = inferencer.update(added = facts(added), removed = facts(removed))
+    shouldMatchFullInference(result, rules + added + """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	""")
+  }
+
+  it should "ground again when a fact mentions a new individual" in {
+    val initial = """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	"""
+    val added = """
+	fact [truthValue = 0.6]: likes(anna, grease)
+	"""
+    val inferencer = new IncrementalInferencer(PslParser.parse(rules + initial), config)
+    inferencer.infer()
+    val result = inferencer.update(added = facts(added))
+    shouldMatchFullInference(result, rules + initial + added)
+  }
+
+  it should "match the full inference when a fact is removed and added again" in {
+    val initial = """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	"""
+    val toggled = """
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	"""
+    val inferencer = new IncrementalInferencer(PslParser.parse(rules + initial), config)
+    inferencer.infer()
+    val withoutFact = inferencer.update(removed = facts(toggled))
+    shouldMatchFullInference(withoutFact, rules + """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	""")
+    val withFact = inferencer.update(added = facts(toggled))
+    shouldMatchFullInference(withFact, rules + initial)
+  }
+
+  it should "apply an update without an earlier inference to the initial facts" in {
+    val initial = """
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	"""
+    val added = """
+	fact [truthValue = 0.6]: likes(philip, john-travolta)
+	"""
+    val inferencer = new IncrementalInferencer(PslParser.parse(rules + initial), config)
+    val result = inferencer.update(added = facts(added))
+    shouldMatchFullInference(result, rules + initial + added)
+    inferencer.infer() should be theSameInstanceAs (result)
+  }
+
+}
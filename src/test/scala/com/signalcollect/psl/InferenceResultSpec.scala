@@ -0,0 +1,63 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import java.io.StringWriter
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.util.TestAnnouncements
+
+class InferenceResultSpec extends FlatSpec with Matchers with TestAnnouncements {
+
+  val example = """
+	predicate: likes(_, _)
+	predicate: playsIn(_, _)
+
+	rule [weight = 1]: likes(PERSON, MOVIE) && playsIn(ACTOR, MOVIE) => likes(PERSON, ACTOR)
+
+	fact: playsIn(john-travolta, pulp-fiction)
+	fact [truthValue = 0.9]: likes(sara, pulp-fiction)
+	"""
+
+  "InferenceResult" should "find grounded predicates through the index" in {
+    val results = Inferencer.runInferenceFromString(example)
+    results.idToGpMap.values.foreach { gp =>
+      results.getGp(gp.definition.name, gp.groundings.map(_.name): _*) should be(Some(gp))
+    }
+    results.getGp("likes", "nobody", "pulp-fiction") should be(None)
+    results.truthValue("likes", "sara", "john-travolta").get should be > 0.5
+    results.groundedPredicates("playsIn").map(_.id).toSet should be(results.idToGpMap.values.filter(_.definition.name == "playsIn").map(_.id).toSet)
+    results.truthValues("likes").toMap.apply(results.getGp("likes", "sara", "pulp-fiction").get) should be(0.9)
+  }
+
+  it should "write the same output it prints" in {
+    val results = Inferencer.runInferenceFromString(example)
+    for (outputType <- List("inference", "shortInference", "onlyTrueFacts")) {
+      val writer = new StringWriter
+      results.writeSelectedResults(writer, outputType = outputType)
+      writer.toString should be(results.printSelectedResults(outputType = outputType))
+      writer.toString should not be ("")
+    }
+  }
+
+}
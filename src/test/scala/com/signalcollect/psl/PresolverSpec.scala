@@ -0,0 +1,71 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.parser.PslParser
+import com.signalcollect.util.SolutionComparison
+import com.signalcollect.util.TestAnnouncements
+
+class PresolverSpec extends FlatSpec with Matchers with TestAnnouncements with SolutionComparison {
+
+  val example = """
+    class Person: anna, bob
+    class Party: republicans, democrats
+    predicate [Functional]: votes(Person, Party)
+    predicate: friends(Person, Person)
+
+    rule [weight = 1]: votes(A, P) && friends(A, B) => votes(B, P)
+    rule [weight = 1]: votes(A, P) && friends(A, B) => votes(B, P)
+    rule [weight = 0.5]: !votes(A, P)
+
+    fact: votes(anna, republicans)
+    fact: friends(anna, bob)
+    fact [truthValue = 0.7]: friends(bob, anna)
+"""
+
+  val config = InferencerConfig(computeObjectiveValueOfSolution = true, lazyThreshold = None, globalConvergenceDetection = Some(2))
+
+  "Presolving" should "find the same solution and objective value" in {
+    val (original, presolved) = inferWithBoth(example, config, config.copy(presolve = true))
+    presolved.objectiveFun.get should be(original.objectiveFun.get +- 0.02)
+  }
+
+  it should "fix the variables of functional predicates with a true fact and merge duplicate rules" in {
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.ground(PslParser.parse(example), config)
+    val problem = Presolver.presolve(groundedRules, groundedConstraints, idToGpMap, config)
+    val votesAnnaDemocrats = idToGpMap.values.find(gp => gp.definition.name == "votes" && gp.groundings.map(_.name) == List("anna", "democrats")).get
+    problem.removedVariables(votesAnnaDemocrats.id) should be(0.0)
+    val (functions, constraints, _) = Inferencer.recreateFunctions(groundedRules, groundedConstraints, idToGpMap, config)
+    problem.functions.size should be < functions.size
+    problem.constraints.size should be < constraints.size
+    (problem.functions ++ problem.constraints).foreach(_.idToIndexMappings should not contain (votesAnnaDemocrats.id))
+  }
+
+  it should "sum the coefficients of repeated variables and drop the ones that cancel out" in {
+    val (zIndices, coefficients) = PresolveTerm.combined(Array(1, 2, 1), Array(1.0, 1.0, -1.0))
+    zIndices should be(Array(2))
+    coefficients should be(Array(1.0))
+  }
+
+}
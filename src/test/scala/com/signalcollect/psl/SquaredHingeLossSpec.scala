@@ -104,6 +104,30 @@ class SquaredHingeLossSpec extends FlatSpec with Matchers with TestAnnouncements
     testProblem(z, y, coeffs, constant, weight, stepSize, expected)
   }
 
+  it should "compute the same closed form solution as the iterative minimizer for larger arities" in {
+    val zMap = Map(0 -> 0.9, 1 -> 0.2, 2 -> 0.6, 3 -> 0.4)
+    val y = Array(0.1, -0.2, 0.05, 0.0)
+    val coeffs = Array(1.0, -1.0, 0.5, 1.0)
+    def createOptimizer(closedForm: Boolean) = {
+      val optimizer = new SquaredHingeLossOptimizer(
+        1,
+        weight = 1.5,
+        constant = 0.3,
+        zIndices = Array(0, 1, 2, 3),
+        stepSize = 0.5,
+        initialZmap = zMap,
+        coefficientMatrix = coeffs,
+        closedForm = closedForm)
+      optimizer.setY(y)
+      optimizer
+    }
+    val closedFormResult = createOptimizer(closedForm = true).optimize(zMap)
+    val iterativeResult = createOptimizer(closedForm = false).optimize(zMap)
+    for (i <- 0 until 4) {
+      closedFormResult(i) should be(iterativeResult(i) +- 1e-4)
+    }
+  }
+
   def testProblem(
     z: Array[Double],
     y: Array[Double],
@@ -0,0 +1,92 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.parser.PslParser
+import com.signalcollect.util.SolutionComparison
+import com.signalcollect.util.TestAnnouncements
+
+class WarmStartSpec extends FlatSpec with Matchers with TestAnnouncements with SolutionComparison {
+
+  val rules = """
+	predicate: likes(_, _)
+	predicate: playsIn(_, _)
+
+	rule [weight = 1]: likes(PERSON, MOVIE) && playsIn(ACTOR, MOVIE) => likes(PERSON, ACTOR)
+	rule [weight = 1]: likes(PERSON-A, A) && likes(PERSON-B, A) && likes(PERSON-B, B) => likes(PERSON-A, B)
+
+	fact: playsIn(john-travolta, pulp-fiction)
+	fact: playsIn(john-travolta, grease)
+
+	fact [truthValue = 0.9]: likes(sara, pulp-fiction)
+	fact [truthValue = 0.8]: likes(sara, star-wars)
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	"""
+
+  val example = rules + """
+	fact [truthValue = 0.8]: likes(philip, john-travolta)
+	fact [truthValue = 0.7]: likes(philip, grease)
+	"""
+
+  val changedExample = rules + """
+	fact [truthValue = 0.6]: likes(philip, john-travolta)
+	fact [truthValue = 0.7]: likes(philip, grease)
+	"""
+
+  val config = InferencerConfig(globalConvergenceDetection = Some(2), lazyThreshold = None, retainMultipliers = true)
+
+  "Warm starting" should "converge faster on the same problem" in {
+    val cold = Inferencer.runInferenceFromString(example, config = config)
+    cold.multipliers.size should be > 0
+    val warm = Inferencer.runInferenceFromString(example, config = config, warmStart = Some(cold.warmStart))
+    warm.solution.convergence.get.collectStepsSoFar should be <= cold.solution.convergence.get.collectStepsSoFar
+    assertSameTruthValues(cold, warm)
+  }
+
+  it should "find the same solution as a cold start after some facts changed" in {
+    val previous = Inferencer.runInferenceFromString(example, config = config)
+    val cold = Inferencer.runInferenceFromString(changedExample, config = config)
+    val warm = Inferencer.runInferenceFromString(changedExample, config = config, warmStart = Some(previous.warmStart))
+    assertSameTruthValues(cold, warm)
+  }
+
+  it should "tell apart the groundings of a rule that only differ in their facts" in {
+    val pslData = PslParser.parse("""
+	predicate: likes(_, _)
+	predicate: playsIn(_, _)
+
+	rule [weight = 1]: likes(PERSON, MOVIE) && playsIn(ACTOR, MOVIE) => likes(PERSON, ACTOR)
+
+	fact: playsIn(john-travolta, pulp-fiction)
+	fact: playsIn(john-travolta, grease)
+	fact [truthValue = 0.9]: likes(philip, pulp-fiction)
+	fact [truthValue = 0.4]: likes(philip, grease)
+	""")
+    val (groundedRules, _, _) = Grounding.ground(pslData, config)
+    // E.g. the groundings for pulp-fiction and grease both only have likes(philip, john-travolta) as variable.
+    groundedRules.groupBy(_.unboundGroundedPredicates.map(WarmStart.key)).values.exists(_.size > 1) should be(true)
+    groundedRules.map(WarmStart.key).distinct.size should be(groundedRules.size)
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl.benchmarking
+
+import java.io.File
+import java.io.PrintWriter
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+
+import scala.collection.JavaConversions._
+
+import com.signalcollect.admm.utils.Timer
+import com.signalcollect.psl.Inferencer
+import com.signalcollect.psl.InferencerConfig
+
+/**
+ * Generates synthetic models of increasing size and runs them through the Inferencer in different modes
+ * and with different numbers of cores. Reports the times that InferenceResult and ProblemSolution collect
+ * and the peak heap usage, on stdout and as a tab separated file in the output directory.
+ *
+ * Example: --individuals 100,1000,10000 --modes lazy,async,shared --cores 1,2,4,8 --directory target/scaling
+ *
+ * The number of cores only applies to the shared-memory backend, the Signal/Collect backend always uses all the cores,
+ * so the other modes are run once per size.
+ * The peak heap is the sum of the peak usages of the heap memory pools, it is an upper bound of the actual peak.
+ */
+object ScalingBenchmark extends App {
+
+  val usage = """
+Usage: ScalingBenchmark [--individuals 100,1000] [--knownFactsRatio 0.5] [--ruleShapes chain,triangle,star]
+[--hardRuleRatio 0.0] [--functional true|false] [--symmetric true|false]
+[--modes sync,async,lazy,shared] [--cores 1,2,4] [--repetitions 1] [--maxIterations 1000]
+[--joinBasedGrounding true|false] [--directory target/scaling]
+"""
+
+  if (args.length % 2 != 0) {
+    println(usage)
+    System.exit(-1)
+  }
+
+  val mapOfArgs = args.toList.grouped(2).map { case List(k, v) => (k, v) }.toMap
+  def list(name: String, default: String): List[String] = mapOfArgs.getOrElse(name, default).split(",").toList
+
+  val sizes = list("--individuals", "100,1000").map(_.toInt)
+  val modes = list("--modes", "sync,async,lazy,shared")
+  val cores = list("--cores", Runtime.getRuntime.availableProcessors.toString).map(_.toInt)
+  val repetitions = mapOfArgs.getOrElse("--repetitions", "1").toInt
+  val directory = new File(mapOfArgs.getOrElse("--directory", "target/scaling"))
+  directory.mkdirs
+
+  val baseConfig = InferencerConfig(
+    maxIterations = mapOfArgs.getOrElse("--maxIterations", "1000").toInt,
+    // Same default as InferencerConfig, so the benchmark measures the default grounding unless configured.
+    joinBasedGrounding = mapOfArgs.get("--joinBasedGrounding").map(_.toBoolean).getOrElse(InferencerConfig().joinBasedGrounding))
+
+  def configFor(mode: String, numberOfCores: Int): InferencerConfig = {
+    mode match {
+      case "sync" => baseConfig.copy(asynchronous = false, lazyThreshold = None)
+      case "async" => baseConfig.copy(asynchronous = true, lazyThreshold = None)
+      case "lazy" => baseConfig.copy(asynchronous = false)
+      case "shared" => baseConfig.copy(sharedMemoryBackend = true, parallelism = Some(numberOfCores))
+      case other => throw new Exception(s"Unknown mode $other, the modes are sync, async, lazy and shared.")
+    }
+  }
+
+  def resetPeakHeap {
+    System.gc
+    ManagementFactory.getMemoryPoolMXBeans.filter(_.getType == MemoryType.HEAP).foreach(_.resetPeakUsage)
+  }
+
+  def peakHeapInMb: Long = {
+    ManagementFactory.getMemoryPoolMXBeans.filter(_.getType == MemoryType.HEAP).map(_.getPeakUsage.getUsed).sum / (1024 * 1024)
+  }
+
+  val header = List("individuals", "mode", "cores", "repetition", "parsing", "grounding", "functionCreation",
+    "graphLoading", "inference", "aggregation", "total", "groundedRules", "peakHeapMb")
+  val report = new PrintWriter(new File(directory, "scaling-report.tsv"))
+  report.println(header.mkString("\t"))
+  println(header.mkString("\t"))
+
+  for (size <- sizes) {
+    val modelConfig = SyntheticModelConfig(
+      individuals = size,
+      knownFactsRatio = mapOfArgs.getOrElse("--knownFactsRatio", "0.5").toDouble,
+      ruleShapes = list("--ruleShapes", "chain,triangle,star"),
+      hardRuleRatio = mapOfArgs.getOrElse("--hardRuleRatio", "0.0").toDouble,
+      functional = mapOfArgs.getOrElse("--functional", "true").toBoolean,
+      symmetric = mapOfArgs.getOrElse("--symmetric", "true").toBoolean)
+    val file = {
+      val existing = new File(directory, modelConfig.fileName)
+      if (existing.exists) existing else SyntheticModelGenerator.write(modelConfig, directory)
+    }
+    for (mode <- modes; numberOfCores <- (if (mode == "shared") cores else List(Runtime.getRuntime.availableProcessors)); repetition <- 1 to repetitions) {
+      resetPeakHeap
+      val (result, totalTime) = Timer.time {
+        Inferencer.runInferenceFromFile(file, config = configFor(mode, numberOfCores))
+      }
+      val row = List(size, mode, numberOfCores, repetition,
+        result.parsingTime.getOrElse(0L), result.groundingTime.getOrElse(0L), result.functionCreationTime.getOrElse(0L),
+        result.solution.graphLoadingTime, result.solution.inferenceTime, result.solution.resultAggregationTime,
+        totalTime, result.numGroundedRules.getOrElse(0), peakHeapInMb)
+      println(row.mkString("\t"))
+      report.println(row.mkString("\t"))
+      report.flush
+    }
+  }
+  report.close
+}
@@ -0,0 +1,139 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl.benchmarking
+
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileWriter
+import java.io.PrintWriter
+
+import scala.util.Random
+
+/**
+ * Parameters of a synthetic model in the style of synthetic_100ind_known0.5_var0.1:
+ * users that like items and are friends with each other, items that are similar to each other.
+ */
+case class SyntheticModelConfig(
+  individuals: Int = 100, // Number of users, there is one item every 10 users.
+  knownFactsRatio: Double = 0.5, // Fraction of the likes that are known facts, the others are inferred.
+  ruleShapes: List[String] = List("chain", "triangle", "star"), // Rule templates, see SyntheticModelGenerator.rules.
+  hardRuleRatio: Double = 0.0, // Fraction of the rules that are hard rules.
+  functional: Boolean = true, // Each user likes in total exactly one item, the known likes of a user are scaled to sum to at most 1.
+  symmetric: Boolean = true, // Friendship is symmetric.
+  friendsPerUser: Int = 5,
+  likesPerUser: Int = 3,
+  similarPerItem: Int = 2,
+  seed: Long = 42) {
+
+  def fileName = s"synthetic_${individuals}ind_known${knownFactsRatio}_hard${hardRuleRatio}_${ruleShapes.mkString("-")}" +
+    s"${if (functional) "_functional" else ""}${if (symmetric) "_symmetric" else ""}.psl"
+}
+
+/**
+ * Writes synthetic PSL files of arbitrary size, line by line, so the model does not have to fit in memory.
+ */
+object SyntheticModelGenerator {
+
+  // The individuals of a class are spread over several lines, so the lines stay short.
+  val individualsPerLine = 1000
+
+  val rules = Map(
+    // Like what your friends like.
+    "chain" -> "likes(A, I) && friends(A, B) => likes(B, I)",
+    // Friends of friends are friends.
+    "triangle" -> "friends(A, B) && friends(B, C) => friends(A, C)",
+    // Like the items that are similar to the ones you like.
+    "star" -> "likes(A, I) && similar(I, J) => likes(A, J)",
+    // Do not like items that are not similar to the ones you like.
+    "negation" -> "likes(A, I) && !similar(I, J) => !likes(A, J)")
+
+  def write(config: SyntheticModelConfig, directory: File): File = {
+    val file = new File(directory, config.fileName)
+    val out = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16))
+    try {
+      write(config, out)
+    } finally {
+      out.close
+    }
+    file
+  }
+
+  def write(config: SyntheticModelConfig, out: PrintWriter) {
+    assert(config.individuals > 1, "A synthetic model needs at least two users.")
+    assert(config.knownFactsRatio >= 0 && config.knownFactsRatio <= 1, "The known facts ratio has to be in [0, 1].")
+    assert(config.hardRuleRatio >= 0 && config.hardRuleRatio <= 1, "The hard rule ratio has to be in [0, 1].")
+    val random = new Random(config.seed)
+    val users = config.individuals
+    val items = math.max(2, users / 10)
+
+    (1 to users).grouped(individualsPerLine).foreach { g => out.println(g.map(i => s"user$i").mkString("class User: ", ", ", "")) }
+    (1 to items).grouped(individualsPerLine).foreach { g => out.println(g.map(i => s"item$i").mkString("class Item: ", ", ", "")) }
+    out.println
+
+    out.println(s"predicate${if (config.functional) " [Functional]" else ""}: likes(User, Item)")
+    out.println(s"predicate${if (config.symmetric) " [Symmetric]" else ""}: friends(User, User)")
+    out.println("predicate: similar(Item, Item)")
+    out.println
+
+    val numberOfHardRules = math.round(config.hardRuleRatio * config.ruleShapes.size).toInt
+    config.ruleShapes.zipWithIndex.foreach {
+      case (shape, i) =>
+        val rule = rules.getOrElse(shape, throw new Exception(s"Unknown rule shape $shape, known shapes: ${rules.keys.mkString(", ")}."))
+        if (i < numberOfHardRules) {
+          out.println(s"rule: $rule")
+        } else {
+          out.println(s"rule [weight = ${1 + random.nextInt(10)}]: $rule")
+        }
+    }
+    out.println
+
+    def truthValue = math.round(random.nextDouble * 100) / 100.0
+    for (user <- 1 to users) {
+      for (friend <- distinct(config.friendsPerUser, users, user, random)) {
+        out.println(s"fact [truthValue = $truthValue]: friends(user$user, user$friend)")
+      }
+      val knownLikes = distinct(config.likesPerUser, items, 0, random).toList.filter(_ => random.nextDouble < config.knownFactsRatio)
+      val likeValues = knownLikes.map(_ => truthValue)
+      // With functional likes the known likes of a user cannot sum to more than 1, or the constraint is infeasible.
+      val total = likeValues.sum
+      val feasibleLikeValues = if (config.functional && total > 1) likeValues.map(v => math.floor(v / total * 100) / 100.0) else likeValues
+      for ((item, value) <- knownLikes.zip(feasibleLikeValues)) {
+        out.println(s"fact [truthValue = $value]: likes(user$user, item$item)")
+      }
+    }
+    for (item <- 1 to items; other <- distinct(config.similarPerItem, items, item, random)) {
+      out.println(s"fact [truthValue = $truthValue]: similar(item$item, item$other)")
+    }
+  }
+
+  // Up to n distinct numbers in [1, max], without 'excluded'.
+  private[this] def distinct(n: Int, max: Int, excluded: Int, random: Random): Set[Int] = {
+    val available = if (excluded >= 1 && excluded <= max) max - 1 else max
+    var result = Set.empty[Int]
+    while (result.size < math.min(n, available)) {
+      val candidate = 1 + random.nextInt(max)
+      if (candidate != excluded) {
+        result += candidate
+      }
+    }
+    result
+  }
+}
@@ -215,5 +215,27 @@ class PslParserSpec extends FlatSpec with Matchers with TestAnnouncements {
     parsed.facts(0).variableGroundings(0).head.name should equal("anna")
     parsed.facts(0).variableGroundings(1).head.name should equal("democrats")
   }
-  
+
+  it should "scan facts and individuals like the grammar" in {
+    val lines = List(
+      "fact: votes(anna, republicans)",
+      "  fact [truthValue = 0.5]: votes(anna, democrats) // comment",
+      "fact [0.2, 0.7]: !votes(bob, demo-crats_1)",
+      "fact[1]:!votes(bob,republicans)#comment",
+      "individuals: anna, bob")
+    for (line <- lines) {
+      val scanned = FastLineParser.parseLine(line)
+      scanned should be(defined)
+      val parsed = PslParser.parseString(line, PslParser.fragmentParser)
+      scanned.get match {
+        case f: Fact => parsed.facts should be(List(f))
+        case i: Set[_] => parsed.constants should be(i)
+      }
+    }
+    FastLineParser.parseLine("fact: votes(anna, {bob, carl})") should be(None)
+    FastLineParser.parseLine("rule: votes(A, P) => votes(A, P)") should be(None)
+    FastLineParser.parseLine("fact [truthValue = 2]: votes(anna, bob)") should be(None)
+    FastLineParser.parseLine("individuals: Anna") should be(None)
+  }
+
 }
@@ -0,0 +1,91 @@
+/*
+ *  @author Sara Magliacane
+ *  @author Philip Stutz
+ *
+ *  Copyright 2013-2015 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.psl.translate
+
+import java.io.StringWriter
+
+import org.scalatest.FlatSpec
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.Grounding
+import com.signalcollect.psl.parser.PslParser
+import com.signalcollect.util.TestAnnouncements
+
+class StreamingTranslationSpec extends FlatSpec with Matchers with TestAnnouncements {
+
+  val example = """
+	predicate: playsIn(_, _)
+	predicate: likes(_, _)
+
+	rule [weight = 2, distanceMeasure = linear]: playsIn(A, M) => likes(A, M)
+	rule: likes(A, B) => !likes(B, A)
+
+	fact: playsIn(anna, bob)
+	fact [truthValue = 0.5]: playsIn(bob, carl)
+	fact: !playsIn(bob, anna)
+	fact: !playsIn(carl, anna)
+	fact: !playsIn(carl, bob)
+	fact: !playsIn(anna, carl)
+	"""
+
+  // The order of the variables and of the lines is not relevant, but every line has to appear as often.
+  def normalized(translation: String): List[String] = {
+    translation.split("\n").map(_.trim).filter(_ != "").map { line =>
+      if (line.matches("(variables)?( ?x[0-9]+)+")) line.split(" ").sorted.mkString(" ") else line
+    }.toList.sorted
+  }
+
+  "PSLToLPConverter" should "write the same problem while the grounded rules are streamed" in {
+    val pslData = PslParser.parse(example)
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.ground(pslData)
+    groundedRules.exists(_.definition.weight == Double.MaxValue) should be(true)
+    for (isBinary <- List(true, false)) {
+      val writer = new StringWriter
+      PSLToLPConverter.writeLP(groundedRules.iterator, groundedConstraints, isBinary, writer)
+      val expected = PSLToLPConverter.toLP(groundedRules, groundedConstraints, isBinary)
+      normalized(writer.toString) should be(normalized(expected))
+    }
+  }
+
+  "PSLToCvxConverter" should "write the same problem while the grounded rules are streamed" in {
+    val pslData = PslParser.parse(example)
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.ground(pslData)
+    val writer = new StringWriter
+    PSLToCvxConverter.writeCvx(groundedRules.iterator, groundedConstraints, writer)
+    val expected = PSLToCvxConverter.toCvx(groundedRules, groundedConstraints)
+    normalized(writer.toString) should be(normalized(expected))
+  }
+
+  "PSLToMLNConverter" should "write the same problem while the grounded rules are streamed" in {
+    // The heaviest rule has no groundings, its atoms are all facts.
+    val pslData = PslParser.parse(example + """
+	rule [weight = 5]: playsIn(anna, bob) => playsIn(carl, bob)
+	""")
+    val (groundedRules, groundedConstraints, idToGpMap) = Grounding.ground(pslData)
+    groundedRules.exists(_.definition.weight == 5) should be(false)
+    val writer = new StringWriter
+    PSLToMLNConverter.writeMLN(pslData, groundedRules.iterator, groundedConstraints, writer)
+    val (evidence, rules, _) = PSLToMLNConverter.toMLN(pslData)
+    normalized(writer.toString) should be(normalized(evidence + "\n" + rules))
+    writer.toString should include(s"${2.0 / 2.0} ")
+  }
+
+}
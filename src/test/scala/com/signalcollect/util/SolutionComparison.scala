@@ -0,0 +1,70 @@
+/*
+ *  @author Philip Stutz
+ *  @author Sara Magliacane
+ *
+ *  Copyright 2014 University of Zurich & VU University Amsterdam
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.signalcollect.util
+
+import org.scalatest.Matchers
+
+import com.signalcollect.psl.Inferencer
+import com.signalcollect.psl.InferencerConfig
+import com.signalcollect.psl.InferenceResult
+
+trait SolutionComparison extends Matchers {
+
+  /**
+   * Checks that two inferences on the same grounding found the same objective value, if it was computed,
+   * and the same truth value for every consensus variable. The variables are compared by id.
+   */
+  def assertSameSolution(expected: InferenceResult, actual: InferenceResult, tolerance: Double = 0.02) {
+    actual.objectiveFun.isDefined should be(expected.objectiveFun.isDefined)
+    for (e <- expected.objectiveFun; a <- actual.objectiveFun) {
+      a should be(e +- tolerance)
+    }
+    actual.solution.results.size should be(expected.solution.results.size)
+    expected.solution.results.foreach {
+      case (id, truthValue) =>
+        actual.solution.results(id) should be(truthValue +- tolerance)
+    }
+  }
+
+  /**
+   * Checks that every grounded predicate of `expected` without a known truth value got the same truth value
+   * in `actual`. The grounded predicates are compared by name and individuals, so the two inferences can
+   * use different groundings and ids.
+   */
+  def assertSameTruthValues(expected: InferenceResult, actual: InferenceResult, tolerance: Double = 0.02) {
+    expected.idToGpMap.values.filter(_.truthValue.isEmpty).foreach { gp =>
+      val individuals = gp.groundings.map(_.name)
+      actual.truthValue(gp.definition.name, individuals: _*).get should be(expected.truthValue(gp.definition.name, individuals: _*).get +- tolerance)
+    }
+  }
+
+  /**
+   * Runs the inference on the same problem with both configurations and checks that they found the same truth values.
+   * Returns both results for further checks.
+   */
+  def inferWithBoth(pslString: String, expectedConfig: InferencerConfig, actualConfig: InferencerConfig): (InferenceResult, InferenceResult) = {
+    val expected = Inferencer.runInferenceFromString(pslString, config = expectedConfig)
+    val actual = Inferencer.runInferenceFromString(pslString, config = actualConfig)
+    assertSameTruthValues(expected, actual)
+    (expected, actual)
+  }
+
+}